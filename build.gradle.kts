@@ -2,6 +2,7 @@ plugins {
     id("java")
     id("org.springframework.boot") version "3.4.0"
     id("io.spring.dependency-management") version "1.1.7"
+    id("org.graalvm.buildtools.native") version "0.10.3" apply false
 }
 
 group = "astradesk.rag"
@@ -32,6 +33,7 @@ dependencies {
 
     // S3/MinIO (AWS SDK v2)
     implementation("software.amazon.awssdk:s3:2.37.3")
+    implementation("software.amazon.awssdk:netty-nio-client:2.37.3")
 
     // Spring AI - POPRAWNA WERSJA I REPOZYTORIUM
     implementation("org.springframework.ai:spring-ai-openai-spring-boot-starter:0.8.1") {
@@ -47,12 +49,97 @@ dependencies {
     testImplementation("org.testcontainers:postgresql:1.21.3")
 }
 
+// JDK Vector API (util.VectorMath); bez modułu VectorMath przechodzi na pętle skalarne
+val vectorApiArgs = listOf("--add-modules", "jdk.incubator.vector")
+
+tasks.withType<JavaCompile> {
+    options.compilerArgs.addAll(vectorApiArgs)
+}
+
 tasks.test {
-    useJUnitPlatform()
+    useJUnitPlatform {
+        excludeTags("eval")
+    }
+    jvmArgs(vectorApiArgs)
+}
+
+// Offline recall@k vs latency of vector search (Testcontainers pgvector, needs Docker):
+// ./gradlew evalVectorSearch [-Peval.n=100000 -Peval.dim=1536 -Peval.vectors=export.fvecs ...]
+// Report: stdout table + build/reports/vector-eval/results.json
+tasks.register<Test>("evalVectorSearch") {
+    group = "verification"
+    description = "Sweeps pgvector index types and parameters, reporting recall@k against p50/p99 latency."
+    testClassesDirs = sourceSets["test"].output.classesDirs
+    classpath = sourceSets["test"].runtimeClasspath
+    useJUnitPlatform {
+        includeTags("eval")
+    }
+    jvmArgs(vectorApiArgs)
+    maxHeapSize = "4g"
+    systemProperties(providers.gradlePropertiesPrefixedBy("eval.").get())
+    testLogging.showStandardStreams = true
+    outputs.upToDateWhen { false }
+}
+
+tasks.named<org.springframework.boot.gradle.tasks.run.BootRun>("bootRun") {
+    jvmArgs(vectorApiArgs)
 }
 
 java {
     toolchain {
         languageVersion.set(JavaLanguageVersion.of(21))
     }
-}
\ No newline at end of file
+}
+
+// ---------------------------------------------------------------------------
+// Fast-startup build: ./gradlew -PfastStartup cdsArchive
+// Spring AOT (processAot) + AppCDS archive trained on a context refresh.
+// AOT freezes @ConditionalOnProperty at build time, so the providers are chosen here.
+// ---------------------------------------------------------------------------
+val fastStartup = providers.gradleProperty("fastStartup").map { it != "false" }.getOrElse(false)
+
+if (fastStartup) {
+    apply(plugin = "org.graalvm.buildtools.native")
+
+    tasks.named<org.springframework.boot.gradle.tasks.aot.ProcessAot>("processAot") {
+        args(
+            "--rag.provider.embeddings=" + providers.gradleProperty("ragEmbeddings").getOrElse("openai"),
+            "--rag.provider.chat=" + providers.gradleProperty("ragChat").getOrElse("openai")
+        )
+    }
+}
+
+val cdsDir = layout.buildDirectory.dir("cds")
+val cdsJava = javaToolchains.launcherFor { languageVersion.set(JavaLanguageVersion.of(21)) }
+
+val extractBootJar by tasks.registering(Exec::class) {
+    group = "build"
+    description = "Extracts the boot jar into build/cds (layout required by AppCDS)."
+    dependsOn(tasks.named("bootJar"))
+    val bootJar = tasks.named<org.springframework.boot.gradle.tasks.bundling.BootJar>("bootJar").flatMap { it.archiveFile }
+    doFirst {
+        delete(cdsDir)
+        executable = cdsJava.get().executablePath.asFile.absolutePath
+    }
+    argumentProviders.add(CommandLineArgumentProvider {
+        listOf("-Djarmode=tools", "-jar", bootJar.get().asFile.absolutePath, "extract",
+            "--destination", cdsDir.get().asFile.absolutePath, "--application-filename", "application.jar")
+    })
+}
+
+tasks.register<Exec>("cdsArchive") {
+    group = "build"
+    description = "Training run (context refresh only; DB/S3 work waits for ApplicationReadyEvent, so neither is needed) producing build/cds/application.jsa."
+    dependsOn(extractBootJar)
+    workingDir(cdsDir)
+    doFirst { executable = cdsJava.get().executablePath.asFile.absolutePath }
+    args(vectorApiArgs)
+    args(
+        "-XX:ArchiveClassesAtExit=application.jsa",
+        "-Dspring.context.exit=onRefresh",
+        "-Dspring.profiles.active=fast-startup",
+        "-Dspring.sql.init.mode=never",
+        "-Dspring.aot.enabled=$fastStartup",
+        "-jar", "application.jar"
+    )
+}
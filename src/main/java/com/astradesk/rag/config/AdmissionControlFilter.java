@@ -0,0 +1,82 @@
+// src/main/java/com/astradesk/rag/config/AdmissionControlFilter.java
+package com.astradesk.rag.config;
+
+import com.astradesk.rag.service.AdmissionController;
+import com.astradesk.rag.service.AdmissionController.RouteClass;
+import com.astradesk.rag.util.Deadline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Kontrola przyjęć dla całej usługi: /docs/** to klasa search, strumienie SSE (POST /ingest/zip,
+ * POST /uploads/{id}/complete) - stream, reszta /ingest/** i /uploads/** - ingest. Nadmiar dostaje od razu
+ * 503 z Retry-After zamiast czekać na timeout. Działa po {@link RequestDeadlineFilter} (czekanie w kolejce
+ * nie przekracza terminu żądania) oraz po {@link ApiKeyValidator} i {@link RateLimitFilter}, więc żądania
+ * bez klucza albo ponad limit klucza nie zajmują miejsc.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 3)
+public class AdmissionControlFilter implements WebFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(AdmissionControlFilter.class);
+
+    private final AdmissionController admission;
+    private final boolean enabled;
+    private final Duration queueTimeout;
+
+    public AdmissionControlFilter(AdmissionController admission,
+                                  @Value("${rag.admission.enabled:true}") boolean enabled,
+                                  @Value("${rag.admission.queue-timeout:1s}") Duration queueTimeout) {
+        this.admission = admission;
+        this.enabled = enabled;
+        this.queueTimeout = queueTimeout;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        RouteClass cls = enabled ? classify(exchange.getRequest().getMethod(), exchange.getRequest().getPath().value()) : null;
+        if (cls == null) {
+            return chain.filter(exchange);
+        }
+        Deadline deadline = exchange.getAttribute(Deadline.ATTRIBUTE);
+        Duration maxWait = deadline != null && deadline.isBounded() && deadline.remaining().compareTo(queueTimeout) < 0
+                ? deadline.remaining() : queueTimeout;
+        return admission.acquire(cls, maxWait)
+                .onErrorResume(AdmissionController.Rejected.class, r -> {
+                    log.debug("Shedding {} {}: {}", cls.tag(), exchange.getRequest().getPath(), r.reason());
+                    long seconds = Math.max(1, (r.retryAfter().toMillis() + 999) / 1000);
+                    exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+                    exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, Long.toString(seconds));
+                    return exchange.getResponse().setComplete().then(Mono.<AdmissionController.Permit>empty());
+                })
+                .flatMap(permit -> chain.filter(exchange)
+                        .doFinally(signal -> permit.release(overloaded(exchange.getResponse().getStatusCode()))));
+    }
+
+    /** Klasa trasy; null dla tras bez kontroli (health, actuator, admin). */
+    static RouteClass classify(HttpMethod method, String path) {
+        if (path.startsWith("/docs/")) return RouteClass.SEARCH;
+        if (HttpMethod.POST.equals(method) && (path.equals("/ingest/zip")
+                || path.startsWith("/uploads/") && path.endsWith("/complete"))) return RouteClass.STREAM;
+        if (path.startsWith("/ingest/") || path.equals("/uploads") || path.startsWith("/uploads/")) return RouteClass.INGEST;
+        return null;
+    }
+
+    private static boolean overloaded(HttpStatusCode status) {
+        return status != null && (status.value() == 503 || status.value() == 504);
+    }
+}
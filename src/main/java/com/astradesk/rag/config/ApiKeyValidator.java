@@ -1,6 +1,9 @@
 package com.astradesk.rag.config;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
@@ -9,6 +12,7 @@ import org.springframework.web.server.WebFilterChain;
 import reactor.core.publisher.Mono;
 
 @Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
 public class ApiKeyValidator implements WebFilter {
     
     @Value("${rag.api-key:}")
@@ -16,13 +20,18 @@ public class ApiKeyValidator implements WebFilter {
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
-        if (apiKey == null || apiKey.isBlank()) {
-            return chain.filter(exchange);
-        }
-
         String path = exchange.getRequest().getPath().value();
-        
-        if (path.startsWith("/actuator/") || path.equals("/health")) {
+        boolean actuator = path.startsWith("/actuator/");
+        boolean privileged = actuator || path.startsWith("/admin/");
+
+        // operacje zapisu actuatora i /admin (np. POST /actuator/vectorindex, cutover/rollback/abort migracji embeddingów)
+        // zawsze wymagają klucza
+        if (privileged && isWrite(exchange.getRequest().getMethod())) {
+            if (apiKey == null || apiKey.isBlank()) {
+                exchange.getResponse().setStatusCode(HttpStatus.FORBIDDEN);
+                return exchange.getResponse().setComplete();
+            }
+        } else if (apiKey == null || apiKey.isBlank() || actuator || path.equals("/health")) {
             return chain.filter(exchange);
         }
 
@@ -34,4 +43,8 @@ public class ApiKeyValidator implements WebFilter {
             return exchange.getResponse().setComplete();
         }
     }
+
+    private static boolean isWrite(HttpMethod method) {
+        return !HttpMethod.GET.equals(method) && !HttpMethod.HEAD.equals(method) && !HttpMethod.OPTIONS.equals(method);
+    }
 }
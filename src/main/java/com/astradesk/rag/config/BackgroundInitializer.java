@@ -0,0 +1,81 @@
+// src/main/java/com/astradesk/rag/config/BackgroundInitializer.java
+package com.astradesk.rag.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Runs slow or remote-dependent initialization (object store, language models) off the
+ * startup path. Exposed as the "backgroundInitializer" health contributor, which is part of
+ * the readiness group: the pod takes traffic once all critical tasks have finished.
+ * Failures of non-critical tasks are reported in details only.
+ */
+@Component
+@Lazy(false)
+public class BackgroundInitializer implements HealthIndicator, DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(BackgroundInitializer.class);
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2, r -> {
+        Thread t = new Thread(r, "background-init");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Map<String, Task> tasks = new LinkedHashMap<>();
+
+    private record Task(CompletableFuture<?> future, boolean critical) {}
+
+    public synchronized <T> CompletableFuture<T> submit(String name, boolean critical, Supplier<T> work) {
+        CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            T result = work.get();
+            log.info("Background init '{}' finished in {}ms", name, (System.nanoTime() - start) / 1_000_000);
+            return result;
+        }, executor);
+        future.whenComplete((r, e) -> {
+            if (e != null) log.warn("Background init '{}' failed: {}", name, e.getMessage());
+        });
+        tasks.put(name, new Task(future, critical));
+        return future;
+    }
+
+    public CompletableFuture<Void> run(String name, boolean critical, Runnable work) {
+        return submit(name, critical, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    @Override
+    public synchronized Health health() {
+        boolean pending = false, failed = false;
+        Map<String, Object> details = new LinkedHashMap<>();
+        for (var e : tasks.entrySet()) {
+            CompletableFuture<?> f = e.getValue().future();
+            String state = !f.isDone() ? "RUNNING" : f.isCompletedExceptionally() ? "FAILED" : "DONE";
+            details.put(e.getKey(), state);
+            if (e.getValue().critical()) {
+                pending |= !f.isDone();
+                failed |= f.isCompletedExceptionally();
+            }
+        }
+        Health.Builder b = failed ? Health.down() : pending ? Health.outOfService() : Health.up();
+        return b.withDetails(details).build();
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
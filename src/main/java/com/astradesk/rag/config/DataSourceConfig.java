@@ -0,0 +1,61 @@
+// src/main/java/com/astradesk/rag/config/DataSourceConfig.java
+package com.astradesk.rag.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Two independently sized pools: writes (ingest) on spring.datasource.hikari.*,
+ * reads (retrieval) on rag.datasource.read.*, optionally spread over streaming replicas.
+ */
+@Configuration
+public class DataSourceConfig {
+
+    @Bean
+    @Primary
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties props) {
+        return props.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public ReplicaRoutingDataSource readDataSource(DataSourceProperties props,
+                                                   ObjectProvider<MeterRegistry> meters,
+                                                   @Value("${rag.datasource.read.maximum-pool-size:10}") int maxPoolSize,
+                                                   @Value("${rag.datasource.read.minimum-idle:2}") int minIdle,
+                                                   @Value("${rag.datasource.read.connection-timeout:3s}") Duration connectionTimeout,
+                                                   @Value("${rag.datasource.read.replicas:}") String replicas,
+                                                   @Value("${rag.datasource.read.max-lag:5s}") Duration maxLag,
+                                                   @Value("${rag.datasource.read.lag-check-interval:10s}") Duration lagCheckInterval) {
+        List<String> replicaUrls = Arrays.stream(replicas.split(","))
+                .map(String::trim).filter(s -> !s.isEmpty()).toList();
+        var pools = new ReplicaRoutingDataSource.PoolFactory(props.determineUsername(), props.determinePassword(),
+                maxPoolSize, minIdle, connectionTimeout, meters.getIfAvailable());
+        return new ReplicaRoutingDataSource(pools, props.determineUrl(), replicaUrls, maxLag, lagCheckInterval);
+    }
+
+    @Bean
+    @Primary
+    public JdbcTemplate jdbcTemplate(DataSource dataSource) {
+        return new JdbcTemplate(dataSource);
+    }
+
+    @Bean
+    public JdbcTemplate readJdbcTemplate(@Qualifier("readDataSource") DataSource readDataSource) {
+        return new JdbcTemplate(readDataSource);
+    }
+}
@@ -0,0 +1,70 @@
+// src/main/java/com/astradesk/rag/config/EmbeddingSchemaInitializer.java
+package com.astradesk.rag.config;
+
+import com.astradesk.rag.service.Embeddings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Kolumna chunks.embedding ma szerokość z konfiguracji (rag.embedding-dim przez aktywny model),
+ * więc nie może być w statycznym schema.sql. Tworzy ją przy pierwszym starcie, a przy kolejnych
+ * sprawdza, czy szerokość zgadza się z modelem - inaczej start kończy się błędem zamiast
+ * błędów przy pierwszym zapisie/wyszukiwaniu. Działa na ApplicationReadyEvent jako pierwszy słuchacz
+ * (przed wznowieniem migracji, warm-upem i workerami ingestu), a nie przy odświeżaniu kontekstu: trening
+ * AppCDS (spring.context.exit=onRefresh) odświeża kontekst bez bazy. Nikt od niego nie zależy, więc
+ * {@code @Lazy(false)}: w profilu fast-startup (lazy-initialization) inaczej nigdy by nie powstał.
+ */
+@Component
+@Lazy(false)
+@DependsOnDatabaseInitialization
+public class EmbeddingSchemaInitializer {
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingSchemaInitializer.class);
+    /** Limit wymiarów indeksów ivfflat/hnsw dla typu vector w pgvector. */
+    public static final int MAX_INDEXED_DIM = 2000;
+
+    private final JdbcTemplate jdbc;
+    private final Embeddings embeddings;
+
+    public EmbeddingSchemaInitializer(JdbcTemplate jdbc, Embeddings embeddings) {
+        this.jdbc = jdbc;
+        this.embeddings = embeddings;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void ensureEmbeddingColumn() {
+        int dim = embeddings.dim();
+        Integer current = columnDim(jdbc, "embedding");
+        if (current == null) {
+            jdbc.execute("ALTER TABLE chunks ADD COLUMN IF NOT EXISTS embedding vector(" + dim + ") NOT NULL");
+            log.info("Created chunks.embedding as vector({})", dim);
+        } else if (current != dim) {
+            throw new IllegalStateException("chunks.embedding is vector(" + current + ") but the embedding model produces "
+                    + dim + " dimensions; set rag.embedding-dim=" + current
+                    + " or re-embed via /admin/embeddings/migration");
+        }
+        if (dim > MAX_INDEXED_DIM) {
+            log.warn("{} dimensions exceed the pgvector index limit ({}); searches will scan sequentially", dim, MAX_INDEXED_DIM);
+            return;
+        }
+        jdbc.execute("CREATE INDEX IF NOT EXISTS idx_chunks_embedding ON chunks USING ivfflat (embedding vector_cosine_ops) WITH (lists = 100)");
+    }
+
+    /** Zadeklarowana szerokość kolumny vector(n) albo null, gdy kolumny nie ma. */
+    public static Integer columnDim(JdbcTemplate jdbc, String column) {
+        List<Integer> rows = jdbc.queryForList(
+                "SELECT atttypmod FROM pg_attribute WHERE attrelid = 'chunks'::regclass AND attname = ? AND NOT attisdropped",
+                Integer.class, column);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+}
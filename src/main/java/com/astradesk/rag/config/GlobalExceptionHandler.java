@@ -1,6 +1,10 @@
 // src/main/java/com/astradesk/rag/config/GlobalExceptionHandler.java
 package com.astradesk.rag.config;
 
+import com.astradesk.rag.service.MigrationStateException;
+import com.astradesk.rag.service.UploadNotFoundException;
+import com.astradesk.rag.service.UploadStateException;
+import com.astradesk.rag.util.DeadlineExceededException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
@@ -33,6 +37,33 @@ public class GlobalExceptionHandler {
                 .body(Map.of("error", ex.getMessage()));
     }
 
+    @ExceptionHandler(UploadNotFoundException.class)
+    public ResponseEntity<Map<String, String>> handleNotFound(UploadNotFoundException ex) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(Map.of("error", ex.getMessage()));
+    }
+
+    @ExceptionHandler(UploadStateException.class)
+    public ResponseEntity<Map<String, String>> handleUploadState(UploadStateException ex) {
+        log.warn("Upload conflict: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", ex.getMessage()));
+    }
+
+    @ExceptionHandler(MigrationStateException.class)
+    public ResponseEntity<Map<String, String>> handleMigrationState(MigrationStateException ex) {
+        log.warn("Embedding migration conflict: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", ex.getMessage()));
+    }
+
+    @ExceptionHandler(DeadlineExceededException.class)
+    public ResponseEntity<Map<String, String>> handleDeadline(DeadlineExceededException ex) {
+        log.warn("Deadline exceeded: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                .body(Map.of("error", ex.getMessage()));
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Map<String, String>> handleGeneral(Exception ex) {
         log.error("Unexpected error", ex);
@@ -2,40 +2,46 @@
 package com.astradesk.rag.config;
 
 import com.astradesk.rag.service.*;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.util.List;
 
 @Configuration
 public class ProviderConfig {
 
     @Bean
+    @Qualifier("provider")
     @ConditionalOnProperty(name = "rag.provider.embeddings", havingValue = "springai", matchIfMissing = true)
     public Embeddings embSpring(SpringAiEmbeddings impl) { return impl; }
 
     @Bean
+    @Qualifier("provider")
     @ConditionalOnProperty(name = "rag.provider.embeddings", havingValue = "openai")
     public Embeddings embOpenAi(OpenAiHttpEmbeddings impl) { return impl; }
 
     @Bean
+    @Qualifier("provider")
     @ConditionalOnProperty(name = "rag.provider.embeddings", havingValue = "fake")
     public Embeddings embFake(@Value("${rag.embedding-dim:1536}") int dim) {
+        return new FakeEmbeddings(dim);
+    }
+
+    /**
+     * Embeddings used by search and ingest: the configured provider, or the migration
+     * target once an embedding-model migration has been cut over.
+     */
+    @Bean
+    @Primary
+    public Embeddings embeddings(EmbeddingMigrationService migration) {
         return new Embeddings() {
-            @Override
-            public float[] embed(String text) {
-                // Generate reproducible fake embeddings from text hash
-                float[] result = new float[dim];
-                int hash = text != null ? text.hashCode() : 0;
-                for (int i = 0; i < dim; i++) {
-                    hash = (hash * 31) ^ (i & 0xFF);
-                    result[i] = ((hash & 0x7FFF) / 32768.0f) - 0.5f;
-                }
-                return result;
-            }
-
-            @Override
-            public int dim() { return dim; }
+            @Override public float[] embed(String text) { return migration.active().embed(text); }
+            @Override public float[][] embedAll(List<String> texts) { return migration.active().embedAll(texts); }
+            @Override public int dim() { return migration.active().dim(); }
         };
     }
 
@@ -3,6 +3,8 @@ package com.astradesk.rag.config;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
@@ -16,6 +18,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 2)
 public class RateLimitFilter implements WebFilter {
     
     private static final Logger log = LoggerFactory.getLogger(RateLimitFilter.class);
@@ -0,0 +1,158 @@
+// src/main/java/com/astradesk/rag/config/ReplicaRoutingDataSource.java
+package com.astradesk.rag.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Read-only DataSource: round-robin over healthy replicas, falling back to a dedicated
+ * read pool on the primary when no replica is configured, reachable or fresh enough.
+ * Replica lag is polled in the background; a replica lagging more than max-lag is skipped.
+ * Only connection failures (SQLState class 08) take a replica out of rotation; other errors
+ * (e.g. an exhausted pool or a cancelled query) just route the current request elsewhere.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    /** Replay lag in seconds; 0 on a primary or when the replica has replayed everything it received. */
+    private static final String LAG_SQL =
+            "SELECT CASE WHEN NOT pg_is_in_recovery() OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+            "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0) END";
+
+    private final HikariDataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final double maxLagSeconds;
+    private final ScheduledExecutorService lagChecker;
+
+    public ReplicaRoutingDataSource(PoolFactory pools, String primaryUrl, List<String> replicaUrls,
+                                    Duration maxLag, Duration lagCheckInterval) {
+        this.primary = pools.create("rag-read-primary", primaryUrl);
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            replicas.add(new Replica(replicaUrls.get(i), pools.create("rag-read-replica-" + i, replicaUrls.get(i))));
+        }
+        this.maxLagSeconds = maxLag.toMillis() / 1000.0;
+        if (replicas.isEmpty()) {
+            this.lagChecker = null;
+        } else {
+            this.lagChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "replica-lag-check");
+                t.setDaemon(true);
+                return t;
+            });
+            lagChecker.scheduleWithFixedDelay(this::checkLag, 0, lagCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        int n = replicas.size();
+        for (int i = 0; i < n; i++) {
+            Replica r = replicas.get(Math.floorMod(next.getAndIncrement(), n));
+            if (!r.healthy) continue;
+            try {
+                return r.pool.getConnection();
+            } catch (SQLException e) {
+                if (connectionFailure(e)) {
+                    r.healthy = false;
+                    log.warn("Read replica {} unavailable, routing elsewhere: {}", r.url, e.getMessage());
+                } else {
+                    log.debug("Read replica {} busy, routing elsewhere: {}", r.url, e.getMessage());
+                }
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Credentials are fixed per pool");
+    }
+
+    void checkLag() {
+        for (Replica r : replicas) {
+            try (Connection c = r.pool.getConnection(); Statement st = c.createStatement(); ResultSet rs = st.executeQuery(LAG_SQL)) {
+                rs.next();
+                r.lagSeconds = rs.getDouble(1);
+                boolean fresh = r.lagSeconds <= maxLagSeconds;
+                if (fresh != r.healthy) {
+                    log.info("Read replica {} {} (lag {}s)", r.url, fresh ? "back in rotation" : "removed from rotation", r.lagSeconds);
+                }
+                r.healthy = fresh;
+            } catch (SQLException e) {
+                if (!connectionFailure(e)) {
+                    log.warn("Read replica {} lag check failed, keeping previous state: {}", r.url, e.getMessage());
+                    continue;
+                }
+                if (r.healthy) log.warn("Read replica {} failed lag check: {}", r.url, e.getMessage());
+                r.healthy = false;
+            }
+        }
+    }
+
+    /** SQLState class 08 (connection exception) anywhere in the cause chain, e.g. under Hikari's timeout. */
+    static boolean connectionFailure(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException s && s.getSQLState() != null && s.getSQLState().startsWith("08")) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        if (lagChecker != null) lagChecker.shutdownNow();
+        replicas.forEach(r -> r.pool.close());
+        primary.close();
+    }
+
+    private static final class Replica {
+        final String url;
+        final HikariDataSource pool;
+        /** Replicas start out of rotation until the first lag check passes. */
+        volatile boolean healthy;
+        volatile double lagSeconds = Double.NaN;
+
+        Replica(String url, HikariDataSource pool) {
+            this.url = url;
+            this.pool = pool;
+        }
+    }
+
+    /** Builds read-only Hikari pools that share credentials and sizing. */
+    public record PoolFactory(String username, String password, int maxPoolSize, int minIdle,
+                              Duration connectionTimeout, MeterRegistry meters) {
+        HikariDataSource create(String name, String url) {
+            HikariConfig cfg = new HikariConfig();
+            cfg.setPoolName(name);
+            cfg.setJdbcUrl(url);
+            cfg.setUsername(username);
+            cfg.setPassword(password);
+            cfg.setMaximumPoolSize(maxPoolSize);
+            cfg.setMinimumIdle(minIdle);
+            cfg.setConnectionTimeout(connectionTimeout.toMillis());
+            cfg.setReadOnly(true);
+            // a replica that is down at startup must not prevent the application from starting
+            cfg.setInitializationFailTimeout(-1);
+            if (meters != null) cfg.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meters));
+            return new HikariDataSource(cfg);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+// src/main/java/com/astradesk/rag/config/RequestDeadlineFilter.java
+package com.astradesk.rag.config;
+
+import com.astradesk.rag.util.Deadline;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Termin żądania dla ścieżki interaktywnej (/docs/**): z nagłówka X-Request-Timeout-Ms
+ * (ograniczonego przez rag.deadline.max) albo domyślny dla trasy. Zegar startuje przy wejściu żądania,
+ * więc czas w kolejce też się liczy. Kontrolery biorą go przez @RequestAttribute(Deadline.ATTRIBUTE).
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RequestDeadlineFilter implements WebFilter {
+    public static final String HEADER = "X-Request-Timeout-Ms";
+
+    private final Duration searchDefault;
+    private final Duration defaultTimeout;
+    private final Duration max;
+
+    public RequestDeadlineFilter(@Value("${rag.deadline.search:3s}") Duration searchDefault,
+                                 @Value("${rag.deadline.default:10s}") Duration defaultTimeout,
+                                 @Value("${rag.deadline.max:60s}") Duration max) {
+        this.searchDefault = searchDefault;
+        this.defaultTimeout = defaultTimeout;
+        this.max = max;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String path = exchange.getRequest().getPath().value();
+        if (path.startsWith("/docs/")) {
+            Duration timeout = timeoutFor(path, exchange.getRequest().getHeaders().getFirst(HEADER));
+            if (timeout == null) {
+                exchange.getResponse().setStatusCode(HttpStatus.BAD_REQUEST);
+                return exchange.getResponse().setComplete();
+            }
+            exchange.getAttributes().put(Deadline.ATTRIBUTE, Deadline.after(timeout));
+        }
+        return chain.filter(exchange);
+    }
+
+    /** Limit dla trasy; null, gdy nagłówek nie jest dodatnią liczbą milisekund. */
+    Duration timeoutFor(String path, String header) {
+        Duration timeout = path.startsWith("/docs/search") ? searchDefault : defaultTimeout;
+        if (header != null && !header.isBlank()) {
+            try {
+                long ms = Long.parseLong(header.trim());
+                if (ms <= 0) return null;
+                timeout = Duration.ofMillis(ms);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return timeout.compareTo(max) > 0 ? max : timeout;
+    }
+}
@@ -0,0 +1,95 @@
+// src/main/java/com/astradesk/rag/config/S3AsyncStorageService.java
+package com.astradesk.rag.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Asynchronous raw-object uploads with bounded concurrency.
+ * Objects carry their SHA-256 in user metadata; an upload is skipped when the
+ * stored object already has the same content hash.
+ */
+@Service
+public class S3AsyncStorageService {
+    static final String SHA256_METADATA = "sha256";
+
+    private final S3AsyncClient s3;
+    private final S3StorageService storage;
+    private final String bucket;
+    private final Semaphore permits;
+
+    public S3AsyncStorageService(S3AsyncClient s3, S3StorageService storage,
+                                 @Value("${s3.bucket}") String bucket,
+                                 @Value("${s3.upload.maxConcurrency:8}") int maxConcurrency) {
+        this.s3 = s3;
+        this.storage = storage;
+        this.bucket = bucket;
+        this.permits = new Semaphore(Math.max(1, maxConcurrency));
+    }
+
+    /**
+     * Starts the upload and returns immediately. Blocks only while {@code maxConcurrency}
+     * uploads are already in flight, which keeps buffered archive entries bounded.
+     */
+    public CompletableFuture<String> putIfChanged(String key, byte[] data, String contentType) {
+        String sha256 = sha256Hex(data);
+        storage.awaitBucket();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<String> upload;
+        try {
+            upload = sameObjectExists(key, sha256).thenCompose(exists -> exists
+                    ? CompletableFuture.completedFuture(key)
+                    : s3.putObject(PutObjectRequest.builder()
+                                    .bucket(bucket).key(key).contentType(contentType)
+                                    .metadata(Map.of(SHA256_METADATA, sha256))
+                                    .build(),
+                            AsyncRequestBody.fromBytesUnsafe(data))
+                        .thenApply(r -> key));
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        upload.whenComplete((k, e) -> permits.release());
+        return upload;
+    }
+
+    private CompletableFuture<Boolean> sameObjectExists(String key, String sha256) {
+        return s3.headObject(HeadObjectRequest.builder().bucket(bucket).key(key).build())
+                .handle((head, e) -> {
+                    if (e == null) return sha256.equals(head.metadata().get(SHA256_METADATA));
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof NoSuchKeyException
+                            || (cause instanceof S3Exception s3e && s3e.statusCode() == 404)) {
+                        return false;
+                    }
+                    throw new CompletionException(cause);
+                });
+    }
+
+    static String sha256Hex(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -6,14 +6,19 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.multipart.MultipartConfiguration;
 
 import java.net.URI;
 
 @Configuration
 public class S3Config {
+    private static final long MB = 1024L * 1024L;
+
     @Bean
     public S3Client s3(@Value("${s3.endpoint}") String endpoint,
                        @Value("${s3.region}") String region,
@@ -27,4 +32,28 @@ public class S3Config {
                 .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(pathStyle).build())
                 .build();
     }
+
+    /** Netty-based async client used for raw-object uploads; large bodies go through multipart. */
+    @Bean
+    public S3AsyncClient s3Async(@Value("${s3.endpoint}") String endpoint,
+                                 @Value("${s3.region}") String region,
+                                 @Value("${s3.accessKey}") String ak,
+                                 @Value("${s3.secretKey}") String sk,
+                                 @Value("${s3.pathStyleAccess:true}") boolean pathStyle,
+                                 @Value("${s3.upload.maxConcurrency:8}") int maxConcurrency,
+                                 @Value("${s3.upload.multipartThresholdMb:16}") long thresholdMb,
+                                 @Value("${s3.upload.partSizeMb:8}") long partSizeMb) {
+        return S3AsyncClient.builder()
+                .region(Region.of(region))
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(ak, sk)))
+                .endpointOverride(URI.create(endpoint))
+                .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(pathStyle).build())
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder().maxConcurrency(maxConcurrency * 4))
+                .multipartEnabled(true)
+                .multipartConfiguration(MultipartConfiguration.builder()
+                        .thresholdInBytes(thresholdMb * MB)
+                        .minimumPartSizeInBytes(partSizeMb * MB)
+                        .build())
+                .build();
+    }
 }
@@ -8,11 +8,19 @@ import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
 
 import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Service
 public class S3StorageService {
     private final S3Client s3; private final String bucket;
-    public S3StorageService(S3Client s3, @Value("${s3.bucket}") String bucket) { this.s3 = s3; this.bucket = bucket; ensureBucket(); }
+    private volatile CompletableFuture<Void> bucketReady;
+
+    public S3StorageService(S3Client s3, @Value("${s3.bucket}") String bucket, BackgroundInitializer init) {
+        this.s3 = s3; this.bucket = bucket;
+        // MinIO bywa wolne przy starcie - nie blokujemy kontekstu, sprawdzamy bucket w tle
+        this.bucketReady = init.run("s3-bucket", false, this::ensureBucket);
+    }
 
     private void ensureBucket() {
         try { s3.headBucket(HeadBucketRequest.builder().bucket(bucket).build()); }
@@ -23,9 +31,29 @@ public class S3StorageService {
         }
     }
 
+    /** Czeka na sprawdzenie bucketu w tle; jeśli się nie udało (np. S3 niedostępne przy starcie), ponawia. */
+    public void awaitBucket() {
+        try {
+            bucketReady.join();
+        } catch (CompletionException e) {
+            synchronized (this) {
+                if (bucketReady.isCompletedExceptionally()) {
+                    ensureBucket();
+                    bucketReady = CompletableFuture.completedFuture(null);
+                }
+            }
+        }
+    }
+
     public String put(String key, InputStream data, long size, String contentType) {
+        awaitBucket();
         s3.putObject(PutObjectRequest.builder().bucket(bucket).key(key).contentType(contentType).build(),
                 RequestBody.fromInputStream(data, size));
         return key;
     }
+
+    public byte[] get(String key) {
+        awaitBucket();
+        return s3.getObjectAsBytes(GetObjectRequest.builder().bucket(bucket).key(key).build()).asByteArray();
+    }
 }
@@ -1,11 +1,16 @@
 // src/main/java/com/astradesk/rag/controller/DocumentController.java
 package com.astradesk.rag.controller;
 
+import com.astradesk.rag.model.BatchSearchRequest;
+import com.astradesk.rag.model.BatchSearchResult;
+import com.astradesk.rag.model.ChunkContent;
 import com.astradesk.rag.model.ChunkRecord;
 import com.astradesk.rag.service.RagService;
+import com.astradesk.rag.util.Deadline;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
 import java.util.List;
 
 @RestController
@@ -14,8 +19,31 @@ public class DocumentController {
     private final RagService rag;
     public DocumentController(RagService rag) { this.rag = rag; }
 
+    /** {@code projection=slim}: id, wynik, strony i fragment zamiast pełnej treści (widoki list). */
     @GetMapping(path = "/search")
-    public List<ChunkRecord> search(@RequestParam String q, @RequestParam(required=false) Integer k) {
-        return rag.search(q, k);
+    public List<?> search(@RequestParam String q, @RequestParam(required=false) Integer k,
+                          @RequestParam(defaultValue = "full") String projection,
+                          @RequestAttribute(Deadline.ATTRIBUTE) Deadline deadline) {
+        return switch (projection) {
+            case "full" -> rag.search(q, k, deadline);
+            case "slim" -> rag.searchSlim(q, k, deadline);
+            default -> throw new IllegalArgumentException("projection must be 'full' or 'slim'");
+        };
+    }
+
+    /** Pełna treść wybranych chunków, np. po rozwinięciu wyniku z projection=slim. */
+    @GetMapping(path = "/chunks")
+    public List<ChunkContent> chunks(@RequestParam List<Long> ids, @RequestAttribute(Deadline.ATTRIBUTE) Deadline deadline) {
+        return rag.fetchChunks(ids, deadline);
+    }
+
+    /** Wiele pod-zapytań (query expansion, multi-hop) w jednym żądaniu; wyniki w kolejności zapytań. */
+    @PostMapping(path = "/search/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public List<BatchSearchResult> searchBatch(@RequestBody BatchSearchRequest req,
+                                               @RequestAttribute(Deadline.ATTRIBUTE) Deadline deadline) {
+        List<List<ChunkRecord>> hits = rag.searchBatch(req.queries(), req.k(), deadline);
+        List<BatchSearchResult> out = new ArrayList<>(hits.size());
+        for (int i = 0; i < hits.size(); i++) out.add(new BatchSearchResult(req.queries().get(i), hits.get(i)));
+        return out;
     }
 }
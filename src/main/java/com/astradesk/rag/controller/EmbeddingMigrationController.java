@@ -0,0 +1,39 @@
+// src/main/java/com/astradesk/rag/controller/EmbeddingMigrationController.java
+package com.astradesk.rag.controller;
+
+import com.astradesk.rag.model.EmbeddingMigrationStatus;
+import com.astradesk.rag.service.EmbeddingMigrationService;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Operacje administracyjne migracji modelu embeddingów (start → cutover → finalize, z pauzą i rollbackiem).
+ * POST-y wymagają nagłówka X-API-Key ({@code rag.api-key}); bez skonfigurowanego klucza ApiKeyValidator odrzuca je (403).
+ */
+@RestController
+@RequestMapping(path = "/admin/embeddings/migration", produces = MediaType.APPLICATION_JSON_VALUE)
+public class EmbeddingMigrationController {
+    private final EmbeddingMigrationService migration;
+    public EmbeddingMigrationController(EmbeddingMigrationService migration) { this.migration = migration; }
+
+    @GetMapping
+    public EmbeddingMigrationStatus status() { return migration.status(); }
+
+    @PostMapping("/start")
+    public EmbeddingMigrationStatus start() { return migration.start(); }
+
+    @PostMapping("/pause")
+    public EmbeddingMigrationStatus pause() { return migration.pause(); }
+
+    @PostMapping("/cutover")
+    public EmbeddingMigrationStatus cutover() { return migration.cutover(); }
+
+    @PostMapping("/rollback")
+    public EmbeddingMigrationStatus rollback() { return migration.rollback(); }
+
+    @PostMapping("/abort")
+    public EmbeddingMigrationStatus abort() { return migration.abort(); }
+
+    @PostMapping("/finalize")
+    public EmbeddingMigrationStatus finalizeMigration() { return migration.finalizeMigration(); }
+}
@@ -0,0 +1,72 @@
+// src/main/java/com/astradesk/rag/controller/UploadController.java
+package com.astradesk.rag.controller;
+
+import com.astradesk.rag.model.CreateUploadRequest;
+import com.astradesk.rag.model.ProgressEvent;
+import com.astradesk.rag.model.UploadPart;
+import com.astradesk.rag.model.UploadStatus;
+import com.astradesk.rag.service.IngestProgress;
+import com.astradesk.rag.service.ResumableUploadService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Upload wznawialny dużych archiwów ZIP:
+ * <pre>
+ * POST   /uploads                      {"filename", "collection", "totalSize"} → id
+ * PUT    /uploads/{id}/parts/{n}       surowe bajty części, nagłówek X-Part-Sha256 (hex, opcjonalny)
+ * GET    /uploads/{id}                 odebrane części - klient wznawia od brakujących
+ * POST   /uploads/{id}/complete        złożenie i ingest, postęp jako SSE (jak /ingest/zip)
+ * DELETE /uploads/{id}                 porzucenie
+ * </pre>
+ */
+@RestController
+@RequestMapping(path = "/uploads", produces = MediaType.APPLICATION_JSON_VALUE)
+public class UploadController {
+    private final ResumableUploadService uploads;
+    private final Duration heartbeat;
+
+    public UploadController(ResumableUploadService uploads, @Value("${rag.ingest.heartbeat:15s}") Duration heartbeat) {
+        this.uploads = uploads;
+        this.heartbeat = heartbeat;
+    }
+
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<UploadStatus> create(@RequestBody CreateUploadRequest req) {
+        UploadStatus st = uploads.create(req);
+        return ResponseEntity.created(URI.create("/uploads/" + st.id())).body(st);
+    }
+
+    @GetMapping("/{id}")
+    public UploadStatus status(@PathVariable String id) {
+        return uploads.status(id);
+    }
+
+    @PutMapping(path = "/{id}/parts/{number}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public Mono<UploadPart> putPart(@PathVariable String id, @PathVariable int number,
+                                    @RequestHeader(value = "X-Part-Sha256", required = false) String sha256,
+                                    @RequestBody Flux<DataBuffer> body) {
+        return uploads.putPart(id, number, body, sha256);
+    }
+
+    @PostMapping(path = "/{id}/complete", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<ProgressEvent>> complete(@PathVariable String id,
+                                                         @RequestParam(value = "onDisconnect", required = false, defaultValue = "detach") String onDisconnect) {
+        return ZipController.asSse(uploads.complete(id, IngestProgress.OnDisconnect.parse(onDisconnect)), heartbeat);
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> abort(@PathVariable String id) {
+        uploads.abort(id);
+        return ResponseEntity.noContent().build();
+    }
+}
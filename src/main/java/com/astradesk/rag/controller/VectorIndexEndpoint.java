@@ -0,0 +1,36 @@
+// src/main/java/com/astradesk/rag/controller/VectorIndexEndpoint.java
+package com.astradesk.rag.controller;
+
+import com.astradesk.rag.service.VectorIndexMaintainer;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * /actuator/vectorindex: GET - aktualne i docelowe parametry indeksu ANN, dryf, ostatnia decyzja;
+ * POST - przebudowa teraz, poza oknem serwisowym. POST wymaga nagłówka X-API-Key ({@code rag.api-key});
+ * bez skonfigurowanego klucza ApiKeyValidator odrzuca go (403), zostaje JMX.
+ */
+@Component
+@Endpoint(id = "vectorindex")
+public class VectorIndexEndpoint {
+
+    private final VectorIndexMaintainer maintainer;
+
+    public VectorIndexEndpoint(VectorIndexMaintainer maintainer) {
+        this.maintainer = maintainer;
+    }
+
+    @ReadOperation
+    public Map<String, Object> state() {
+        return maintainer.state();
+    }
+
+    @WriteOperation
+    public Map<String, Object> rebuild() {
+        return maintainer.rebuildNow();
+    }
+}
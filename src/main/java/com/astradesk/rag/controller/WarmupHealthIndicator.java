@@ -0,0 +1,36 @@
+// src/main/java/com/astradesk/rag/controller/WarmupHealthIndicator.java
+package com.astradesk.rag.controller;
+
+import com.astradesk.rag.service.RetrievalWarmup;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * "warmup" health contributor (readiness group): OUT_OF_SERVICE until the retrieval
+ * warm-up finishes. A failed or timed-out warm-up is reported in details but does not block traffic.
+ */
+@Component
+@Lazy(false)
+public class WarmupHealthIndicator implements HealthIndicator {
+
+    private final RetrievalWarmup warmup;
+
+    public WarmupHealthIndicator(RetrievalWarmup warmup) {
+        this.warmup = warmup;
+    }
+
+    @Override
+    public Health health() {
+        RetrievalWarmup.Phase phase = warmup.phase();
+        Health.Builder b = switch (phase) {
+            case DONE, DISABLED, TIMED_OUT, FAILED -> Health.up();
+            default -> Health.outOfService();
+        };
+        b.withDetail("phase", phase.name())
+                .withDetail("searches", warmup.completedSearches() + "/" + warmup.totalSearches());
+        if (warmup.error() != null) b.withDetail("error", warmup.error());
+        return b.build();
+    }
+}
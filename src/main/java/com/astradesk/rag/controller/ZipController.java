@@ -2,29 +2,52 @@
 package com.astradesk.rag.controller;
 
 import com.astradesk.rag.model.ProgressEvent;
+import com.astradesk.rag.service.IngestProgress;
 import com.astradesk.rag.service.ZipIngestService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import reactor.core.publisher.Flux;
 
+import java.time.Duration;
+
 @RestController
 @RequestMapping(path = "/ingest", produces = MediaType.APPLICATION_NDJSON_VALUE)
 public class ZipController {
     private final ZipIngestService svc;
-    public ZipController(ZipIngestService svc) { this.svc = svc; }
+    private final Duration heartbeat;
+
+    public ZipController(ZipIngestService svc, @Value("${rag.ingest.heartbeat:15s}") Duration heartbeat) {
+        this.svc = svc;
+        this.heartbeat = heartbeat;
+    }
 
     /**
      * Przyjmuje ZIP i streamuje postęp jako SSE (Server‑sent Events).
      * Zwracamy zdarzenia postępu zgodne z Ndjson/SSE Flux.
+     * Co {@code rag.ingest.heartbeat} idzie komentarz SSE, żeby proxy nie zamykały bezczynnego połączenia.
+     * {@code onDisconnect=cancel|detach}: czy rozłączenie klienta przerywa ingest, czy pozwala mu dokończyć w tle.
      */
     @PostMapping(path = "/zip", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public Flux<ServerSentEvent<ProgressEvent>> upload(@RequestParam("file") MultipartFile file,
                                                        @RequestParam(value = "collection", required = false, defaultValue = "default") String collection,
                                                        @RequestParam(value = "maxLen", required = false, defaultValue = "1200") int maxLen,
-                                                       @RequestParam(value = "overlap", required = false, defaultValue = "200") int overlap) {
-        return svc.ingestZipAsStream(file, collection, maxLen, overlap)
-                .map(ev -> ServerSentEvent.builder(ev).event("progress").build());
+                                                       @RequestParam(value = "overlap", required = false, defaultValue = "200") int overlap,
+                                                       @RequestParam(value = "onDisconnect", required = false) String onDisconnect) {
+        Flux<ProgressEvent> events = onDisconnect == null
+                ? svc.ingestZipAsStream(file, collection, maxLen, overlap)
+                : svc.ingestZipAsStream(file, collection, maxLen, overlap, IngestProgress.OnDisconnect.parse(onDisconnect));
+        return asSse(events, heartbeat);
+    }
+
+    /** Zdarzenia postępu jako SSE "progress" z komentarzem keepalive co {@code heartbeat}, aż strumień się skończy. */
+    static Flux<ServerSentEvent<ProgressEvent>> asSse(Flux<ProgressEvent> events, Duration heartbeat) {
+        return events.map(ev -> ServerSentEvent.builder(ev).event("progress").build())
+                .publish(shared -> Flux.merge(shared,
+                        Flux.interval(heartbeat)
+                                .map(i -> ServerSentEvent.<ProgressEvent>builder().comment("keepalive").build())
+                                .takeUntilOther(shared.then())));
     }
 }
\ No newline at end of file
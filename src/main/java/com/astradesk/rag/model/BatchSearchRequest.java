@@ -0,0 +1,6 @@
+// src/main/java/com/astradesk/rag/model/BatchSearchRequest.java
+package com.astradesk.rag.model;
+
+import java.util.List;
+
+public record BatchSearchRequest(List<String> queries, Integer k) {}
@@ -0,0 +1,6 @@
+// src/main/java/com/astradesk/rag/model/BatchSearchResult.java
+package com.astradesk.rag.model;
+
+import java.util.List;
+
+public record BatchSearchResult(String query, List<ChunkRecord> results) {}
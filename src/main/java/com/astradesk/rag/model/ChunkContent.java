@@ -0,0 +1,5 @@
+// src/main/java/com/astradesk/rag/model/ChunkContent.java
+package com.astradesk.rag.model;
+
+/** Pełna treść chunka pobierana na żądanie (GET /docs/chunks?ids=...). */
+public record ChunkContent(long id, long docId, int chunkIndex, Integer pageFrom, Integer pageTo, String content) {}
@@ -0,0 +1,9 @@
+// src/main/java/com/astradesk/rag/model/ChunkSnippet.java
+package com.astradesk.rag.model;
+
+/**
+ * Lekki wynik wyszukiwania (projection=slim): bez pełnej treści, z krótkim fragmentem z wyróżnieniem.
+ * {@code snippet} to escapowany HTML, w którym jedynymi znacznikami są {@code <mark>...</mark>}.
+ */
+public record ChunkSnippet(long id, long docId, int chunkIndex, Integer pageFrom, Integer pageTo,
+                           double score, String snippet) {}
@@ -0,0 +1,5 @@
+// src/main/java/com/astradesk/rag/model/CreateUploadRequest.java
+package com.astradesk.rag.model;
+
+/** Rozpoczęcie uploadu wznawialnego; {@code totalSize} (opcjonalny) jest sprawdzany przy złożeniu. */
+public record CreateUploadRequest(String filename, String collection, Long totalSize, Integer maxLen, Integer overlap) {}
@@ -0,0 +1,6 @@
+// src/main/java/com/astradesk/rag/model/EmbeddingMigrationStatus.java
+package com.astradesk.rag.model;
+
+/** Stan migracji modelu embeddingów; {@code activeModel} to model używany teraz przez ten węzeł. */
+public record EmbeddingMigrationStatus(String status, String sourceModel, String targetModel, int targetDim,
+                                       long lastChunkId, long processed, String activeModel) {}
@@ -0,0 +1,4 @@
+// src/main/java/com/astradesk/rag/model/UploadPart.java
+package com.astradesk.rag.model;
+
+public record UploadPart(int number, long size, String sha256) {}
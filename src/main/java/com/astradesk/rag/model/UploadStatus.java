@@ -0,0 +1,7 @@
+// src/main/java/com/astradesk/rag/model/UploadStatus.java
+package com.astradesk.rag.model;
+
+import java.util.List;
+
+public record UploadStatus(String id, String filename, String collection, Long totalSize, long receivedBytes,
+                           boolean completed, List<UploadPart> parts) {}
@@ -1,32 +1,232 @@
 // src/main/java/com/astradesk/rag/repo/ChunkJdbcRepository.java
 package com.astradesk.rag.repo;
 
+import com.astradesk.rag.model.ChunkContent;
 import com.astradesk.rag.model.ChunkRecord;
+import com.astradesk.rag.model.ChunkSnippet;
+import com.astradesk.rag.util.Deadline;
 import com.pgvector.PGvector;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.List;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 @Repository
 public class ChunkJdbcRepository {
-    private final JdbcTemplate jdbc;
-    public ChunkJdbcRepository(JdbcTemplate jdbc) { this.jdbc = jdbc; }
+    private static final RowMapper<ChunkRecord> CHUNK = (rs, rn) -> new ChunkRecord(
+            rs.getLong("id"), rs.getLong("doc_id"), rs.getInt("chunk_index"),
+            (Integer) rs.getObject("page_from"), (Integer) rs.getObject("page_to"),
+            rs.getString("content"), rs.getDouble("score"));
 
-    public void insertChunk(long docId, int idx, Integer pFrom, Integer pTo, String sourceKey, String content, float[] emb) {
-        jdbc.update("INSERT INTO chunks(doc_id, chunk_index, page_from, page_to, source_key, content, embedding) VALUES (?,?,?,?,?,?,?)",
-                docId, idx, pFrom, pTo, sourceKey, content, new PGvector(emb));
+    /** Fragment z wyróżnieniem liczy ts_headline tylko dla k trafień i tylko na początku treści. */
+    private static final String HEADLINE_OPTIONS = "MaxFragments=1, MaxWords=%d, MinWords=%d, StartSel=<mark>, StopSel=</mark>";
+    /** Treść z dokumentów jest niezaufana: escapowanie HTML (najpierw {@code &}) przed wstawieniem {@code <mark>}. */
+    private static final String HTML_ESCAPED = "replace(replace(replace(replace(replace(left(h.content, ?), " +
+            "'&', '&amp;'), '<', '&lt;'), '>', '&gt;'), '\"', '&quot;'), '''', '&#39;')";
+
+    private final JdbcTemplate jdbc;      // pula zapisów (ingest)
+    private final JdbcTemplate readJdbc;  // pula odczytów / repliki (wyszukiwanie)
+    private final TransactionTemplate readTx;
+    /** SET LOCAL z parametrem wyszukiwania indeksu ANN (ivfflat.probes / hnsw.ef_search); null = domyślne pgvector. */
+    private volatile String searchSetting;
+
+    public ChunkJdbcRepository(JdbcTemplate jdbc, @Qualifier("readJdbcTemplate") JdbcTemplate readJdbc) {
+        this.jdbc = jdbc; this.readJdbc = readJdbc;
+        this.readTx = new TransactionTemplate(new DataSourceTransactionManager(readJdbc.getDataSource()));
+        this.readTx.setReadOnly(true);
+    }
+
+    /**
+     * Parametr zapytań ANN dla bieżącego indeksu (ustawia VectorIndexMaintainer): ivfflat.probes
+     * albo hnsw.ef_search, stosowany przez SET LOCAL w transakcji tylko-do-odczytu każdego wyszukiwania.
+     */
+    public void setSearchParam(String method, int value) {
+        if (value <= 0) throw new IllegalArgumentException("ANN search parameter must be positive: " + value);
+        searchSetting = switch (method) {
+            case "ivfflat" -> "SET LOCAL ivfflat.probes = " + value;
+            case "hnsw" -> "SET LOCAL hnsw.ef_search = " + value;
+            default -> throw new IllegalArgumentException("Unknown ANN index method: " + method);
+        };
+    }
+
+    /** Bez indeksu ANN (seq scan) - zapytania bez SET LOCAL. */
+    public void clearSearchParam() {
+        searchSetting = null;
+    }
+
+    public String searchSetting() {
+        return searchSetting;
+    }
+
+    public long insertChunk(long docId, int idx, Integer pFrom, Integer pTo, String sourceKey, String content, float[] emb) {
+        return insertChunk(docId, idx, pFrom, pTo, sourceKey, content, emb, null);
+    }
+
+    /** Zapisuje chunk razem z odciskiem SimHash (null = bez deduplikacji); zwraca id. */
+    public long insertChunk(long docId, int idx, Integer pFrom, Integer pTo, String sourceKey, String content, float[] emb,
+                            Long simhash) {
+        return jdbc.queryForObject("INSERT INTO chunks(doc_id, chunk_index, page_from, page_to, source_key, content, embedding, simhash) " +
+                        "VALUES (?,?,?,?,?,?,?,?) RETURNING id",
+                Long.class, docId, idx, pFrom, pTo, sourceKey, content, new PGvector(emb), simhash);
+    }
+
+    public boolean exists(long id) {
+        return Boolean.TRUE.equals(jdbc.queryForObject("SELECT EXISTS (SELECT 1 FROM chunks WHERE id = ?)", Boolean.class, id));
+    }
+
+    /**
+     * Zapisuje wystąpienie prawie-duplikatu jako odnośnik do kanonicznego chunka (bez treści i wektora).
+     * Zwraca false, jeśli kanonicznego chunka już nie ma (dokument usunięty, także równolegle) albo należy
+     * on do innego dokumentu, który jest jeszcze w trakcie ingestu.
+     */
+    public boolean insertDuplicate(long docId, int idx, Integer pFrom, Integer pTo, String sourceKey, long canonicalId, int distance) {
+        try {
+            return jdbc.update("INSERT INTO chunk_duplicates(doc_id, chunk_index, page_from, page_to, source_key, canonical_id, distance) " +
+                    "SELECT ?, ?, ?, ?, ?, c.id, ? FROM chunks c JOIN docs d ON d.id = c.doc_id " +
+                    "WHERE c.id = ? AND (NOT d.ingesting OR d.id = ?)",
+                    docId, idx, pFrom, pTo, sourceKey, distance, canonicalId, docId) > 0;
+        } catch (DataIntegrityViolationException e) {
+            return false; // kanoniczny usunięty między SELECT a sprawdzeniem klucza obcego
+        }
+    }
+
+    /** Zapisane odciski SimHash chunków kolekcji: (id chunka, simhash); bez dokumentów w trakcie ingestu. */
+    public void forEachSimhash(String collection, BiConsumer<Long, Long> consumer) {
+        jdbc.query("SELECT c.id, c.simhash FROM chunks c JOIN docs d ON d.id = c.doc_id " +
+                        "WHERE d.collection = ? AND NOT d.ingesting AND c.simhash IS NOT NULL ORDER BY c.id",
+                (RowCallbackHandler) rs -> consumer.accept(rs.getLong(1), rs.getLong(2)), collection);
     }
 
     public List<ChunkRecord> findSimilar(float[] query, int k) {
+        return findSimilar(query, k, Deadline.none());
+    }
+
+    /** Jak wyżej, z limitem czasu zapytania wynikającym z terminu żądania. */
+    public List<ChunkRecord> findSimilar(float[] query, int k, Deadline deadline) {
         String sql = "SELECT id, doc_id, chunk_index, page_from, page_to, content, 1 - (embedding <=> ?) AS score " +
                 "FROM chunks ORDER BY embedding <=> ? LIMIT ?";
         var q = new PGvector(query);
-        RowMapper<ChunkRecord> rm = (rs, rn) -> new ChunkRecord(
+        return annSearch(() -> readJdbc.query(con -> {
+            PreparedStatement ps = prepare(con, sql, deadline);
+            ps.setObject(1, q);
+            ps.setObject(2, q);
+            ps.setInt(3, k);
+            return ps;
+        }, CHUNK));
+    }
+
+    /**
+     * Top-k dla wielu zapytań w jednym round tripie: LATERAL po tablicy wektorów,
+     * każdy podzapytanie korzysta z indeksu ANN. Wynik pogrupowany w kolejności zapytań.
+     */
+    public List<List<ChunkRecord>> findSimilarBatch(List<float[]> queries, int k) {
+        return findSimilarBatch(queries, k, Deadline.none());
+    }
+
+    public List<List<ChunkRecord>> findSimilarBatch(List<float[]> queries, int k, Deadline deadline) {
+        String sql = "SELECT q.ord, c.* FROM unnest(?::text[]) WITH ORDINALITY AS t(v, ord) " +
+                "CROSS JOIN LATERAL (SELECT t.v::vector AS vec, t.ord) q " +
+                "CROSS JOIN LATERAL (SELECT id, doc_id, chunk_index, page_from, page_to, content, " +
+                "1 - (embedding <=> q.vec) AS score FROM chunks ORDER BY embedding <=> q.vec LIMIT ?) c " +
+                "ORDER BY q.ord, c.score DESC";
+        String[] vectors = queries.stream().map(v -> new PGvector(v).getValue()).toArray(String[]::new);
+        List<List<ChunkRecord>> out = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) out.add(new ArrayList<>(k));
+        annSearch(() -> {
+            readJdbc.query(con -> {
+                PreparedStatement ps = prepare(con, sql, deadline);
+                ps.setArray(1, con.createArrayOf("text", vectors));
+                ps.setInt(2, k);
+                return ps;
+            }, (RowCallbackHandler) rs -> out.get(rs.getInt("ord") - 1).add(CHUNK.mapRow(rs, 0)));
+            return null;
+        });
+        return out;
+    }
+
+    /**
+     * Top-k bez pełnej treści: id, wynik, strony i fragment z ts_headline (konfiguracja 'simple',
+     * bo korpus jest wielojęzyczny), liczony w SQL nad podzapytaniem top-k z pierwszych {@code scanChars} znaków.
+     * Kontrakt: fragment to bezpieczny HTML - treść jest escapowana ({@code & < > " '}) przed ts_headline,
+     * więc jedynymi znacznikami są dodane przez nas {@code <mark>...</mark>}.
+     */
+    public List<ChunkSnippet> findSimilarSlim(float[] query, String queryText, int k, int maxWords, int scanChars) {
+        return findSimilarSlim(query, queryText, k, maxWords, scanChars, Deadline.none());
+    }
+
+    public List<ChunkSnippet> findSimilarSlim(float[] query, String queryText, int k, int maxWords, int scanChars,
+                                              Deadline deadline) {
+        String sql = "SELECT h.id, h.doc_id, h.chunk_index, h.page_from, h.page_to, h.score, " +
+                "ts_headline('simple', " + HTML_ESCAPED + ", plainto_tsquery('simple', ?), ?) AS snippet " +
+                "FROM (SELECT id, doc_id, chunk_index, page_from, page_to, content, 1 - (embedding <=> ?) AS score " +
+                "FROM chunks ORDER BY embedding <=> ? LIMIT ?) h ORDER BY h.score DESC";
+        var q = new PGvector(query);
+        String options = String.format(Locale.ROOT, HEADLINE_OPTIONS, maxWords, Math.max(1, maxWords / 2));
+        return annSearch(() -> readJdbc.query(con -> {
+            PreparedStatement ps = prepare(con, sql, deadline);
+            ps.setInt(1, scanChars);
+            ps.setString(2, queryText);
+            ps.setString(3, options);
+            ps.setObject(4, q);
+            ps.setObject(5, q);
+            ps.setInt(6, k);
+            return ps;
+        }, (rs, rn) -> new ChunkSnippet(
                 rs.getLong("id"), rs.getLong("doc_id"), rs.getInt("chunk_index"),
                 (Integer) rs.getObject("page_from"), (Integer) rs.getObject("page_to"),
-                rs.getString("content"), rs.getDouble("score"));
-        return jdbc.query(sql, rm, q, q, k);
+                rs.getDouble("score"), rs.getString("snippet"))));
+    }
+
+    /** Pełna treść wielu chunków jednym zapytaniem, w kolejności {@code ids}; nieistniejące id są pomijane. */
+    public List<ChunkContent> findByIds(List<Long> ids) {
+        return findByIds(ids, Deadline.none());
+    }
+
+    public List<ChunkContent> findByIds(List<Long> ids, Deadline deadline) {
+        if (ids.isEmpty()) return List.of();
+        Map<Long, ChunkContent> byId = new HashMap<>();
+        readJdbc.query(con -> {
+            PreparedStatement ps = prepare(con,
+                    "SELECT id, doc_id, chunk_index, page_from, page_to, content FROM chunks WHERE id = ANY(?)", deadline);
+            ps.setArray(1, con.createArrayOf("bigint", ids.toArray()));
+            return ps;
+        }, (RowCallbackHandler) rs -> byId.put(rs.getLong("id"), new ChunkContent(
+                rs.getLong("id"), rs.getLong("doc_id"), rs.getInt("chunk_index"),
+                (Integer) rs.getObject("page_from"), (Integer) rs.getObject("page_to"), rs.getString("content"))));
+        List<ChunkContent> out = new ArrayList<>(byId.size());
+        for (Long id : new LinkedHashSet<>(ids)) {
+            ChunkContent c = byId.get(id);
+            if (c != null) out.add(c);
+        }
+        return out;
+    }
+
+    /** Zapytanie ANN z parametrem wyszukiwania indeksu; SET LOCAL obowiązuje tylko w tej transakcji. */
+    private <T> T annSearch(Supplier<T> query) {
+        String setting = searchSetting;
+        if (setting == null) return query.get();
+        return readTx.execute(status -> {
+            readJdbc.execute(setting);
+            return query.get();
+        });
+    }
+
+    /** setQueryTimeout z terminu żądania: Postgres anuluje zapytanie po stronie serwera. */
+    private static PreparedStatement prepare(Connection con, String sql, Deadline deadline) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(sql);
+        int timeout = deadline.statementTimeoutSeconds("search");
+        if (timeout > 0) ps.setQueryTimeout(timeout);
+        return ps;
     }
 }
@@ -2,15 +2,67 @@
 package com.astradesk.rag.repo;
 
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
 
 @Repository
 public class DocumentJdbcRepository {
     private final JdbcTemplate jdbc;
-    public DocumentJdbcRepository(JdbcTemplate jdbc) { this.jdbc = jdbc; }
+    private final TransactionTemplate tx;
+
+    public DocumentJdbcRepository(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(new DataSourceTransactionManager(jdbc.getDataSource()));
+    }
 
     public long insertDoc(String title, String language) {
-        return jdbc.queryForObject("INSERT INTO docs(title, language) VALUES (?,?) RETURNING id",
-                (rs, rn) -> rs.getLong(1), title, language);
+        return insertDoc(title, language, null);
+    }
+
+    public long insertDoc(String title, String language, String collection) {
+        return jdbc.queryForObject("INSERT INTO docs(title, language, collection) VALUES (?,?,?) RETURNING id",
+                (rs, rn) -> rs.getLong(1), title, language, collection);
+    }
+
+    /**
+     * Dokument w trakcie ingestu (docs.ingesting): jego chunki nie są kanoniczne dla deduplikacji
+     * innych dokumentów, dopóki {@link #markIndexed} nie zatwierdzi kompletnego wyniku.
+     */
+    public long insertIngestingDoc(String title, String collection) {
+        return jdbc.queryForObject("INSERT INTO docs(title, collection, ingesting) VALUES (?,?,true) RETURNING id",
+                (rs, rn) -> rs.getLong(1), title, collection);
+    }
+
+    public void markIndexed(long id) {
+        jdbc.update("UPDATE docs SET ingesting = false WHERE id = ?", id);
+    }
+
+    /**
+     * Usuwa dokument razem z chunkami (ON DELETE CASCADE). Chunk kanoniczny, do którego odsyłają
+     * prawie-duplikaty z innych dokumentów, nie znika razem z nimi: najstarsze takie wystąpienie
+     * dostaje pełny chunk (treść, wektor i odcisk kanonicznego), a pozostałe odnośniki przechodzą na niego.
+     */
+    public void deleteDoc(long id) {
+        tx.executeWithoutResult(status -> {
+            // blokada chunków dokumentu wstrzymuje równoległe insertDuplicate (FK) do końca transakcji
+            jdbc.query("SELECT id FROM chunks WHERE doc_id = ? FOR UPDATE", (rs, rn) -> null, id);
+            List<long[]> heirs = jdbc.query("SELECT DISTINCT ON (d.canonical_id) d.canonical_id, d.id " +
+                            "FROM chunk_duplicates d JOIN chunks c ON c.id = d.canonical_id " +
+                            "WHERE c.doc_id = ? AND d.doc_id <> ? ORDER BY d.canonical_id, d.id",
+                    (rs, rn) -> new long[]{rs.getLong(1), rs.getLong(2)}, id, id);
+            for (long[] heir : heirs) {
+                Long promoted = jdbc.queryForObject("INSERT INTO chunks(doc_id, chunk_index, page_from, page_to, source_key, " +
+                                "content, embedding, simhash) SELECT d.doc_id, d.chunk_index, d.page_from, d.page_to, d.source_key, " +
+                                "c.content, c.embedding, c.simhash FROM chunk_duplicates d JOIN chunks c ON c.id = d.canonical_id " +
+                                "WHERE d.id = ? RETURNING id", Long.class, heir[1]);
+                jdbc.update("UPDATE chunk_duplicates SET canonical_id = ? WHERE canonical_id = ? AND doc_id <> ?",
+                        promoted, heir[0], id);
+                jdbc.update("DELETE FROM chunk_duplicates WHERE id = ?", heir[1]);
+            }
+            jdbc.update("DELETE FROM docs WHERE id = ?", id);
+        });
     }
 }
@@ -0,0 +1,340 @@
+// src/main/java/com/astradesk/rag/service/AdmissionController.java
+package com.astradesk.rag.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Globalna kontrola przyjęć: limit równoległych żądań per klasa tras i krótka kolejka przed nim.
+ * <ul>
+ *   <li>search: limit adaptacyjny (AIMD) - maleje o 10% (najwyżej raz na interval), gdy czas obsługi
+ *       przekracza latency-target albo odpowiedź to 503/504, rośnie o ~1 na pełne okno udanych żądań;</li>
+ *   <li>ingest: stały limit; nowe żądania są odrzucane, dopóki kolejka search stoi (priorytet wyszukiwania);</li>
+ *   <li>stream: to samo dla długich strumieni SSE (ingest ZIP, zakończenie uploadu) - osobny limit,
+ *       żeby kilka trwających ingestów nie zajęło miejsc krótkich wywołań (części, status).</li>
+ * </ul>
+ * Kolejka w stylu CoDel: zwykle czeka się do queue-timeout (FIFO), ale gdy kolejka nie opróżniła się
+ * przez interval, czas czekania skraca się do target-delay, a obsługa przechodzi na LIFO - świeże żądania
+ * mają szansę zdążyć, stare dostają szybko 503 zamiast timeoutu. Czekanie nie blokuje wątku.
+ * Metryki: rag.admission.accepted, rag.admission.shed{reason}, rag.admission.limit, .inflight, .queue, .queue.wait.
+ */
+@Component
+public class AdmissionController {
+
+    public enum RouteClass {
+        SEARCH, INGEST, STREAM;
+
+        public String tag() { return name().toLowerCase(Locale.ROOT); }
+    }
+
+    /** Żądanie odrzucone (503); retryAfter trafia do nagłówka Retry-After. */
+    public static final class Rejected extends RuntimeException {
+        private final RouteClass routeClass;
+        private final String reason;
+        private final Duration retryAfter;
+
+        Rejected(RouteClass routeClass, String reason, Duration retryAfter) {
+            super(routeClass.tag() + " overloaded: " + reason, null, false, false);
+            this.routeClass = routeClass;
+            this.reason = reason;
+            this.retryAfter = retryAfter;
+        }
+
+        public RouteClass routeClass() { return routeClass; }
+
+        public String reason() { return reason; }
+
+        public Duration retryAfter() { return retryAfter; }
+    }
+
+    /** Zajęte miejsce w limicie; release() jest idempotentne. */
+    public static final class Permit {
+        private final Lane lane;
+        private final long grantedAt = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Lane lane) { this.lane = lane; }
+
+        /** {@code overloaded}: odpowiedź świadczy o przeciążeniu zależności (503/504). */
+        public void release(boolean overloaded) {
+            if (released.compareAndSet(false, true)) lane.release(System.nanoTime() - grantedAt, overloaded);
+        }
+    }
+
+    private static final double BACKOFF = 0.9;
+
+    private final Map<RouteClass, Lane> lanes = new EnumMap<>(RouteClass.class);
+
+    public AdmissionController(MeterRegistry meters,
+                               @Value("${rag.admission.search.initial-limit:32}") int searchInitial,
+                               @Value("${rag.admission.search.min-limit:4}") int searchMin,
+                               @Value("${rag.admission.search.max-limit:256}") int searchMax,
+                               @Value("${rag.admission.search.latency-target:1s}") Duration latencyTarget,
+                               @Value("${rag.admission.search.max-queue:128}") int searchQueue,
+                               @Value("${rag.admission.search.retry-after:1s}") Duration searchRetryAfter,
+                               @Value("${rag.admission.ingest.max-concurrency:8}") int ingestLimit,
+                               @Value("${rag.admission.ingest.max-queue:16}") int ingestQueue,
+                               @Value("${rag.admission.ingest.retry-after:10s}") Duration ingestRetryAfter,
+                               @Value("${rag.admission.stream.max-concurrency:8}") int streamLimit,
+                               @Value("${rag.admission.stream.max-queue:4}") int streamQueue,
+                               @Value("${rag.admission.stream.retry-after:30s}") Duration streamRetryAfter,
+                               @Value("${rag.admission.queue-timeout:1s}") Duration queueTimeout,
+                               @Value("${rag.admission.target-delay:50ms}") Duration targetDelay,
+                               @Value("${rag.admission.interval:100ms}") Duration interval) {
+        if (searchMin <= 0 || searchMin > searchInitial || searchInitial > searchMax) {
+            throw new IllegalArgumentException("rag.admission.search limits must satisfy 0 < min-limit <= initial-limit <= max-limit");
+        }
+        if (ingestLimit <= 0 || streamLimit <= 0 || searchQueue < 0 || ingestQueue < 0 || streamQueue < 0) {
+            throw new IllegalArgumentException("rag.admission ingest/stream max-concurrency must be positive and max-queue non-negative");
+        }
+        lanes.put(RouteClass.SEARCH, new Lane(meters, RouteClass.SEARCH, true, searchInitial, searchMin, searchMax,
+                latencyTarget, searchQueue, searchRetryAfter, queueTimeout, targetDelay, interval));
+        lanes.put(RouteClass.INGEST, new Lane(meters, RouteClass.INGEST, false, ingestLimit, ingestLimit, ingestLimit,
+                Duration.ZERO, ingestQueue, ingestRetryAfter, queueTimeout, targetDelay, interval));
+        lanes.put(RouteClass.STREAM, new Lane(meters, RouteClass.STREAM, false, streamLimit, streamLimit, streamLimit,
+                Duration.ZERO, streamQueue, streamRetryAfter, queueTimeout, targetDelay, interval));
+    }
+
+    /**
+     * Miejsce dla żądania klasy {@code cls}; czeka najwyżej {@code maxWait} (np. pozostały termin żądania)
+     * albo krócej wg CoDel. Błąd {@link Rejected}, gdy kolejka jest pełna, czas minął albo search ma pierwszeństwo.
+     */
+    public Mono<Permit> acquire(RouteClass cls, Duration maxWait) {
+        Lane lane = lanes.get(cls);
+        if (cls != RouteClass.SEARCH && lanes.get(RouteClass.SEARCH).standing()) {
+            return Mono.error(lane.shed("priority"));
+        }
+        return Mono.create(sink -> lane.acquire(sink, maxWait.toNanos()));
+    }
+
+    /** Aktualny limit równoległości klasy. */
+    public int limit(RouteClass cls) {
+        return lanes.get(cls).limit();
+    }
+
+    public int inFlight(RouteClass cls) {
+        return lanes.get(cls).inFlight();
+    }
+
+    private static final class Waiter {
+        final MonoSink<Permit> sink;
+        final long enqueuedAt = System.nanoTime();
+        Disposable timer;
+        Permit permit;    // przydzielone miejsce, jeśli już wyszło z kolejki
+        boolean waiting = true;
+
+        Waiter(MonoSink<Permit> sink) { this.sink = sink; }
+    }
+
+    private static final class Lane {
+        final MeterRegistry meters;
+        final RouteClass cls;
+        final boolean adaptive;
+        final int minLimit;
+        final int maxLimit;
+        final long latencyTarget;
+        final int maxQueue;
+        final Duration retryAfter;
+        final long queueTimeout;
+        final long targetDelay;
+        final long interval;
+        final Counter accepted;
+        final Timer queueWait;
+
+        final ReentrantLock lock = new ReentrantLock();
+        final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+        double limit;
+        int inFlight;
+        long lastEmpty = System.nanoTime();
+        long lastDecrease = System.nanoTime();
+
+        Lane(MeterRegistry meters, RouteClass cls, boolean adaptive, int initialLimit, int minLimit, int maxLimit,
+             Duration latencyTarget, int maxQueue, Duration retryAfter,
+             Duration queueTimeout, Duration targetDelay, Duration interval) {
+            this.meters = meters;
+            this.cls = cls;
+            this.adaptive = adaptive;
+            this.limit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.latencyTarget = latencyTarget.toNanos();
+            this.maxQueue = maxQueue;
+            this.retryAfter = retryAfter;
+            this.queueTimeout = queueTimeout.toNanos();
+            this.targetDelay = targetDelay.toNanos();
+            this.interval = interval.toNanos();
+            this.accepted = Counter.builder("rag.admission.accepted").tag("class", cls.tag()).register(meters);
+            this.queueWait = Timer.builder("rag.admission.queue.wait").tag("class", cls.tag()).register(meters);
+            Gauge.builder("rag.admission.limit", this, Lane::limit).tag("class", cls.tag()).register(meters);
+            Gauge.builder("rag.admission.inflight", this, Lane::inFlight).tag("class", cls.tag()).register(meters);
+            Gauge.builder("rag.admission.queue", this, l -> l.queue.size()).tag("class", cls.tag()).register(meters);
+        }
+
+        int limit() {
+            lock.lock();
+            try {
+                return (int) limit;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int inFlight() {
+            lock.lock();
+            try {
+                return inFlight;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** Kolejka stoi: nie była pusta przez cały ostatni interval (stan CoDel „dropping”). */
+        boolean standing() {
+            lock.lock();
+            try {
+                return standing(System.nanoTime());
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean standing(long now) {
+            return !queue.isEmpty() && now - lastEmpty > interval;
+        }
+
+        Rejected shed(String reason) {
+            Counter.builder("rag.admission.shed").tag("class", cls.tag()).tag("reason", reason).register(meters).increment();
+            return new Rejected(cls, reason, retryAfter);
+        }
+
+        void acquire(MonoSink<Permit> sink, long maxWait) {
+            long now = System.nanoTime();
+            Permit granted = null;
+            Waiter waiter = null;
+            String reject = null;
+            long wait = 0;
+            lock.lock();
+            try {
+                if (queue.isEmpty()) lastEmpty = now;
+                wait = Math.min(maxWait, standing(now) ? targetDelay : queueTimeout);
+                if (queue.isEmpty() && inFlight < (int) limit) {
+                    inFlight++;
+                    granted = new Permit(this);
+                } else if (queue.size() >= maxQueue) {
+                    reject = "queue-full";
+                } else if (wait <= 0) {
+                    reject = "timeout";
+                } else {
+                    waiter = new Waiter(sink);
+                    queue.addLast(waiter);
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (granted != null) {
+                accepted.increment();
+                queueWait.record(0, TimeUnit.NANOSECONDS);
+                sink.success(granted);
+            } else if (reject != null) {
+                sink.error(shed(reject));
+            } else {
+                Waiter w = waiter;
+                sink.onCancel(() -> cancel(w));
+                w.timer = Schedulers.parallel().schedule(() -> expire(w), wait, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        void release(long latency, boolean overloaded) {
+            long now = System.nanoTime();
+            List<Waiter> granted;
+            lock.lock();
+            try {
+                inFlight--;
+                if (adaptive) adapt(latency, overloaded, now);
+                granted = drain(now);
+            } finally {
+                lock.unlock();
+            }
+            grant(granted);
+        }
+
+        /** AIMD: spadek przy przeciążeniu (najwyżej raz na interval), wzrost tylko, gdy limit był wykorzystany. */
+        private void adapt(long latency, boolean overloaded, long now) {
+            if (overloaded || latency > latencyTarget) {
+                if (now - lastDecrease >= interval) {
+                    limit = Math.max(minLimit, limit * BACKOFF);
+                    lastDecrease = now;
+                }
+            } else if (inFlight + 1 >= (int) limit || !queue.isEmpty()) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+        }
+
+        /** Wolne miejsca dla oczekujących: FIFO, a gdy kolejka stoi - LIFO. Pod blokadą. */
+        private List<Waiter> drain(long now) {
+            List<Waiter> out = new ArrayList<>();
+            while (inFlight < (int) limit && !queue.isEmpty()) {
+                Waiter w = standing(now) ? queue.pollLast() : queue.pollFirst();
+                w.waiting = false;
+                w.permit = new Permit(this);
+                inFlight++;
+                out.add(w);
+            }
+            if (queue.isEmpty()) lastEmpty = now;
+            return out;
+        }
+
+        private void grant(List<Waiter> granted) {
+            for (Waiter w : granted) {
+                if (w.timer != null) w.timer.dispose();
+                accepted.increment();
+                queueWait.record(System.nanoTime() - w.enqueuedAt, TimeUnit.NANOSECONDS);
+                w.sink.success(w.permit);
+            }
+        }
+
+        private void expire(Waiter w) {
+            if (remove(w)) w.sink.error(shed("timeout"));
+        }
+
+        /** Klient zrezygnował: wycofujemy z kolejki albo oddajemy miejsce przydzielone w międzyczasie. */
+        private void cancel(Waiter w) {
+            if (w.timer != null) w.timer.dispose();
+            if (!remove(w) && w.permit != null) w.permit.release(false);
+        }
+
+        private boolean remove(Waiter w) {
+            List<Waiter> granted;
+            lock.lock();
+            try {
+                if (!w.waiting) return false;
+                w.waiting = false;
+                queue.remove(w);
+                granted = drain(System.nanoTime());
+            } finally {
+                lock.unlock();
+            }
+            grant(granted);
+            return true;
+        }
+    }
+}
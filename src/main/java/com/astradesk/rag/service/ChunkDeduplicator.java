@@ -0,0 +1,165 @@
+// src/main/java/com/astradesk/rag/service/ChunkDeduplicator.java
+package com.astradesk.rag.service;
+
+import com.astradesk.rag.repo.ChunkJdbcRepository;
+import com.astradesk.rag.util.SimHash;
+import com.astradesk.rag.util.SimHashIndex;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pomijanie prawie-duplikatów chunków przy ingeście (powtarzające się nagłówki, stopki, klauzule prawne).
+ * Każdy chunk dostaje 64-bitowy SimHash (kolumna chunks.simhash); indeks pasm LSH w pamięci, ładowany
+ * z bazy przy pierwszym ingeście do kolekcji, znajduje zapisany chunk w odległości Hamminga
+ * {@code <= rag.dedup.max-hamming}. Polityka per kolekcja:
+ * <ul>
+ *   <li>{@code skip} - duplikat nie jest wektoryzowany ani zapisywany,</li>
+ *   <li>{@code link} - zamiast chunka zapisujemy odnośnik do kanonicznego (chunk_duplicates),</li>
+ *   <li>{@code off} - bez deduplikacji.</li>
+ * </ul>
+ * Chunki dokumentu w trakcie ingestu trafiają najpierw do indeksu tego dokumentu ({@link #add}) i stają się
+ * kanoniczne dla innych dokumentów dopiero po {@link #publish}; {@link #discard} je porzuca (błąd, anulowanie).
+ * Indeks jest lokalny dla instancji: w trybie cluster duplikaty z innych węzłów widać dopiero po ich zapisie
+ * i przeładowaniu kolekcji; chunki sprzed wprowadzenia deduplikacji (simhash NULL) nie są brane pod uwagę.
+ */
+@Service
+public class ChunkDeduplicator {
+    private static final Logger log = LoggerFactory.getLogger(ChunkDeduplicator.class);
+
+    public enum Policy {
+        OFF, SKIP, LINK;
+
+        static Policy parse(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Dedup policy must be skip, link or off, was: " + value);
+            }
+        }
+    }
+
+    /** Wynik sprawdzenia chunka; {@code simhash == null}, gdy deduplikacja nie dotyczy chunka. */
+    public record Decision(Policy policy, Long simhash, Long canonicalId, int distance) {
+        public boolean duplicate() { return canonicalId != null; }
+    }
+
+    private final ChunkJdbcRepository chunks;
+    private final MeterRegistry meters;
+    private final Policy defaultPolicy;
+    private final Map<String, Policy> policies = new HashMap<>();
+    private final int maxHamming;
+    private final int minTokens;
+    private final Map<String, SimHashIndex> indexes = new ConcurrentHashMap<>();
+    private final Map<Long, Staged> staged = new ConcurrentHashMap<>();
+
+    /** Odciski chunków dokumentu, którego ingest jeszcze trwa. */
+    private record Staged(String collection, SimHashIndex index) {}
+
+    public ChunkDeduplicator(ChunkJdbcRepository chunks, MeterRegistry meters,
+                             @Value("${rag.dedup.policy:link}") String defaultPolicy,
+                             @Value("${rag.dedup.collections:}") List<String> collectionPolicies,
+                             @Value("${rag.dedup.max-hamming:6}") int maxHamming,
+                             @Value("${rag.dedup.min-tokens:8}") int minTokens) {
+        this.chunks = chunks;
+        this.meters = meters;
+        this.defaultPolicy = Policy.parse(defaultPolicy);
+        for (String entry : collectionPolicies) {
+            if (entry.isBlank()) continue;
+            int eq = entry.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("rag.dedup.collections entries must be collection=policy: " + entry);
+            policies.put(entry.substring(0, eq).trim(), Policy.parse(entry.substring(eq + 1)));
+        }
+        new SimHashIndex(maxHamming); // walidacja zakresu
+        this.maxHamming = maxHamming;
+        this.minTokens = minTokens;
+    }
+
+    public Policy policyFor(String collection) {
+        return policies.getOrDefault(collection, defaultPolicy);
+    }
+
+    /** Odcisk chunka i najbliższy prawie-duplikat w kolekcji albo we wcześniejszych chunkach tego dokumentu. */
+    public Decision check(String collection, long docId, String text) {
+        Policy policy = policyFor(collection);
+        if (policy == Policy.OFF) return new Decision(policy, null, null, 0);
+        List<String> tokens = SimHash.tokens(text);
+        if (tokens.size() < minTokens) return new Decision(policy, null, null, 0); // za krótki na wiarygodny odcisk
+        long hash = SimHash.of(tokens);
+        SimHashIndex.Match match = nearest(index(collection), hash);
+        Staged own = staged.get(docId);
+        if (own != null) {
+            SimHashIndex.Match local = nearest(own.index(), hash);
+            if (local != null && (match == null || local.distance() < match.distance())) match = local;
+        }
+        return match == null ? new Decision(policy, hash, null, 0) : new Decision(policy, hash, match.id(), match.distance());
+    }
+
+    /**
+     * Obsługuje duplikat zgodnie z polityką: dla link zapisuje odnośnik, dla skip sprawdza tylko,
+     * czy kanoniczny chunk nadal istnieje. Zwraca false, gdy kanoniczny zniknął (np. dokument usunięty) -
+     * wtedy kolekcja jest przeładowywana, a chunk trzeba zapisać normalnie.
+     */
+    public boolean recordDuplicate(String collection, Decision d, long docId, int idx, Integer pFrom, Integer pTo, String key) {
+        boolean ok = d.policy() == Policy.LINK
+                ? chunks.insertDuplicate(docId, idx, pFrom, pTo, key, d.canonicalId(), d.distance())
+                : chunks.exists(d.canonicalId());
+        if (!ok) {
+            indexes.remove(collection);
+            return false;
+        }
+        Counter.builder("rag.ingest.dedup").tag("action", d.policy() == Policy.LINK ? "linked" : "skipped")
+                .register(meters).increment();
+        return true;
+    }
+
+    /** Dodaje zapisany chunk do indeksu dokumentu; do indeksu kolekcji trafi przy {@link #publish}. */
+    public void add(String collection, long docId, Decision d, long chunkId) {
+        if (d.simhash() == null) return;
+        SimHashIndex index = staged.computeIfAbsent(docId, id -> new Staged(collection, new SimHashIndex(maxHamming))).index();
+        synchronized (index) {
+            index.add(d.simhash(), chunkId);
+        }
+    }
+
+    /** Dokument zaindeksowany w całości: jego chunki mogą być kanoniczne dla kolejnych dokumentów. */
+    public void publish(long docId) {
+        Staged s = staged.remove(docId);
+        if (s == null) return;
+        SimHashIndex index = index(s.collection());
+        synchronized (s.index()) {
+            synchronized (index) {
+                s.index().forEach(index::add);
+            }
+        }
+    }
+
+    /** Ingest dokumentu przerwany - jego odciski nie trafiają do indeksu kolekcji. */
+    public void discard(long docId) {
+        staged.remove(docId);
+    }
+
+    private static SimHashIndex.Match nearest(SimHashIndex index, long hash) {
+        synchronized (index) {
+            return index.nearest(hash);
+        }
+    }
+
+    private SimHashIndex index(String collection) {
+        return indexes.computeIfAbsent(collection, c -> {
+            SimHashIndex index = new SimHashIndex(maxHamming);
+            chunks.forEachSimhash(c, (id, hash) -> index.add(hash, id));
+            log.info("Loaded {} chunk fingerprints for collection {}", index.size(), c);
+            return index;
+        });
+    }
+}
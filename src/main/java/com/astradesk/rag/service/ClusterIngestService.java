@@ -0,0 +1,214 @@
+// src/main/java/com/astradesk/rag/service/ClusterIngestService.java
+package com.astradesk.rag.service;
+
+import com.astradesk.rag.config.S3AsyncStorageService;
+import com.astradesk.rag.model.ProgressEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Ingest klastrowy (rag.ingest.mode=cluster), strona zgłaszająca: węzeł, który przyjął archiwum,
+ * wysyła pliki do S3 (ten sam klucz co kopia oryginału w trybie lokalnym) i kolejkuje po jednym
+ * zadaniu na plik w ingest_work_items. Zadania wykonują {@link ClusterIngestWorker} na wszystkich
+ * instancjach; tutaj tylko odpytujemy postęp zadania i oddajemy go klientowi jako zdarzenia SSE.
+ */
+@Service
+@Lazy(false)
+public class ClusterIngestService {
+    private static final Logger log = LoggerFactory.getLogger(ClusterIngestService.class);
+
+    private final JdbcTemplate jdbc;
+    private final S3AsyncStorageService s3;
+    private final int progressBuffer;
+    private final Duration progressCoalesce;
+    private final Duration progressEmitTimeout;
+    private final Duration pollInterval;
+    private final Duration retention;
+
+    private record ItemState(long id, String file, String status, Integer pages, int pagesDone, int attempts,
+                             String error) {
+        boolean open() { return status.equals("PENDING") || status.equals("RUNNING"); }
+    }
+
+    public ClusterIngestService(JdbcTemplate jdbc, S3AsyncStorageService s3,
+                                @Value("${rag.ingest.progress.buffer:256}") int progressBuffer,
+                                @Value("${rag.ingest.progress.coalesce:500ms}") Duration progressCoalesce,
+                                @Value("${rag.ingest.progress.emit-timeout:30s}") Duration progressEmitTimeout,
+                                @Value("${rag.ingest.cluster.progress-poll:1s}") Duration pollInterval,
+                                @Value("${rag.ingest.cluster.retention:7d}") Duration retention) {
+        this.jdbc = jdbc;
+        this.s3 = s3;
+        this.progressBuffer = progressBuffer;
+        this.progressCoalesce = progressCoalesce;
+        this.progressEmitTimeout = progressEmitTimeout;
+        this.pollInterval = pollInterval;
+        this.retention = retention;
+    }
+
+    public Flux<ProgressEvent> submit(InputStreamSource zip, String filename, String collection, int maxLen, int overlap,
+                                      IngestProgress.OnDisconnect onDisconnect, Consumer<Boolean> onFinished) {
+        IngestProgress progress = new IngestProgress(progressBuffer, progressCoalesce, progressEmitTimeout, onDisconnect);
+        Thread submitter = new Thread(() -> {
+            Long jobId = null;
+            try {
+                int staged = -1;
+                try {
+                    jobId = jdbc.queryForObject("INSERT INTO ingest_jobs(collection, filename) VALUES (?, ?) RETURNING id",
+                            Long.class, collection, filename);
+                    staged = stage(jobId, zip, collection, maxLen, overlap, progress);
+                } finally {
+                    onFinished.accept(staged >= 0); // true: archiwum jest już w S3
+                }
+                jdbc.update("UPDATE ingest_jobs SET total_items = ? WHERE id = ?", staged, jobId);
+                track(jobId, filename, progress);
+            } catch (CancellationException ex) {
+                if (jobId != null) cancel(jobId);
+                log.info("Cluster ingest of {} cancelled: client disconnected", filename);
+            } catch (Exception ex) {
+                if (jobId != null) cancel(jobId);
+                progress.complete(new ProgressEvent("ERROR", filename, null, null, null, ex.getMessage()));
+            }
+        }, "zip-ingest-submit");
+        submitter.start();
+        return progress.asFlux();
+    }
+
+    /** Wysyła pliki do S3 i kolejkuje zadania, każde zaraz po zakończeniu jego uploadu. */
+    private int stage(long jobId, InputStreamSource zip, String collection, int maxLen, int overlap,
+                      IngestProgress progress) throws Exception {
+        record Pending(String name, String key, CompletableFuture<String> upload) {}
+        Deque<Pending> pending = new ArrayDeque<>();
+        int staged = 0;
+        try (InputStream is = zip.getInputStream(); ZipInputStream zis = new ZipInputStream(is)) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                if (entry.isDirectory()) continue;
+                checkCancelled(progress);
+                String name = entry.getName();
+                if (!ZipIngestService.isSupported(name)) {
+                    progress.emit(new ProgressEvent("SKIPPED", name, null, null, null, "unsupported extension"));
+                    continue;
+                }
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                zis.transferTo(baos);
+                String key = ZipIngestService.rawKey(collection, name);
+                pending.add(new Pending(name, key,
+                        s3.putIfChanged(key, baos.toByteArray(), ZipIngestService.contentTypeFor(ZipIngestService.extOf(name)))));
+                while (!pending.isEmpty() && pending.peek().upload().isDone()) {
+                    Pending p = pending.poll();
+                    enqueue(jobId, collection, p.name(), p.upload().join(), maxLen, overlap);
+                    staged++;
+                    progress.progress(new ProgressEvent("RECEIVED", p.name(), null, staged, null, "queued"));
+                }
+            }
+        }
+        while (!pending.isEmpty()) {
+            Pending p = pending.poll();
+            enqueue(jobId, collection, p.name(), p.upload().join(), maxLen, overlap);
+            staged++;
+            progress.progress(new ProgressEvent("RECEIVED", p.name(), null, staged, null, "queued"));
+        }
+        return staged;
+    }
+
+    private void enqueue(long jobId, String collection, String name, String key, int maxLen, int overlap) {
+        jdbc.update("INSERT INTO ingest_work_items(job_id, collection, file_name, s3_key, max_len, overlap) VALUES (?,?,?,?,?,?)",
+                jobId, collection, name, key, maxLen, overlap);
+    }
+
+    /**
+     * Odpytuje zadania joba i zamienia zmiany stanu na zdarzenia postępu, aż wszystkie się zakończą.
+     * Każde odpytanie czyta wszystkie zadania joba i porównuje z poprzednim stanem: filtr po updated_at
+     * gubiłby zmiany zatwierdzone później, niż wskazuje ich znacznik czasu (now() = początek transakcji).
+     */
+    void track(long jobId, String filename, IngestProgress progress) throws InterruptedException {
+        Map<Long, ItemState> seen = new HashMap<>();
+        int processed = 0;
+        while (true) {
+            if (progress.isDetached()) {
+                log.info("Cluster ingest job {} detached from client; workers continue", jobId);
+                return;
+            }
+            checkCancelled(progress);
+            List<ItemState> items = jdbc.query(
+                    "SELECT id, file_name, status, pages, pages_done, attempts, error FROM ingest_work_items " +
+                            "WHERE job_id = ? ORDER BY id",
+                    (rs, rn) -> new ItemState(rs.getLong("id"), rs.getString("file_name"), rs.getString("status"),
+                            (Integer) rs.getObject("pages"), rs.getInt("pages_done"), rs.getInt("attempts"),
+                            rs.getString("error")),
+                    jobId);
+            for (ItemState st : items) {
+                ItemState prev = seen.put(st.id(), st);
+                if (prev != null && prev.status().equals(st.status()) && prev.pagesDone() == st.pagesDone()
+                        && prev.attempts() == st.attempts()) continue;
+                switch (st.status()) {
+                    case "RUNNING" -> {
+                        if (st.pages() != null && st.pagesDone() > 0) {
+                            progress.progress(new ProgressEvent("INDEXED", st.file(), st.pagesDone(), st.pagesDone(), st.pages(), "ok"));
+                        }
+                    }
+                    case "PENDING" -> {
+                        if (st.error() != null) progress.emit(new ProgressEvent("RETRY", st.file(), null, processed, null, st.error()));
+                    }
+                    case "DONE" -> progress.emit(new ProgressEvent("INDEXED", st.file(), null, ++processed, null, "ok"));
+                    case "FAILED" -> progress.emit(new ProgressEvent("FAILED", st.file(), null, ++processed, null, st.error()));
+                    default -> { }
+                }
+            }
+            // ten sam odczyt co zdarzenia - żadne zakończenie nie przepadnie przed DONE
+            if (items.stream().noneMatch(ItemState::open)) {
+                jdbc.update("UPDATE ingest_jobs SET status = 'DONE', finished_at = now() WHERE id = ?", jobId);
+                progress.complete(new ProgressEvent("DONE", filename, null, null, null, "finished"));
+                return;
+            }
+            Thread.sleep(pollInterval.toMillis());
+        }
+    }
+
+    /**
+     * Usuwa zakończone joby starsze niż rag.ingest.cluster.retention razem z ich zadaniami (ON DELETE CASCADE);
+     * także joby, których zgłaszający węzeł padł (RUNNING), jeśli żadne ich zadanie nie jest już otwarte.
+     */
+    @Scheduled(fixedDelayString = "${rag.ingest.cluster.purge-interval-ms:3600000}")
+    public void purgeFinished() {
+        try {
+            int purged = jdbc.update("DELETE FROM ingest_jobs j WHERE j.created_at < now() - make_interval(secs => ?) " +
+                    "AND (j.status <> 'RUNNING' AND j.finished_at < now() - make_interval(secs => ?) " +
+                    "  OR j.status = 'RUNNING' AND NOT EXISTS (SELECT 1 FROM ingest_work_items w WHERE w.job_id = j.id " +
+                    "    AND w.status IN ('PENDING', 'RUNNING')))",
+                    (double) retention.toSeconds(), (double) retention.toSeconds());
+            if (purged > 0) log.info("Purged {} finished ingest jobs", purged);
+        } catch (DataAccessException e) {
+            log.warn("Cannot purge finished ingest jobs: {}", e.getMessage());
+        }
+    }
+
+    /** Anuluje pozostałe zadania; workery wykonujące je zauważą to przy heartbeacie i usuną połowiczne dokumenty. */
+    void cancel(long jobId) {
+        jdbc.update("UPDATE ingest_work_items SET status = 'CANCELLED', updated_at = now() WHERE job_id = ? " +
+                "AND status IN ('PENDING', 'RUNNING')", jobId);
+        jdbc.update("UPDATE ingest_jobs SET status = 'CANCELLED', finished_at = now() WHERE id = ?", jobId);
+    }
+
+    private static void checkCancelled(IngestProgress progress) {
+        if (progress.isCancelled()) throw new CancellationException("client disconnected");
+    }
+}
@@ -0,0 +1,271 @@
+// src/main/java/com/astradesk/rag/service/ClusterIngestWorker.java
+package com.astradesk.rag.service;
+
+import com.astradesk.rag.config.S3StorageService;
+import com.astradesk.rag.repo.DocumentJdbcRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Konsument kolejki ingest_work_items (rag.ingest.mode=cluster), działa na każdej instancji.
+ * Zadanie jest przejmowane przez UPDATE ... WHERE id = (SELECT ... FOR UPDATE SKIP LOCKED) z dzierżawą
+ * (lease); w trakcie pracy heartbeat przedłuża dzierżawę i zapisuje postęp stron. Zadanie z wygasłą
+ * dzierżawą (padnięta instancja) przejmuje inny worker; ponowienie najpierw usuwa połowiczny dokument.
+ * Po rag.ingest.cluster.max-attempts próbach zadanie jest FAILED.
+ */
+@Component
+@Lazy(false)
+public class ClusterIngestWorker implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(ClusterIngestWorker.class);
+
+    private final ZipIngestService ingest;
+    private final DocumentJdbcRepository docs;
+    private final S3StorageService storage;
+    private final JdbcTemplate jdbc;
+    private final ApplicationEventPublisher events;
+    private final IngestScheduler scheduler;
+    private final boolean enabled;
+    private final int workers;
+    private final Duration lease;
+    private final Duration heartbeat;
+    private final Duration idlePoll;
+    private final int maxAttempts;
+    private final String nodeId;
+    private final TransactionTemplate tx;
+
+    private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ingest-heartbeat");
+        t.setDaemon(true);
+        return t;
+    });
+    private ExecutorService pool;
+    private volatile boolean running;
+
+    record WorkItem(long id, long jobId, String collection, String fileName, String s3Key, int maxLen, int overlap,
+                    Long docId, int attempts) {}
+
+    public ClusterIngestWorker(ZipIngestService ingest, DocumentJdbcRepository docs, S3StorageService storage,
+                               JdbcTemplate jdbc, ApplicationEventPublisher events, IngestScheduler scheduler,
+                               @Value("${rag.ingest.mode:local}") String mode,
+                               @Value("${rag.ingest.cluster.workers:2}") int workers,
+                               @Value("${rag.ingest.cluster.lease:2m}") Duration lease,
+                               @Value("${rag.ingest.cluster.heartbeat:20s}") Duration heartbeat,
+                               @Value("${rag.ingest.cluster.idle-poll:2s}") Duration idlePoll,
+                               @Value("${rag.ingest.cluster.max-attempts:3}") int maxAttempts,
+                               @Value("${rag.ingest.cluster.node-id:${HOSTNAME:}}") String nodeId) {
+        this.ingest = ingest;
+        this.docs = docs;
+        this.storage = storage;
+        this.jdbc = jdbc;
+        this.events = events;
+        this.scheduler = scheduler;
+        this.enabled = "cluster".equals(mode);
+        this.workers = workers;
+        this.lease = lease;
+        this.heartbeat = heartbeat;
+        this.idlePoll = idlePoll;
+        this.maxAttempts = maxAttempts;
+        this.nodeId = nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId;
+        this.tx = new TransactionTemplate(new DataSourceTransactionManager(jdbc.getDataSource()));
+        if (!heartbeat.minus(lease).isNegative()) {
+            throw new IllegalArgumentException("rag.ingest.cluster.heartbeat must be shorter than the lease");
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (!enabled || workers <= 0 || running) return;
+        running = true;
+        AtomicInteger n = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(workers, r -> new Thread(r, "ingest-worker-" + n.incrementAndGet()));
+        for (int i = 0; i < workers; i++) pool.execute(this::loop);
+        log.info("Cluster ingest: {} workers on node {}", workers, nodeId);
+    }
+
+    private void loop() {
+        String owner = nodeId + "/" + Thread.currentThread().getName();
+        while (running) {
+            try {
+                WorkItem item = claim(owner);
+                if (item == null) {
+                    failExhausted();
+                    Thread.sleep(idlePoll.toMillis());
+                    continue;
+                }
+                process(item, owner);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (DataAccessException e) {
+                log.warn("Ingest queue unavailable: {}", e.getMessage());
+                try {
+                    Thread.sleep(idlePoll.toMillis());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Przejmuje zadanie z kolekcji o najmniejszej liczbie wykonywanych zadań względem jej wagi
+     * (rag.ingest.scheduler.weights), pomijając kolekcje na swoim limicie (rag.ingest.scheduler.caps,
+     * tu w skali całego klastra); w obrębie kolekcji FIFO. Licznik w podzapytaniu pochodzi ze snapshotu
+     * sprzed równoległych przejęć (READ COMMITTED), więc dla kolekcji z limitem przejęcie trzyma
+     * pg_advisory_xact_lock(hashtext(kolekcja)) do commitu i po nim liczy ponownie - nadmiar wycofuje.
+     */
+    WorkItem claim(String owner) {
+        Set<String> configured = new TreeSet<>(scheduler.configuredWeights().keySet());
+        configured.addAll(scheduler.configuredCaps().keySet());
+        String[] names = configured.toArray(String[]::new);
+        Double[] weights = configured.stream().map(scheduler::weight).toArray(Double[]::new);
+        Integer[] caps = configured.stream().map(c -> scheduler.configuredCaps().get(c)).toArray(Integer[]::new);
+        String sql = "UPDATE ingest_work_items w SET status = 'RUNNING', attempts = w.attempts + 1, lease_owner = ?, " +
+                "lease_until = now() + make_interval(secs => ?), updated_at = now() " +
+                "WHERE w.id = (SELECT p.id FROM " +
+                "  (SELECT collection, count(*) FILTER (WHERE status = 'RUNNING' AND lease_until >= now()) AS running " +
+                "   FROM ingest_work_items WHERE status IN ('PENDING', 'RUNNING') GROUP BY collection) c " +
+                "  LEFT JOIN unnest(?::text[], ?::float8[], ?::int[]) AS cfg(collection, weight, cap) ON cfg.collection = c.collection " +
+                "  CROSS JOIN LATERAL (SELECT i.id FROM ingest_work_items i WHERE i.collection = c.collection " +
+                "    AND (i.status = 'PENDING' OR (i.status = 'RUNNING' AND i.lease_until < now())) AND i.attempts < ? " +
+                "    ORDER BY i.id LIMIT 1 FOR UPDATE SKIP LOCKED) p " +
+                "  WHERE cfg.cap IS NULL OR c.running < cfg.cap " +
+                "  ORDER BY c.running / COALESCE(cfg.weight, ?), p.id LIMIT 1) " +
+                "RETURNING w.id, w.job_id, w.collection, w.file_name, w.s3_key, w.max_len, w.overlap, w.doc_id, w.attempts";
+        return tx.execute(status -> {
+            List<WorkItem> items = jdbc.query(con -> {
+                        PreparedStatement ps = con.prepareStatement(sql);
+                        ps.setString(1, owner);
+                        ps.setDouble(2, lease.toSeconds());
+                        ps.setArray(3, con.createArrayOf("text", names));
+                        ps.setArray(4, con.createArrayOf("float8", weights));
+                        ps.setArray(5, con.createArrayOf("int4", caps));
+                        ps.setInt(6, maxAttempts);
+                        ps.setDouble(7, scheduler.defaultWeight());
+                        return ps;
+                    },
+                    (rs, rn) -> new WorkItem(rs.getLong("id"), rs.getLong("job_id"), rs.getString("collection"),
+                            rs.getString("file_name"), rs.getString("s3_key"), rs.getInt("max_len"), rs.getInt("overlap"),
+                            (Long) rs.getObject("doc_id"), rs.getInt("attempts")));
+            if (items.isEmpty()) return null;
+            WorkItem item = items.get(0);
+            Integer cap = scheduler.configuredCaps().get(item.collection());
+            if (cap == null) return item;
+            jdbc.query("SELECT pg_advisory_xact_lock(hashtext(?))", (rs, rn) -> null, item.collection());
+            // nowy snapshot: widać przejęcia zatwierdzone przez poprzednich posiadaczy blokady
+            Integer running = jdbc.queryForObject("SELECT count(*) FROM ingest_work_items WHERE collection = ? " +
+                    "AND status = 'RUNNING' AND lease_until >= now()", Integer.class, item.collection());
+            if (running != null && running > cap) {
+                status.setRollbackOnly();
+                return null;
+            }
+            return item;
+        });
+    }
+
+    private void process(WorkItem item, String owner) {
+        AtomicBoolean leaseLost = new AtomicBoolean();
+        AtomicInteger pagesDone = new AtomicInteger();
+        AtomicInteger pages = new AtomicInteger();
+        ScheduledFuture<?> hb = heartbeats.scheduleAtFixedRate(() -> {
+            try {
+                int updated = jdbc.update("UPDATE ingest_work_items SET lease_until = now() + make_interval(secs => ?), " +
+                                "pages_done = ?, pages = ?, updated_at = now() WHERE id = ? AND lease_owner = ? AND status = 'RUNNING'",
+                        (double) lease.toSeconds(), pagesDone.get(), pages.get() > 0 ? pages.get() : null, item.id(), owner);
+                if (updated == 0) leaseLost.set(true); // przejęte po wygaśnięciu albo anulowane
+            } catch (DataAccessException e) {
+                log.warn("Heartbeat for work item {} failed: {}", item.id(), e.getMessage());
+            }
+        }, heartbeat.toMillis(), heartbeat.toMillis(), TimeUnit.MILLISECONDS);
+
+        Long docId = null;
+        try {
+            if (item.docId() != null) docs.deleteDoc(item.docId()); // połowiczny wynik poprzedniej próby
+            byte[] data = storage.get(item.s3Key());
+            docId = docs.insertIngestingDoc(item.fileName(), item.collection());
+            if (jdbc.update("UPDATE ingest_work_items SET doc_id = ? WHERE id = ? AND lease_owner = ?", docId, item.id(), owner) == 0) {
+                throw new CancellationException("lease lost");
+            }
+            long chunks = ingest.indexDocument(docId, item.collection(), item.fileName(), data, item.s3Key(), item.maxLen(), item.overlap(),
+                    () -> {
+                        if (leaseLost.get() || !running) throw new CancellationException("lease lost");
+                    },
+                    (p, total) -> {
+                        if (p != null) {
+                            pagesDone.set(p);
+                            pages.set(total);
+                        }
+                    });
+            hb.cancel(false);
+            int done = jdbc.update("UPDATE ingest_work_items SET status = 'DONE', chunks = ?, pages_done = ?, pages = ?, " +
+                            "error = NULL, lease_owner = NULL, lease_until = NULL, updated_at = now() WHERE id = ? AND lease_owner = ?",
+                    chunks, pagesDone.get(), pages.get() > 0 ? pages.get() : null, item.id(), owner);
+            if (done == 0) throw new CancellationException("lease lost");
+            ingest.completeDocument(docId);
+            events.publishEvent(new IngestCompletedEvent(item.collection(), chunks));
+        } catch (CancellationException e) {
+            // zadanie ma nowego właściciela albo zostało anulowane - sprzątamy tylko własny dokument
+            if (docId != null) ingest.discardDocument(docId);
+            if (!running) {
+                // zamknięcie instancji: oddajemy zadanie bez zużywania próby
+                jdbc.update("UPDATE ingest_work_items SET status = 'PENDING', attempts = attempts - 1, doc_id = NULL, " +
+                        "lease_owner = NULL, lease_until = NULL, updated_at = now() WHERE id = ? AND lease_owner = ?", item.id(), owner);
+            }
+            log.info("Work item {} ({}) abandoned: {}", item.id(), item.fileName(), e.getMessage());
+        } catch (Exception e) {
+            if (docId != null) ingest.discardDocument(docId);
+            String status = item.attempts() >= maxAttempts ? "FAILED" : "PENDING";
+            jdbc.update("UPDATE ingest_work_items SET status = ?, error = ?, doc_id = NULL, lease_owner = NULL, " +
+                    "lease_until = NULL, updated_at = now() WHERE id = ? AND lease_owner = ?", status, e.getMessage(), item.id(), owner);
+            log.warn("Work item {} ({}) attempt {} failed: {}", item.id(), item.fileName(), item.attempts(), e.getMessage());
+        } finally {
+            hb.cancel(false);
+        }
+    }
+
+    /**
+     * Zadania, których dzierżawa wygasła po ostatniej dozwolonej próbie, nie zostaną już przejęte.
+     * Połowiczne dokumenty usuwa deleteDoc, żeby nie zgubić odnośników prawie-duplikatów.
+     */
+    private void failExhausted() {
+        List<Long> orphans = jdbc.queryForList("UPDATE ingest_work_items w SET status = 'FAILED', " +
+                "error = COALESCE(w.error, 'lease expired'), lease_owner = NULL, doc_id = NULL, updated_at = now() " +
+                "FROM ingest_work_items old WHERE old.id = w.id AND w.status = 'RUNNING' AND w.lease_until < now() AND w.attempts >= ? " +
+                "RETURNING old.doc_id", Long.class, maxAttempts);
+        for (Long docId : orphans) {
+            if (docId != null) docs.deleteDoc(docId);
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        if (pool != null) {
+            pool.shutdown();
+            if (!pool.awaitTermination(10, TimeUnit.SECONDS)) pool.shutdownNow();
+        }
+        heartbeats.shutdownNow();
+    }
+}
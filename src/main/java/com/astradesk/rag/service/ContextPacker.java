@@ -0,0 +1,164 @@
+// src/main/java/com/astradesk/rag/service/ContextPacker.java
+package com.astradesk.rag.service;
+
+import com.astradesk.rag.model.ChunkRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Składa kontekst dla LLM z wyników wyszukiwania:
+ * skleja sąsiednie/nakładające się chunki tego samego dokumentu, odrzuca prawie-duplikaty
+ * i pakuje wynik w budżet tokenów, dodając cytowanie źródła.
+ */
+@Component
+public class ContextPacker {
+    /** Minimalna długość wspólnego fragmentu, żeby uznać chunki za nakładające się. */
+    private static final int MIN_OVERLAP = 16;
+    /** Górna granica szukania nakładki (Chunker używa domyślnie 200 znaków). */
+    private static final int MAX_OVERLAP = 2000;
+    /** Nie dokładamy obciętego fragmentu, jeśli zostało mniej tokenów. */
+    private static final int MIN_TAIL_TOKENS = 64;
+    private static final int SHINGLE = 3;
+
+    private final int tokenBudget;
+    private final double dedupThreshold;
+
+    public ContextPacker(@Value("${rag.context.token-budget:3000}") int tokenBudget,
+                         @Value("${rag.context.dedup-threshold:0.9}") double dedupThreshold) {
+        this.tokenBudget = tokenBudget;
+        this.dedupThreshold = dedupThreshold;
+    }
+
+    public List<String> pack(List<ChunkRecord> hits) {
+        List<Passage> passages = coalesce(hits);
+        passages.sort(Comparator.comparingDouble((Passage p) -> p.score).reversed());
+
+        List<String> out = new ArrayList<>();
+        List<Set<Long>> kept = new ArrayList<>();
+        int remaining = tokenBudget;
+        for (Passage p : passages) {
+            Set<Long> shingles = shingles(p.text);
+            if (isNearDuplicate(shingles, kept)) continue;
+
+            String header = p.citation();
+            int cost = estimateTokens(header) + estimateTokens(p.text);
+            if (cost <= remaining) {
+                out.add(header + "\n" + p.text);
+                kept.add(shingles);
+                remaining -= cost;
+            } else if (remaining - estimateTokens(header) >= MIN_TAIL_TOKENS) {
+                out.add(header + "\n" + truncate(p.text, (remaining - estimateTokens(header)) * 4));
+                break;
+            } else {
+                break;
+            }
+        }
+        return out;
+    }
+
+    /** Grupuje po docId i skleja chunki o sąsiednich chunkIndex, usuwając wspólną nakładkę. */
+    static List<Passage> coalesce(List<ChunkRecord> hits) {
+        Map<Long, List<ChunkRecord>> byDoc = new LinkedHashMap<>();
+        for (ChunkRecord r : hits) byDoc.computeIfAbsent(r.docId, d -> new ArrayList<>()).add(r);
+
+        List<Passage> out = new ArrayList<>();
+        for (List<ChunkRecord> group : byDoc.values()) {
+            group.sort(Comparator.comparingInt((ChunkRecord r) -> r.chunkIndex).thenComparingLong(r -> r.id));
+            Passage cur = null;
+            for (ChunkRecord r : group) {
+                String text = r.content != null ? r.content : "";
+                if (cur != null && r.chunkIndex - cur.lastIndex <= 1) {
+                    int k = overlap(cur.text, text);
+                    boolean adjacentText = k >= MIN_OVERLAP
+                            || (r.chunkIndex == cur.lastIndex + 1 && r.pageFrom == null && cur.pageFrom == null);
+                    if (adjacentText) {
+                        cur.append(r, k >= MIN_OVERLAP ? text.substring(k) : "\n" + text);
+                        continue;
+                    }
+                }
+                if (cur != null) out.add(cur);
+                cur = new Passage(r, text);
+            }
+            if (cur != null) out.add(cur);
+        }
+        return out;
+    }
+
+    /** Najdłuższy sufiks {@code a} będący prefiksem {@code b}. */
+    static int overlap(String a, String b) {
+        int max = Math.min(MAX_OVERLAP, Math.min(a.length(), b.length()));
+        for (int k = max; k >= MIN_OVERLAP; k--) {
+            if (a.regionMatches(a.length() - k, b, 0, k)) return k;
+        }
+        return 0;
+    }
+
+    private boolean isNearDuplicate(Set<Long> candidate, List<Set<Long>> kept) {
+        if (candidate.isEmpty()) return true;
+        for (Set<Long> other : kept) {
+            int common = 0;
+            for (Long h : candidate) if (other.contains(h)) common++;
+            if ((double) common / candidate.size() >= dedupThreshold) return true;
+        }
+        return false;
+    }
+
+    private static Set<Long> shingles(String text) {
+        String[] words = text.toLowerCase(Locale.ROOT).split("\\W+");
+        Set<Long> out = new HashSet<>();
+        for (int i = 0; i + SHINGLE <= words.length; i++) {
+            long h = 1125899906842597L;
+            for (int j = i; j < i + SHINGLE; j++) h = 31 * h + words[j].hashCode();
+            out.add(h);
+        }
+        if (out.isEmpty() && !text.isBlank()) out.add((long) text.strip().hashCode());
+        return out;
+    }
+
+    /** Zgrubne oszacowanie: ~4 znaki na token dla tekstów europejskich. */
+    static int estimateTokens(String s) {
+        return (s.length() + 3) / 4;
+    }
+
+    private static String truncate(String text, int maxChars) {
+        if (text.length() <= maxChars) return text;
+        int cut = text.lastIndexOf(' ', maxChars);
+        return text.substring(0, cut > maxChars / 2 ? cut : maxChars) + " …";
+    }
+
+    static final class Passage {
+        final long docId;
+        final Integer pageFrom;
+        Integer pageTo;
+        int lastIndex;
+        double score;
+        String text;
+
+        Passage(ChunkRecord r, String text) {
+            this.docId = r.docId;
+            this.pageFrom = r.pageFrom;
+            this.pageTo = r.pageTo;
+            this.lastIndex = r.chunkIndex;
+            this.score = r.score;
+            this.text = text;
+        }
+
+        void append(ChunkRecord r, String tail) {
+            text = text + tail;
+            lastIndex = r.chunkIndex;
+            if (r.pageTo != null) pageTo = r.pageTo;
+            score = Math.max(score, r.score);
+        }
+
+        String citation() {
+            StringBuilder sb = new StringBuilder("(source: doc ").append(docId);
+            if (pageFrom != null) {
+                sb.append(", p. ").append(pageFrom);
+                if (pageTo != null && !pageTo.equals(pageFrom)) sb.append('-').append(pageTo);
+            }
+            return sb.append(')').toString();
+        }
+    }
+}
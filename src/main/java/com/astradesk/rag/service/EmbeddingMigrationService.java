@@ -0,0 +1,384 @@
+// src/main/java/com/astradesk/rag/service/EmbeddingMigrationService.java
+package com.astradesk.rag.service;
+
+import com.astradesk.rag.config.EmbeddingSchemaInitializer;
+import com.astradesk.rag.model.EmbeddingMigrationStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pgvector.PGvector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Migracja modelu embeddingów bez przestoju.
+ * <ol>
+ *   <li>start: kolumna cień {@code embedding_next vector(targetDim)}, backfill z {@code content}
+ *       w dławionych partiach, z checkpointem w tabeli embedding_migration (wznawialny, wiele węzłów
+ *       współpracuje dzięki FOR UPDATE SKIP LOCKED); na końcu indeks ivfflat na kolumnie cieniu.
+ *       Wyszukiwanie cały czas używa starej kolumny.</li>
+ *   <li>cutover: dopełnia wiersze z czasu backfillu jeszcze bez blokady, potem pod blokadą zapisu tylko
+ *       niewielką resztę (co najwyżej rag.migration.cutover-max-rows, inaczej odmowa) i atomowo zamienia
+ *       nazwy kolumn i indeksów; od tej chwili zapytania i ingest używają modelu docelowego.</li>
+ *   <li>rollback: odwrotna zamiana (stara kolumna dopełniona modelem źródłowym).</li>
+ *   <li>finalize: po przełączeniu konfiguracji na nowy model usuwa starą kolumnę.</li>
+ * </ol>
+ * Stan z bazy każdy węzeł odświeża cyklicznie, ale wyszukiwanie i zapis chunków idą przez {@link #fenced},
+ * które sprawdza stan w tej samej transakcji co zapytanie - węzeł nie użyje starego modelu po cutoverze innego.
+ */
+@Service
+@DependsOnDatabaseInitialization
+@Lazy(false)
+public class EmbeddingMigrationService {
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingMigrationService.class);
+
+    public enum Status { IDLE, BACKFILLING, PAUSED, READY, CUTOVER }
+
+    static final String ACTIVE = "embedding";
+    static final String SHADOW = "embedding_next";
+    static final String RETIRED = "embedding_prev";
+
+    private final Embeddings source;
+    private final Embeddings target;
+    private final JdbcTemplate jdbc;
+    private final JdbcTemplate readJdbc;
+    private final TransactionTemplate tx;
+    private final TransactionTemplate readTx;
+    private final String sourceModel;
+    private final String targetModel;
+    private final int targetDim;
+    private final int batchSize;
+    private final Duration batchDelay;
+    private final int cutoverMaxRows;
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "embedding-migration");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean backfillRunning = new AtomicBoolean();
+    private volatile Status status = Status.IDLE;
+
+    private record Row(long id, String content) {}
+
+    public EmbeddingMigrationService(@Qualifier("provider") Embeddings source,
+                                     JdbcTemplate jdbc, @Qualifier("readJdbcTemplate") JdbcTemplate readJdbc,
+                                     TransactionTemplate tx, ObjectMapper mapper,
+                                     @Value("${rag.provider.embeddings:springai}") String provider,
+                                     @Value("${spring.ai.openai.embedding.options.model:text-embedding-3-small}") String sourceModel,
+                                     @Value("${OPENAI_API_KEY:}") String apiKey,
+                                     @Value("${rag.migration.target-model:}") String targetModel,
+                                     @Value("${rag.migration.target-dim:0}") int targetDim,
+                                     @Value("${rag.migration.batch-size:64}") int batchSize,
+                                     @Value("${rag.migration.batch-delay:200ms}") Duration batchDelay,
+                                     @Value("${rag.migration.cutover-max-rows:512}") int cutoverMaxRows) {
+        this.source = source;
+        this.jdbc = jdbc;
+        this.readJdbc = readJdbc;
+        this.tx = tx;
+        this.readTx = new TransactionTemplate(new DataSourceTransactionManager(readJdbc.getDataSource()));
+        this.readTx.setReadOnly(true);
+        this.sourceModel = sourceModel;
+        this.targetModel = targetModel;
+        this.targetDim = targetDim;
+        this.batchSize = batchSize;
+        this.batchDelay = batchDelay;
+        this.cutoverMaxRows = cutoverMaxRows;
+        this.target = targetModel.isBlank() || targetDim <= 0 ? null : switch (provider) {
+            case "openai" -> new OpenAiHttpEmbeddings(targetModel, apiKey, mapper, targetDim);
+            case "fake" -> new FakeEmbeddings(targetDim);
+            default -> null;
+        };
+    }
+
+    /** Model, którego używają wyszukiwanie i ingest. */
+    public Embeddings active() {
+        return targetActive(status) ? target : source;
+    }
+
+    /**
+     * Liczy wektor aktywnym modelem i używa go (zapis chunka: {@code write}, wyszukiwanie) w transakcji,
+     * w której pod blokadą tabeli chunks sprawdza stan migracji w bazie. Blokada (ROW EXCLUSIVE przy zapisie,
+     * ACCESS SHARE przy odczycie) wyklucza się z blokadami cutoveru/rollbacku, więc zamiana kolumn nie wejdzie
+     * między sprawdzenie a zapytanie. Jeśli inny węzeł zmienił w międzyczasie aktywny model, wektor jest liczony
+     * ponownie właściwym. Bez migracji (IDLE) - bez dodatkowej transakcji.
+     */
+    public <V, T> T fenced(boolean write, Function<Embeddings, V> embed, Function<V, T> use) {
+        for (int attempt = 0; ; attempt++) {
+            Status seen = status;
+            V vector = embed.apply(targetActive(seen) ? target : source);
+            if (seen == Status.IDLE) return use.apply(vector);
+            JdbcTemplate j = write ? jdbc : readJdbc;
+            AtomicBoolean stale = new AtomicBoolean();
+            T result = (write ? tx : readTx).execute(st -> {
+                j.execute("LOCK TABLE chunks IN " + (write ? "ROW EXCLUSIVE" : "ACCESS SHARE") + " MODE");
+                Status current = readStatus(j);
+                if (targetActive(current) != targetActive(seen)) {
+                    status = current;
+                    stale.set(true);
+                    return null;
+                }
+                return use.apply(vector);
+            });
+            if (!stale.get()) return result;
+            if (attempt > 0) throw new MigrationStateException("Embedding model changed during the request, retry");
+            log.info("Embedding migration changed to {} on another node, recomputing vector", status);
+        }
+    }
+
+    private boolean targetActive(Status s) {
+        return s == Status.CUTOVER && target != null;
+    }
+
+    private static Status readStatus(JdbcTemplate j) {
+        List<String> rows = j.queryForList("SELECT status FROM embedding_migration WHERE id = 1", String.class);
+        return rows.isEmpty() ? Status.IDLE : Status.valueOf(rows.get(0));
+    }
+
+    /**
+     * Stan z bazy dopiero po starcie, nie w konstruktorze: odświeżenie kontekstu bez bazy (trening AppCDS,
+     * spring.context.exit=onRefresh) nie czeka wtedy na timeout połączenia. Readiness przychodzi po tym słuchaczu.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeAfterRestart() {
+        refreshState();
+        if (status == Status.BACKFILLING) launchBackfill();
+    }
+
+    /** Inne węzły mogły zmienić stan (cutover/rollback) - odświeżamy go cyklicznie; wiążące jest {@link #fenced}. */
+    @Scheduled(fixedDelayString = "${rag.migration.state-refresh-ms:5000}")
+    public void refreshState() {
+        try {
+            status = readStatus(jdbc);
+        } catch (DataAccessException e) {
+            log.debug("Cannot refresh embedding migration state: {}", e.getMessage());
+        }
+    }
+
+    public EmbeddingMigrationStatus status() {
+        var rows = jdbc.query("SELECT * FROM embedding_migration WHERE id = 1", (rs, rn) -> new EmbeddingMigrationStatus(
+                rs.getString("status"), rs.getString("source_model"), rs.getString("target_model"),
+                rs.getInt("target_dim"), rs.getLong("last_chunk_id"), rs.getLong("processed"),
+                active() == target ? targetModel : sourceModel));
+        return rows.isEmpty()
+                ? new EmbeddingMigrationStatus(Status.IDLE.name(), sourceModel, null, 0, 0, 0, sourceModel)
+                : rows.get(0);
+    }
+
+    public synchronized EmbeddingMigrationStatus start() {
+        if (target == null) {
+            throw new MigrationStateException("Set rag.migration.target-model and rag.migration.target-dim (openai or fake provider)");
+        }
+        refreshState();
+        switch (status) {
+            case IDLE -> {
+                jdbc.execute("ALTER TABLE chunks ADD COLUMN IF NOT EXISTS " + SHADOW + " vector(" + targetDim + ")");
+                jdbc.update("INSERT INTO embedding_migration(id, source_model, target_model, target_dim, status) " +
+                        "VALUES (1, ?, ?, ?, 'BACKFILLING')", sourceModel, targetModel, targetDim);
+            }
+            case PAUSED -> setStatus(Status.BACKFILLING);
+            case BACKFILLING -> { /* wznowienie pętli na tym węźle */ }
+            default -> throw new MigrationStateException("Cannot start backfill in status " + status);
+        }
+        status = Status.BACKFILLING;
+        launchBackfill();
+        return status();
+    }
+
+    public synchronized EmbeddingMigrationStatus pause() {
+        refreshState();
+        if (status != Status.BACKFILLING) throw new MigrationStateException("Backfill is not running (" + status + ")");
+        setStatus(Status.PAUSED);
+        status = Status.PAUSED; // pętla backfillu na tym węźle staje od razu
+        return status();
+    }
+
+    public synchronized EmbeddingMigrationStatus cutover() {
+        refreshState();
+        if (status != Status.READY) throw new MigrationStateException("Cutover requires status READY, was " + status);
+        if (target == null) throw new MigrationStateException("Migration target is not configured on this node");
+        catchUp(SHADOW, target); // wiersze z czasu backfillu, bez blokady
+        tx.executeWithoutResult(st -> {
+            jdbc.execute("LOCK TABLE chunks IN SHARE ROW EXCLUSIVE MODE");
+            if (readStatus(jdbc) != Status.READY) throw new MigrationStateException("Migration state changed on another node");
+            fillRemainder(SHADOW, target);
+            jdbc.execute("ALTER TABLE chunks ALTER COLUMN " + ACTIVE + " DROP NOT NULL");
+            promote(SHADOW, RETIRED);
+            markCheckpointAtMaxId(Status.CUTOVER);
+        });
+        status = Status.CUTOVER;
+        log.info("Embedding model cut over to {} ({} dims)", targetModel, targetDim);
+        return status();
+    }
+
+    public synchronized EmbeddingMigrationStatus rollback() {
+        refreshState();
+        if (status != Status.CUTOVER) throw new MigrationStateException("Rollback requires status CUTOVER, was " + status);
+        catchUp(RETIRED, source); // wiersze dodane po cutoverze, bez blokady
+        tx.executeWithoutResult(st -> {
+            jdbc.execute("LOCK TABLE chunks IN SHARE ROW EXCLUSIVE MODE");
+            if (readStatus(jdbc) != Status.CUTOVER) throw new MigrationStateException("Migration state changed on another node");
+            fillRemainder(RETIRED, source);
+            promote(RETIRED, SHADOW);
+            markCheckpointAtMaxId(Status.READY);
+        });
+        status = Status.READY;
+        log.info("Embedding model rolled back to {}", sourceModel);
+        return status();
+    }
+
+    /** Porzuca migrację przed cutoverem: usuwa kolumnę cień i jej indeks. */
+    public synchronized EmbeddingMigrationStatus abort() {
+        refreshState();
+        if (status == Status.CUTOVER) throw new MigrationStateException("Roll back the cutover before aborting");
+        setStatus(Status.IDLE);
+        status = Status.IDLE;
+        jdbc.execute("DROP INDEX IF EXISTS idx_chunks_" + SHADOW);
+        jdbc.execute("ALTER TABLE chunks DROP COLUMN IF EXISTS " + SHADOW);
+        jdbc.update("DELETE FROM embedding_migration WHERE id = 1");
+        return status();
+    }
+
+    /** Po przełączeniu konfiguracji (model i rag.embedding-dim) na model docelowy usuwa starą kolumnę. */
+    public synchronized EmbeddingMigrationStatus finalizeMigration() {
+        refreshState();
+        if (status != Status.CUTOVER) throw new MigrationStateException("Finalize requires status CUTOVER, was " + status);
+        EmbeddingMigrationStatus st = status();
+        if (!sourceModel.equals(st.targetModel()) || source.dim() != st.targetDim()) {
+            throw new MigrationStateException("Configure " + st.targetModel() + " (" + st.targetDim()
+                    + " dims) as the embedding model on all nodes before finalizing");
+        }
+        jdbc.execute("DROP INDEX IF EXISTS idx_chunks_" + RETIRED);
+        jdbc.execute("ALTER TABLE chunks DROP COLUMN IF EXISTS " + RETIRED);
+        jdbc.update("DELETE FROM embedding_migration WHERE id = 1");
+        status = Status.IDLE;
+        return status();
+    }
+
+    private void launchBackfill() {
+        if (!backfillRunning.compareAndSet(false, true)) return;
+        worker.execute(() -> {
+            try {
+                backfill();
+            } finally {
+                backfillRunning.set(false);
+            }
+        });
+    }
+
+    private void backfill() {
+        log.info("Embedding backfill to {} started", targetModel);
+        while (status == Status.BACKFILLING) {
+            try {
+                Integer n = tx.execute(st -> fillBatch(SHADOW, target, true));
+                if (n != null && n == 0 && finishBackfill()) return;
+                Thread.sleep(batchDelay.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Embedding backfill batch failed, retrying: {}", e.getMessage());
+                try {
+                    Thread.sleep(Math.max(1000, batchDelay.toMillis() * 10));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Wszystko za checkpointem wypełnione: sprawdza dziury poniżej (partie wycofane przez błędy),
+     * buduje indeks na kolumnie cieniu i przechodzi w READY.
+     */
+    private synchronized boolean finishBackfill() {
+        Boolean holes = jdbc.queryForObject("SELECT EXISTS (SELECT 1 FROM chunks WHERE " + SHADOW + " IS NULL)", Boolean.class);
+        if (Boolean.TRUE.equals(holes)) {
+            jdbc.update("UPDATE embedding_migration SET last_chunk_id = 0, updated_at = now() WHERE id = 1");
+            return false;
+        }
+        Long rows = jdbc.queryForObject("SELECT count(*) FROM chunks", Long.class);
+        if (targetDim <= EmbeddingSchemaInitializer.MAX_INDEXED_DIM) jdbc.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_chunks_" + SHADOW + " ON chunks USING ivfflat ("
+                + SHADOW + " vector_cosine_ops) WITH (lists = " + VectorIndexMaintainer.ivfflatLists(rows != null ? rows : 0) + ")");
+        refreshState();
+        if (status != Status.BACKFILLING) return true;
+        setStatus(Status.READY);
+        status = Status.READY;
+        log.info("Embedding backfill to {} complete ({} rows), ready for cutover", targetModel, rows);
+        return true;
+    }
+
+    /** Dopełnia kolumnę partiami, każda w osobnej transakcji - bez blokady tabeli, ingest trwa dalej. */
+    private void catchUp(String column, Embeddings model) {
+        Integer n;
+        do {
+            n = tx.execute(st -> fillBatch(column, model, true));
+        } while (n != null && n > 0);
+    }
+
+    /**
+     * Pod blokadą zapisu: dopełnia wiersze zapisane od {@link #catchUp}, o ile jest ich co najwyżej
+     * rag.migration.cutover-max-rows - inaczej wywołania providera trzymałyby blokadę zbyt długo.
+     */
+    private void fillRemainder(String column, Embeddings model) {
+        Long remaining = jdbc.queryForObject("SELECT count(*) FROM chunks WHERE id > " +
+                "(SELECT last_chunk_id FROM embedding_migration WHERE id = 1) AND " + column + " IS NULL", Long.class);
+        if (remaining != null && remaining > cutoverMaxRows) {
+            throw new MigrationStateException(remaining + " chunks were written during catch-up (limit "
+                    + cutoverMaxRows + "), retry when ingest is quieter");
+        }
+        while (fillBatch(column, model, false) > 0) { /* najwyżej cutoverMaxRows wierszy */ }
+    }
+
+    /** Uzupełnia jedną partię wierszy z pustą kolumną {@code column}; zwraca liczbę wierszy. */
+    private int fillBatch(String column, Embeddings model, boolean skipLocked) {
+        Long from = jdbc.queryForObject("SELECT last_chunk_id FROM embedding_migration WHERE id = 1", Long.class);
+        List<Row> rows = jdbc.query("SELECT id, content FROM chunks WHERE id > ? AND " + column + " IS NULL ORDER BY id LIMIT ?"
+                        + (skipLocked ? " FOR UPDATE SKIP LOCKED" : ""),
+                (rs, rn) -> new Row(rs.getLong("id"), rs.getString("content")), from != null ? from : 0L, batchSize);
+        if (rows.isEmpty()) return 0;
+        float[][] vectors = model.embedAll(rows.stream().map(Row::content).toList());
+        List<Object[]> params = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) params.add(new Object[]{new PGvector(vectors[i]), rows.get(i).id()});
+        jdbc.batchUpdate("UPDATE chunks SET " + column + " = ? WHERE id = ?", params);
+        jdbc.update("UPDATE embedding_migration SET last_chunk_id = GREATEST(last_chunk_id, ?), processed = processed + ?, " +
+                "updated_at = now() WHERE id = 1", rows.get(rows.size() - 1).id(), rows.size());
+        return rows.size();
+    }
+
+    /** Zamiana nazw w obrębie transakcji: {@code incoming} staje się aktywną kolumną, obecna dostaje nazwę {@code retireAs}. */
+    private void promote(String incoming, String retireAs) {
+        jdbc.execute("ALTER TABLE chunks RENAME COLUMN " + ACTIVE + " TO " + retireAs);
+        jdbc.execute("ALTER TABLE chunks RENAME COLUMN " + incoming + " TO " + ACTIVE);
+        jdbc.execute("ALTER INDEX IF EXISTS idx_chunks_" + ACTIVE + " RENAME TO idx_chunks_" + retireAs);
+        jdbc.execute("ALTER INDEX IF EXISTS idx_chunks_" + incoming + " RENAME TO idx_chunks_" + ACTIVE);
+    }
+
+    private void markCheckpointAtMaxId(Status next) {
+        jdbc.update("UPDATE embedding_migration SET status = ?, last_chunk_id = (SELECT COALESCE(max(id), 0) FROM chunks), " +
+                "updated_at = now() WHERE id = 1", next.name());
+    }
+
+    private void setStatus(Status next) {
+        jdbc.update("UPDATE embedding_migration SET status = ?, updated_at = now() WHERE id = 1", next.name());
+    }
+}
@@ -0,0 +1,92 @@
+// src/main/java/com/astradesk/rag/service/EmbeddingResponseDecoder.java
+package com.astradesk.rag.service;
+
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Strumieniowy dekoder odpowiedzi OpenAI /embeddings prosto do float[].
+ * Obsługuje encoding_format=base64 (little-endian float32) oraz zwykłe tablice JSON,
+ * bez pośrednich List&lt;Double&gt; i boxowania.
+ */
+public final class EmbeddingResponseDecoder {
+    private EmbeddingResponseDecoder() {}
+
+    /**
+     * Dekoduje wszystkie wektory z pola "data" w kolejności pola "index".
+     *
+     * @param expectedDim   oczekiwany wymiar (prealokacja tablicy dla formatu JSON)
+     * @param expectedCount liczba tekstów w żądaniu
+     */
+    public static float[][] decode(JsonFactory factory, byte[] body, int expectedDim, int expectedCount) throws IOException {
+        float[][] out = new float[expectedCount][];
+        try (JsonParser p = factory.createParser(body)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) throw new IOException("Embedding response is not a JSON object");
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken t = p.nextToken();
+                if ("data".equals(field) && t == JsonToken.START_ARRAY) {
+                    int pos = 0;
+                    while (p.nextToken() == JsonToken.START_OBJECT) {
+                        readItem(p, expectedDim, out, pos++);
+                    }
+                } else {
+                    p.skipChildren();
+                }
+            }
+        }
+        for (int i = 0; i < out.length; i++) {
+            if (out[i] == null) throw new IOException("Embedding response is missing vector #" + i);
+        }
+        return out;
+    }
+
+    private static void readItem(JsonParser p, int expectedDim, float[][] out, int pos) throws IOException {
+        int index = pos;
+        float[] vector = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken t = p.nextToken();
+            if ("index".equals(field) && t == JsonToken.VALUE_NUMBER_INT) {
+                index = p.getIntValue();
+            } else if ("embedding".equals(field) && t == JsonToken.VALUE_STRING) {
+                vector = fromBase64(p.getBinaryValue(Base64Variants.MIME_NO_LINEFEEDS));
+            } else if ("embedding".equals(field) && t == JsonToken.START_ARRAY) {
+                vector = fromArray(p, expectedDim);
+            } else {
+                p.skipChildren();
+            }
+        }
+        if (vector == null) throw new IOException("Embedding item #" + pos + " has no vector");
+        if (index < 0 || index >= out.length) throw new IOException("Embedding index out of range: " + index);
+        out[index] = vector;
+    }
+
+    /** Widok FloatBuffer (little-endian) na zdekodowane bajty; jedna kopia do float[]. */
+    static float[] fromBase64(byte[] bytes) throws IOException {
+        if ((bytes.length & 3) != 0) throw new IOException("Base64 embedding length is not a multiple of 4: " + bytes.length);
+        float[] v = new float[bytes.length >>> 2];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(v);
+        return v;
+    }
+
+    /** Wypełnia prealokowaną tablicę; rośnie tylko, gdy odpowiedź jest dłuższa niż expectedDim. */
+    private static float[] fromArray(JsonParser p, int expectedDim) throws IOException {
+        float[] v = new float[Math.max(expectedDim, 1)];
+        int n = 0;
+        JsonToken t;
+        while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+            if (t == null) throw new IOException("Unexpected end of embedding array");
+            if (n == v.length) v = Arrays.copyOf(v, v.length * 2);
+            v[n++] = p.getFloatValue();
+        }
+        return n == v.length ? v : Arrays.copyOf(v, n);
+    }
+}
@@ -2,6 +2,11 @@
 
 package com.astradesk.rag.service;
 
+import com.astradesk.rag.util.VectorMath;
+
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * Minimalny interfejs wektoryzacji tekstu.
  * Implementacje: SpringAiEmbeddings, OpenAiHttpEmbeddings, Fake (w testach).
@@ -9,4 +14,20 @@ package com.astradesk.rag.service;
 public interface Embeddings {
     float[] embed(String text);
     int dim();
-}
\ No newline at end of file
+
+    /** Wektoryzacja wielu tekstów; implementacje HTTP robią to jednym wywołaniem providera. */
+    default float[][] embedAll(List<String> texts) {
+        float[][] out = new float[texts.size()][];
+        for (int i = 0; i < out.length; i++) out[i] = embed(texts.get(i));
+        return out;
+    }
+
+    /**
+     * Skraca wektor do pierwszych {@code dim} współrzędnych i renormalizuje go.
+     * Poprawne dla modeli trenowanych jako Matryoshka (text-embedding-3); dla innych obniża jakość.
+     */
+    static float[] truncate(float[] v, int dim) {
+        if (v.length == dim) return v;
+        return VectorMath.normalize(Arrays.copyOf(v, dim));
+    }
+}
@@ -0,0 +1,24 @@
+// src/main/java/com/astradesk/rag/service/FakeEmbeddings.java
+package com.astradesk.rag.service;
+
+/** Deterministyczne embeddingi z hasha tekstu (rag.provider.embeddings=fake, testy, dev). */
+public class FakeEmbeddings implements Embeddings {
+    private final int dim;
+
+    public FakeEmbeddings(int dim) { this.dim = dim; }
+
+    @Override
+    public float[] embed(String text) {
+        // Generate reproducible fake embeddings from text hash
+        float[] result = new float[dim];
+        int hash = text != null ? text.hashCode() : 0;
+        for (int i = 0; i < dim; i++) {
+            hash = (hash * 31) ^ (i & 0xFF);
+            result[i] = ((hash & 0x7FFF) / 32768.0f) - 0.5f;
+        }
+        return result;
+    }
+
+    @Override
+    public int dim() { return dim; }
+}
@@ -0,0 +1,5 @@
+// src/main/java/com/astradesk/rag/service/IngestCompletedEvent.java
+package com.astradesk.rag.service;
+
+/** Publikowane po zakończeniu ingestu (także przerwanego) - liczba faktycznie zapisanych chunków. */
+public record IngestCompletedEvent(String collection, long chunks) {}
@@ -0,0 +1,122 @@
+// src/main/java/com/astradesk/rag/service/IngestProgress.java
+package com.astradesk.rag.service;
+
+import com.astradesk.rag.model.ProgressEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Strumień postępu jednego ingestu, zasilany z wątku roboczego.
+ * <ul>
+ *   <li>bufor ma stałą pojemność - pamięć nie rośnie z liczbą stron/plików;</li>
+ *   <li>zdarzenia postępu ({@link #progress}) są łączone: najwyżej jedno na {@code coalesce},
+ *       reszta nadpisuje oczekujący snapshot i nigdy nie blokuje wątku roboczego;</li>
+ *   <li>zdarzenia istotne ({@link #emit}) czekają na miejsce w buforze najwyżej {@code emitTimeout};</li>
+ *   <li>rozłączenie klienta przerywa ingest ({@link OnDisconnect#CANCEL}) albo odpina go,
+ *       a praca kończy się w tle ({@link OnDisconnect#DETACH}).</li>
+ * </ul>
+ * Metody producenta wołane są z jednego wątku.
+ */
+public final class IngestProgress {
+    private static final Logger log = LoggerFactory.getLogger(IngestProgress.class);
+
+    public enum OnDisconnect {
+        CANCEL, DETACH;
+
+        public static OnDisconnect parse(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("onDisconnect must be 'cancel' or 'detach', was: " + value);
+            }
+        }
+    }
+
+    private final Sinks.Many<ProgressEvent> sink;
+    private final long coalesceNanos;
+    private final long emitTimeoutNanos;
+    private final OnDisconnect onDisconnect;
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final AtomicBoolean disconnected = new AtomicBoolean();
+
+    private ProgressEvent pending;
+    private long lastEmit;
+
+    public IngestProgress(int capacity, Duration coalesce, Duration emitTimeout, OnDisconnect onDisconnect) {
+        this.sink = Sinks.many().unicast().onBackpressureBuffer(new ArrayBlockingQueue<>(capacity));
+        this.coalesceNanos = coalesce.toNanos();
+        this.emitTimeoutNanos = emitTimeout.toNanos();
+        this.onDisconnect = onDisconnect;
+        this.lastEmit = System.nanoTime() - coalesceNanos;
+    }
+
+    public Flux<ProgressEvent> asFlux() {
+        return sink.asFlux().doOnCancel(() -> {
+            disconnected.set(true);
+            if (onDisconnect == OnDisconnect.CANCEL) cancelled.set(true);
+        });
+    }
+
+    /** Czy klient się rozłączył, a tryb to CANCEL - wątek roboczy powinien przerwać pracę. */
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    public boolean isDetached() {
+        return disconnected.get() && onDisconnect == OnDisconnect.DETACH;
+    }
+
+    /** Zdarzenie łączone (np. INDEXED dla strony): wysłane najwyżej raz na okres, inaczej czeka jako snapshot. */
+    public void progress(ProgressEvent ev) {
+        long now = System.nanoTime();
+        if (now - lastEmit >= coalesceNanos && sink.tryEmitNext(ev).isSuccess()) {
+            lastEmit = now;
+            pending = null;
+        } else {
+            pending = ev;
+        }
+    }
+
+    /** Zdarzenie istotne: najpierw oczekujący snapshot, potem {@code ev}. */
+    public void emit(ProgressEvent ev) {
+        flush();
+        offer(ev);
+    }
+
+    public void complete(ProgressEvent last) {
+        emit(last);
+        sink.tryEmitComplete();
+    }
+
+    private void flush() {
+        if (pending != null) {
+            offer(pending);
+            pending = null;
+        }
+    }
+
+    private void offer(ProgressEvent ev) {
+        long deadline = System.nanoTime() + emitTimeoutNanos;
+        while (!disconnected.get()) {
+            Sinks.EmitResult r = sink.tryEmitNext(ev);
+            if (r.isSuccess()) {
+                lastEmit = System.nanoTime();
+                return;
+            }
+            if (r != Sinks.EmitResult.FAIL_OVERFLOW && r != Sinks.EmitResult.FAIL_NON_SERIALIZED) return;
+            if (System.nanoTime() - deadline > 0) {
+                log.warn("Progress consumer too slow, dropped {} event for {}", ev.stage(), ev.file());
+                return;
+            }
+            LockSupport.parkNanos(1_000_000);
+        }
+    }
+}
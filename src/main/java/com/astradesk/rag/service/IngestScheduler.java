@@ -0,0 +1,229 @@
+// src/main/java/com/astradesk/rag/service/IngestScheduler.java
+package com.astradesk.rag.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sprawiedliwy przydział indeksowania dokumentów między kolekcjami (tryb local).
+ * Każdy wątek uploadu przed indeksowaniem pliku prosi o jedno z {@code rag.ingest.scheduler.slots} miejsc;
+ * oczekujący są w kolejkach per kolekcja, obsługiwanych deficit round-robin: w swojej kolejce kolekcja
+ * dostaje {@code quantum * waga} bajtów kredytu, koszt pliku to jego rozmiar. Duże archiwum jednej kolekcji
+ * nie blokuje więc małych uploadów innych, a limit per kolekcja (domyślnie slots - 1) zostawia zawsze
+ * miejsce dla nowych kolekcji. Wagi i limity są też używane przez kolejkę klastrową ({@link ClusterIngestWorker}).
+ * Metryki: rag.ingest.queue.depth, rag.ingest.running (per kolekcja), rag.ingest.queue.wait.
+ */
+@Service
+public class IngestScheduler {
+
+    /** Zajęte miejsce; zwalniane przez close() (idempotentne). */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final long CHECKPOINT_INTERVAL_MS = 1000;
+
+    private final MeterRegistry meters;
+    private final int slots;
+    private final long quantum;
+    private final double defaultWeight;
+    private final int defaultCap;
+    private final Map<String, Double> weights;
+    private final Map<String, Integer> caps;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Flow> flows = new HashMap<>();
+    private final ArrayDeque<Flow> ring = new ArrayDeque<>(); // kolekcje z oczekującymi, w kolejności DRR
+    private int inUse;
+
+    private static final class Flow {
+        final String collection;
+        final ArrayDeque<Ticket> queue = new ArrayDeque<>();
+        long deficit;
+        int running;
+        boolean inRing;
+
+        Flow(String collection) { this.collection = collection; }
+    }
+
+    private static final class Ticket {
+        final Flow flow;
+        final long cost;
+        final long enqueuedAt = System.nanoTime();
+        final CountDownLatch granted = new CountDownLatch(1);
+        boolean active;   // przydzielony i jeszcze nie zwolniony
+        boolean done;     // zwolniony albo anulowany
+
+        Ticket(Flow flow, long cost) { this.flow = flow; this.cost = cost; }
+    }
+
+    public IngestScheduler(MeterRegistry meters,
+                           @Value("${rag.ingest.scheduler.slots:4}") int slots,
+                           @Value("${rag.ingest.scheduler.quantum:1048576}") long quantum,
+                           @Value("${rag.ingest.scheduler.default-weight:1}") double defaultWeight,
+                           @Value("${rag.ingest.scheduler.default-cap:0}") int defaultCap,
+                           @Value("${rag.ingest.scheduler.weights:}") List<String> weights,
+                           @Value("${rag.ingest.scheduler.caps:}") List<String> caps) {
+        if (slots <= 0) throw new IllegalArgumentException("rag.ingest.scheduler.slots must be positive: " + slots);
+        if (quantum <= 0 || defaultWeight <= 0) {
+            throw new IllegalArgumentException("rag.ingest.scheduler quantum and default-weight must be positive");
+        }
+        this.meters = meters;
+        this.slots = slots;
+        this.quantum = quantum;
+        this.defaultWeight = defaultWeight;
+        this.defaultCap = defaultCap > 0 ? defaultCap : Math.max(1, slots - 1);
+        this.weights = Collections.unmodifiableMap(parse(weights, "weights", Double::parseDouble));
+        this.caps = Collections.unmodifiableMap(parse(caps, "caps", Integer::parseInt));
+        this.weights.forEach((c, w) -> {
+            if (w <= 0) throw new IllegalArgumentException("Ingest weight for " + c + " must be positive: " + w);
+        });
+        Gauge.builder("rag.ingest.slots.in-use", this, s -> s.inUse).register(meters);
+    }
+
+    public double weight(String collection) {
+        return weights.getOrDefault(collection, defaultWeight);
+    }
+
+    /** Limit równoległych dokumentów kolekcji na tej instancji. */
+    public int cap(String collection) {
+        return caps.getOrDefault(collection, defaultCap);
+    }
+
+    /** Jawnie skonfigurowane wagi i limity (kolejka klastrowa stosuje je w SQL). */
+    public Map<String, Double> configuredWeights() { return weights; }
+
+    public Map<String, Integer> configuredCaps() { return caps; }
+
+    public double defaultWeight() { return defaultWeight; }
+
+    /**
+     * Czeka na miejsce dla dokumentu o koszcie {@code cost} (rozmiar w bajtach). Co sekundę woła
+     * {@code checkpoint}, który może przerwać czekanie wyjątkiem (np. rozłączony klient) - wtedy
+     * zgłoszenie jest wycofywane z kolejki.
+     */
+    public Permit acquire(String collection, long cost, Runnable checkpoint) throws InterruptedException {
+        Ticket t;
+        lock.lock();
+        try {
+            Flow f = flows.computeIfAbsent(collection, this::newFlow);
+            t = new Ticket(f, Math.max(1, cost));
+            f.queue.addLast(t);
+            if (!f.inRing) {
+                f.inRing = true;
+                ring.addLast(f);
+            }
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            while (!t.granted.await(CHECKPOINT_INTERVAL_MS, TimeUnit.MILLISECONDS)) checkpoint.run();
+        } catch (RuntimeException | InterruptedException e) {
+            release(t);
+            throw e;
+        }
+        return () -> release(t);
+    }
+
+    /** Liczba oczekujących dokumentów kolekcji. */
+    public int queued(String collection) {
+        lock.lock();
+        try {
+            Flow f = flows.get(collection);
+            return f == null ? 0 : f.queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Flow newFlow(String collection) {
+        Flow f = new Flow(collection);
+        Gauge.builder("rag.ingest.queue.depth", f, x -> x.queue.size()).tag("collection", collection)
+                .strongReference(true).register(meters);
+        Gauge.builder("rag.ingest.running", f, x -> x.running).tag("collection", collection)
+                .strongReference(true).register(meters);
+        return f;
+    }
+
+    private void release(Ticket t) {
+        lock.lock();
+        try {
+            if (t.done) return;
+            t.done = true;
+            if (t.active) {
+                t.active = false;
+                inUse--;
+                t.flow.running--;
+            } else {
+                t.flow.queue.remove(t);
+            }
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deficit round-robin po kolekcjach z oczekującymi. Kolekcja na czele pierścienia obsługuje kolejne
+     * dokumenty, dopóki starcza jej kredytu; inaczej dostaje quantum * waga i idzie na koniec.
+     * Kolekcje na swoim limicie są pomijane bez kredytu.
+     */
+    private void dispatch() {
+        int capped = 0;
+        while (inUse < slots && !ring.isEmpty() && capped < ring.size()) {
+            Flow f = ring.peekFirst();
+            if (f.queue.isEmpty()) {
+                ring.pollFirst();
+                f.inRing = false;
+                f.deficit = 0; // bez oczekujących nie zbieramy kredytu
+                continue;
+            }
+            if (f.running >= cap(f.collection)) {
+                ring.addLast(ring.pollFirst());
+                capped++;
+                continue;
+            }
+            Ticket t = f.queue.peekFirst();
+            if (f.deficit >= t.cost) {
+                f.queue.pollFirst();
+                f.deficit -= t.cost;
+                f.running++;
+                inUse++;
+                t.active = true;
+                Timer.builder("rag.ingest.queue.wait").tag("collection", f.collection).register(meters)
+                        .record(System.nanoTime() - t.enqueuedAt, TimeUnit.NANOSECONDS);
+                t.granted.countDown();
+                capped = 0;
+                continue;
+            }
+            f.deficit += (long) Math.ceil(quantum * weight(f.collection));
+            ring.addLast(ring.pollFirst());
+            capped = 0;
+        }
+    }
+
+    private static <T> Map<String, T> parse(List<String> entries, String name, java.util.function.Function<String, T> value) {
+        Map<String, T> out = new HashMap<>();
+        for (String entry : entries) {
+            if (entry.isBlank()) continue;
+            int eq = entry.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("rag.ingest.scheduler." + name + " entries must be collection=value: " + entry);
+            try {
+                out.put(entry.substring(0, eq).trim(), value.apply(entry.substring(eq + 1).trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid rag.ingest.scheduler." + name + " entry: " + entry);
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,9 @@
+// src/main/java/com/astradesk/rag/service/MigrationStateException.java
+package com.astradesk.rag.service;
+
+/** Operacja migracji embeddingów niedozwolona w bieżącym stanie (albo stan zmienił inny węzeł); mapowany na 409. */
+public class MigrationStateException extends RuntimeException {
+    public MigrationStateException(String message) {
+        super(message);
+    }
+}
@@ -1,55 +1,92 @@
 // src/main/java/com/astradesk/rag/service/OpenAiHttpEmbeddings.java
 package com.astradesk.rag.service;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 /**
  * Lekki klient HTTP do OpenAI Embeddings API przez WebClient (bez Spring AI).
  * Używany, gdy rag.provider.embeddings=openai.
+ * Prosi o encoding_format=base64 i dekoduje odpowiedź strumieniowo prosto do float[]
+ * (patrz {@link EmbeddingResponseDecoder}).
+ * Wymiar z rag.embedding-dim: modele text-embedding-3 skracają wektor po stronie API
+ * (parametr dimensions), dla pozostałych skracamy i renormalizujemy lokalnie.
  */
 @Component
 public class OpenAiHttpEmbeddings implements Embeddings {
+    private static final int MAX_RESPONSE_BYTES = 16 * 1024 * 1024;
+
     private final WebClient http;
     private final ObjectMapper mapper;
     private final String model;
     private final int dim;
+    /** Czy model przyjmuje parametr dimensions (embeddingi Matryoshka). */
+    private final boolean apiDimensions;
 
+    @Autowired
     public OpenAiHttpEmbeddings(
             @Value("${spring.ai.openai.embedding.options.model:text-embedding-3-small}") String model,
             @Value("${OPENAI_API_KEY:}") String apiKey,
-            ObjectMapper mapper) {
+            ObjectMapper mapper,
+            @Value("${rag.embedding-dim:1536}") int dim) {
+        this(model, apiKey, mapper, dim);
+    }
+
+    /** Dla innego modelu (np. cel migracji embeddingów). */
+    public OpenAiHttpEmbeddings(String model, String apiKey, ObjectMapper mapper, int dim) {
+        if (dim <= 0) throw new IllegalArgumentException("Embedding dimension must be positive: " + dim);
         this.model = model;
+        this.apiDimensions = model.startsWith("text-embedding-3");
         this.mapper = mapper;
         this.http = WebClient.builder()
                 .baseUrl("https://api.openai.com/v1")
                 .defaultHeader("Authorization", "Bearer " + apiKey)
+                .codecs(c -> c.defaultCodecs().maxInMemorySize(MAX_RESPONSE_BYTES))
                 .build();
-        this.dim = 1536; // zgodny z text-embedding-3-small
+        this.dim = dim;
     }
 
     @Override
     public float[] embed(String text) {
-        record EmbReq(String model, List<String> input) {}
-        record EmbData(@JsonProperty("embedding") List<Double> embedding) {}
-        record EmbResp(@JsonProperty("data") List<EmbData> data) {}
-        EmbResp resp = http.post().uri("/embeddings")
+        return embedAll(List.of(text))[0];
+    }
+
+    @Override
+    public float[][] embedAll(List<String> texts) {
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        record EmbReq(String model, List<String> input,
+                      @JsonProperty("encoding_format") String encodingFormat, Integer dimensions) {}
+        byte[] body = http.post().uri("/embeddings")
                 .contentType(MediaType.APPLICATION_JSON)
-                .body(BodyInserters.fromValue(new EmbReq(model, List.of(text))))
-                .retrieve().bodyToMono(EmbResp.class).block();
-        List<Double> v = resp.data().get(0).embedding();
-        float[] out = new float[v.size()];
-        for (int i=0;i<v.size();i++) out[i]=v.get(i).floatValue();
+                .body(BodyInserters.fromValue(new EmbReq(model, texts, "base64", apiDimensions ? dim : null)))
+                .retrieve().bodyToMono(byte[].class).block();
+        float[][] out;
+        try {
+            out = EmbeddingResponseDecoder.decode(mapper.getFactory(), body, dim, texts.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Invalid embeddings response", e);
+        }
+        for (int i = 0; i < out.length; i++) {
+            if (out[i].length < dim) {
+                throw new IllegalStateException("Model " + model + " returned " + out[i].length
+                        + " dimensions, rag.embedding-dim is " + dim);
+            }
+            if (out[i].length > dim) out[i] = Embeddings.truncate(out[i], dim);
+        }
         return out;
     }
 
     @Override
     public int dim() { return dim; }
-}
\ No newline at end of file
+}
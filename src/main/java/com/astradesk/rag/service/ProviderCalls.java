@@ -0,0 +1,170 @@
+// src/main/java/com/astradesk/rag/service/ProviderCalls.java
+package com.astradesk.rag.service;
+
+import com.astradesk.rag.util.Deadline;
+import com.astradesk.rag.util.DeadlineExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Wywołania providerów (embeddingi, czat) na ścieżce interaktywnej z terminem żądania.
+ * Wywołanie idzie na wirtualny wątek; po upływie terminu jest przerywane (block() w WebClient
+ * anuluje wtedy żądanie HTTP) i rzucamy {@link DeadlineExceededException} - także, gdy przerwany
+ * zostaje wątek wywołującego (anulowane żądanie), żeby nie kończyło się to 500.
+ * <p>
+ * {@link #hedged} dodatkowo wysyła drugie, identyczne wywołanie, jeśli pierwsze nie odpowiedziało
+ * w czasie równym p95 ostatnich opóźnień danej operacji; wygrywa szybsze, przegrane jest anulowane.
+ * Tylko dla wywołań idempotentnych i tanich (wektoryzacja zapytania), nie dla czatu.
+ * Metryki: rag.provider.latency, rag.provider.hedge.fired / .won, rag.deadline.exceeded.
+ */
+@Component
+public class ProviderCalls implements DisposableBean {
+    private static final int WINDOW = 256;
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("provider-call-", 0).factory());
+    private final Map<String, LatencyWindow> windows = new ConcurrentHashMap<>();
+    private final MeterRegistry meters;
+    private final boolean hedgeEnabled;
+    private final double percentile;
+    private final int minSamples;
+    private final Duration initialDelay;
+    private final Duration minDelay;
+    private final Duration maxDelay;
+
+    public ProviderCalls(MeterRegistry meters,
+                         @Value("${rag.hedge.enabled:true}") boolean hedgeEnabled,
+                         @Value("${rag.hedge.percentile:0.95}") double percentile,
+                         @Value("${rag.hedge.min-samples:20}") int minSamples,
+                         @Value("${rag.hedge.initial-delay:300ms}") Duration initialDelay,
+                         @Value("${rag.hedge.min-delay:20ms}") Duration minDelay,
+                         @Value("${rag.hedge.max-delay:2s}") Duration maxDelay) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException("rag.hedge.percentile must be in (0, 1): " + percentile);
+        }
+        this.meters = meters;
+        this.hedgeEnabled = hedgeEnabled;
+        this.percentile = percentile;
+        this.minSamples = minSamples;
+        this.initialDelay = initialDelay;
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /** Jedno wywołanie, ograniczone terminem. */
+    public <T> T call(String op, Supplier<T> fn, Deadline deadline) {
+        return run(op, fn, deadline, false);
+    }
+
+    /** Wywołanie z zabezpieczeniem (hedging) po opóźnieniu p95; ograniczone terminem. */
+    public <T> T hedged(String op, Supplier<T> fn, Deadline deadline) {
+        return run(op, fn, deadline, hedgeEnabled);
+    }
+
+    /** Zlicza przekroczenie terminu na danym etapie (także poza providerami, np. SQL) i zwraca wyjątek do rzucenia. */
+    public DeadlineExceededException exceeded(String stage, Throwable cause) {
+        Counter.builder("rag.deadline.exceeded").tag("stage", stage).register(meters).increment();
+        return new DeadlineExceededException(stage, cause);
+    }
+
+    /** Aktualne opóźnienie, po którym wysyłamy drugie wywołanie. */
+    Duration hedgeDelay(String op) {
+        LatencyWindow w = windows.get(op);
+        long nanos = w == null ? -1 : w.percentile(percentile, minSamples);
+        Duration d = nanos < 0 ? initialDelay : Duration.ofNanos(nanos);
+        if (d.compareTo(minDelay) < 0) return minDelay;
+        if (d.compareTo(maxDelay) > 0) return maxDelay;
+        return d;
+    }
+
+    private <T> T run(String op, Supplier<T> fn, Deadline deadline, boolean hedge) {
+        if (deadline.isExpired()) throw exceeded(op, null);
+        CompletionService<T> cs = new ExecutorCompletionService<>(executor);
+        List<Future<T>> started = new ArrayList<>(2);
+        long[] startedAt = new long[2];
+        long hedgeAfter = hedge ? hedgeDelay(op).toNanos() : Long.MAX_VALUE;
+        int failed = 0;
+        Throwable firstError = null;
+
+        startedAt[0] = System.nanoTime();
+        started.add(cs.submit(fn::get));
+        try {
+            while (true) {
+                long wait = deadline.remainingNanos();
+                if (started.size() == 1) wait = Math.min(wait, hedgeAfter);
+                Future<T> done = cs.poll(wait, TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    if (deadline.isExpired() || started.size() > 1) throw exceeded(op, null);
+                    // pierwsze wywołanie spóźnia się ponad p95 - wysyłamy drugie
+                    Counter.builder("rag.provider.hedge.fired").tag("op", op).register(meters).increment();
+                    startedAt[1] = System.nanoTime();
+                    started.add(cs.submit(fn::get));
+                    continue;
+                }
+                try {
+                    T value = done.get();
+                    int winner = started.indexOf(done);
+                    long latency = System.nanoTime() - startedAt[winner];
+                    if (winner == 1) Counter.builder("rag.provider.hedge.won").tag("op", op).register(meters).increment();
+                    windows.computeIfAbsent(op, k -> new LatencyWindow()).add(latency);
+                    Timer.builder("rag.provider.latency").tag("op", op).register(meters)
+                            .record(latency, TimeUnit.NANOSECONDS);
+                    return value;
+                } catch (ExecutionException e) {
+                    if (firstError == null) firstError = e.getCause();
+                    // błąd nie jest powodem do hedgingu: czekamy tylko na wywołania, które już trwają
+                    if (++failed == started.size()) throw rethrow(firstError);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw exceeded(op, e);
+        } finally {
+            for (Future<T> f : started) f.cancel(true);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException r) return r;
+        if (t instanceof Error e) throw e;
+        return new CompletionException(t);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /** Ostatnie {@value #WINDOW} opóźnień udanych wywołań operacji. */
+    private static final class LatencyWindow {
+        private final long[] samples = new long[WINDOW];
+        private int next;
+        private int count;
+
+        synchronized void add(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % WINDOW;
+            if (count < WINDOW) count++;
+        }
+
+        /** Percentyl w ns albo -1, gdy próbek jest mniej niż {@code minSamples}. */
+        synchronized long percentile(double p, int minSamples) {
+            if (count == 0 || count < minSamples) return -1;
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            return sorted[Math.min(count - 1, (int) Math.ceil(p * count) - 1)];
+        }
+    }
+}
@@ -1,35 +1,125 @@
 // src/main/java/com/astradesk/rag/service/RagService.java
 package com.astradesk.rag.service;
 
+import com.astradesk.rag.model.ChunkContent;
 import com.astradesk.rag.model.ChunkRecord;
+import com.astradesk.rag.model.ChunkSnippet;
 import com.astradesk.rag.repo.ChunkJdbcRepository;
+import com.astradesk.rag.util.Deadline;
+import com.astradesk.rag.util.DeadlineExceededException;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 import java.util.List;
+import java.util.function.Supplier;
 
+/**
+ * Wyszukiwanie i czat. Warianty z {@link Deadline} przekazują termin żądania do każdego wywołania w dół:
+ * embedding zapytania (z hedgingiem, patrz {@link ProviderCalls}), SQL (setQueryTimeout) i LLM.
+ * Embedding i zapytanie idą przez {@link EmbeddingMigrationService#fenced} - wektor zawsze z modelu aktywnej kolumny.
+ */
 @Service
 public class RagService {
-    private final Embeddings embeddings;
+    private final EmbeddingMigrationService migration;
     private final ChunkJdbcRepository chunks;
     private final ChatLLM chat;
+    private final ContextPacker packer;
+    private final ProviderCalls calls;
     private final int topk;
+    private final int batchMaxQueries;
+    private final int snippetMaxWords;
+    private final int snippetScanChars;
+    private final int fetchMaxIds;
 
-    public RagService(Embeddings embeddings, ChunkJdbcRepository chunks, ChatLLM chat,
-                      @Value("${rag.topk:5}") int topk) {
-        this.embeddings = embeddings;
+    public RagService(EmbeddingMigrationService migration, ChunkJdbcRepository chunks, ChatLLM chat, ContextPacker packer,
+                      ProviderCalls calls,
+                      @Value("${rag.topk:5}") int topk,
+                      @Value("${rag.search.batch-max-queries:32}") int batchMaxQueries,
+                      @Value("${rag.search.snippet.max-words:30}") int snippetMaxWords,
+                      @Value("${rag.search.snippet.scan-chars:4000}") int snippetScanChars,
+                      @Value("${rag.search.fetch-max-ids:200}") int fetchMaxIds) {
+        this.migration = migration;
         this.chunks = chunks;
         this.chat = chat;
+        this.packer = packer;
+        this.calls = calls;
         this.topk = topk;
+        this.batchMaxQueries = batchMaxQueries;
+        this.snippetMaxWords = snippetMaxWords;
+        this.snippetScanChars = snippetScanChars;
+        this.fetchMaxIds = fetchMaxIds;
     }
 
     public List<ChunkRecord> search(String query, Integer k) {
-        float[] v = embeddings.embed(query);
-        return chunks.findSimilar(v, k != null ? k : topk);
+        return search(query, k, Deadline.none());
+    }
+
+    public List<ChunkRecord> search(String query, Integer k, Deadline deadline) {
+        return migration.fenced(false, model -> embedQuery(model, query, deadline),
+                v -> db(deadline, () -> chunks.findSimilar(v, k != null ? k : topk, deadline)));
+    }
+
+    /** Lista wyników bez pełnej treści; treść na żądanie przez {@link #fetchChunks}. */
+    public List<ChunkSnippet> searchSlim(String query, Integer k) {
+        return searchSlim(query, k, Deadline.none());
+    }
+
+    public List<ChunkSnippet> searchSlim(String query, Integer k, Deadline deadline) {
+        return migration.fenced(false, model -> embedQuery(model, query, deadline),
+                v -> db(deadline, () -> chunks.findSimilarSlim(v, query, k != null ? k : topk, snippetMaxWords, snippetScanChars, deadline)));
+    }
+
+    public List<ChunkContent> fetchChunks(List<Long> ids) {
+        return fetchChunks(ids, Deadline.none());
+    }
+
+    public List<ChunkContent> fetchChunks(List<Long> ids, Deadline deadline) {
+        if (ids == null || ids.isEmpty()) throw new IllegalArgumentException("ids must not be empty");
+        if (ids.size() > fetchMaxIds) throw new IllegalArgumentException("Too many ids: " + ids.size() + " > " + fetchMaxIds);
+        return db(deadline, () -> chunks.findByIds(ids, deadline));
+    }
+
+    /** Jedno wywołanie embeddingów i jedno zapytanie SQL dla całej listy zapytań. */
+    public List<List<ChunkRecord>> searchBatch(List<String> queries, Integer k) {
+        return searchBatch(queries, k, Deadline.none());
+    }
+
+    public List<List<ChunkRecord>> searchBatch(List<String> queries, Integer k, Deadline deadline) {
+        if (queries == null || queries.isEmpty()) throw new IllegalArgumentException("queries must not be empty");
+        if (queries.size() > batchMaxQueries) {
+            throw new IllegalArgumentException("Too many queries: " + queries.size() + " > " + batchMaxQueries);
+        }
+        // bez hedgingu: duplikat wywołania dla całej partii to za duży koszt
+        return migration.fenced(false, model -> calls.call("embed-batch", () -> model.embedAll(queries), deadline),
+                vectors -> db(deadline, () -> chunks.findSimilarBatch(List.of(vectors), k != null ? k : topk, deadline)));
     }
 
     public String chat(String question, Integer k) {
-        var res = search(question, k);
-        var ctx = res.stream().map(r -> r.content).toList();
-        return chat.answer(question, ctx);
+        return chat(question, k, Deadline.none());
+    }
+
+    public String chat(String question, Integer k, Deadline deadline) {
+        var res = search(question, k, deadline);
+        var ctx = packer.pack(res);
+        return calls.call("chat", () -> chat.answer(question, ctx), deadline);
+    }
+
+    private float[] embedQuery(Embeddings model, String query, Deadline deadline) {
+        return calls.hedged("embed", () -> model.embed(query), deadline);
+    }
+
+    /**
+     * Zapytanie anulowane przez setQueryTimeout po upływie terminu, jak i termin, który minął przed
+     * wysłaniem zapytania (Deadline.check w repozytorium), zgłaszamy jako przekroczenie terminu - z metryką.
+     */
+    private <T> T db(Deadline deadline, Supplier<T> query) {
+        try {
+            return query.get();
+        } catch (DeadlineExceededException e) {
+            throw calls.exceeded(e.stage(), e);
+        } catch (DataAccessException e) {
+            if (deadline.isExpired()) throw calls.exceeded("search", e);
+            throw e;
+        }
     }
 }
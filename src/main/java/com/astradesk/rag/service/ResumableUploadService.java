@@ -0,0 +1,345 @@
+// src/main/java/com/astradesk/rag/service/ResumableUploadService.java
+package com.astradesk.rag.service;
+
+import com.astradesk.rag.model.CreateUploadRequest;
+import com.astradesk.rag.model.ProgressEvent;
+import com.astradesk.rag.model.UploadPart;
+import com.astradesk.rag.model.UploadStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Upload wznawialny w stylu S3 multipart: utwórz upload, wyślij części (w dowolnej kolejności,
+ * powtórzenie części ją nadpisuje), sprawdź stan, złóż i zaindeksuj.
+ * Części trafiają prosto na dysk (DataBufferUtils.write → AsynchronousFileChannel), bez agregacji
+ * w pamięci; SHA-256 liczony w locie i porównywany z nagłówkiem klienta.
+ * Stan uploadu to manifest JSON obok części, więc upload przeżywa restart - ale nie zmianę węzła:
+ * przy wielu instancjach potrzebny sticky routing albo współdzielony wolumen pod rag.upload.dir.
+ * Złożony plik (upload.bin) zostaje do udanego końca ingestu: po błędzie, anulowaniu albo restarcie
+ * w trakcie ingestu ponowne complete indeksuje go jeszcze raz, bez ponownego wysyłania części.
+ */
+@Service
+@Lazy(false)
+public class ResumableUploadService {
+    private static final Logger log = LoggerFactory.getLogger(ResumableUploadService.class);
+    private static final String MANIFEST = "manifest.json";
+    private static final String ASSEMBLED = "upload.bin";
+    private static final int MAX_PARTS = 10_000;
+
+    private final ZipIngestService ingest;
+    private final ObjectMapper mapper;
+    private final Path baseDir;
+    private final long maxPartBytes;
+    private final Duration expireAfter;
+    private final int defaultMaxLen;
+    private final int defaultOverlap;
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+    /** Uploady indeksowane teraz przez tę instancję - purgeExpired i abort ich nie ruszają, complete odrzuca. */
+    private final Set<String> ingesting = ConcurrentHashMap.newKeySet();
+
+    /** {@code assembled}: części złożone w upload.bin (pliki części usunięte); {@code completed}: ingest uruchomiony. */
+    record Manifest(String id, String filename, String collection, Long totalSize, int maxLen, int overlap,
+                    long createdAt, boolean assembled, boolean completed, TreeMap<Integer, UploadPart> parts) {
+        Manifest withPart(UploadPart p) {
+            TreeMap<Integer, UploadPart> next = new TreeMap<>(parts);
+            next.put(p.number(), p);
+            return new Manifest(id, filename, collection, totalSize, maxLen, overlap, createdAt, assembled, completed, next);
+        }
+
+        Manifest withState(boolean assembled, boolean completed) {
+            return new Manifest(id, filename, collection, totalSize, maxLen, overlap, createdAt, assembled, completed, parts);
+        }
+
+        UploadStatus status() {
+            long received = parts.values().stream().mapToLong(UploadPart::size).sum();
+            return new UploadStatus(id, filename, collection, totalSize, received, completed, List.copyOf(parts.values()));
+        }
+    }
+
+    public ResumableUploadService(ZipIngestService ingest, ObjectMapper mapper,
+                                  @Value("${rag.upload.dir:${java.io.tmpdir}/rag-uploads}") String baseDir,
+                                  @Value("${rag.upload.max-part-size:256MB}") DataSize maxPartSize,
+                                  @Value("${rag.upload.expire-after:24h}") Duration expireAfter,
+                                  @Value("${rag.chunk.maxLen:1200}") int defaultMaxLen,
+                                  @Value("${rag.chunk.overlap:200}") int defaultOverlap) throws IOException {
+        this.ingest = ingest;
+        this.mapper = mapper;
+        this.baseDir = Files.createDirectories(Path.of(baseDir));
+        this.maxPartBytes = maxPartSize.toBytes();
+        this.expireAfter = expireAfter;
+        this.defaultMaxLen = defaultMaxLen;
+        this.defaultOverlap = defaultOverlap;
+    }
+
+    public UploadStatus create(CreateUploadRequest req) {
+        if (req == null || req.filename() == null || req.filename().isBlank()) {
+            throw new IllegalArgumentException("filename is required");
+        }
+        if (req.totalSize() != null && req.totalSize() < 0) throw new IllegalArgumentException("totalSize must be >= 0");
+        String id = UUID.randomUUID().toString();
+        Manifest m = new Manifest(id, req.filename(),
+                req.collection() != null && !req.collection().isBlank() ? req.collection() : "default",
+                req.totalSize(),
+                req.maxLen() != null ? req.maxLen() : defaultMaxLen,
+                req.overlap() != null ? req.overlap() : defaultOverlap,
+                System.currentTimeMillis(), false, false, new TreeMap<>());
+        try {
+            Files.createDirectories(dir(id));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        writeManifest(m);
+        return m.status();
+    }
+
+    public UploadStatus status(String id) {
+        return readManifest(id).status();
+    }
+
+    /**
+     * Zapisuje część strumieniowo do pliku tymczasowego, sprawdza rozmiar i SHA-256
+     * ({@code expectedSha256} w hex, opcjonalny), po czym atomowo podmienia plik części.
+     */
+    public Mono<UploadPart> putPart(String id, int number, Flux<DataBuffer> body, String expectedSha256) {
+        if (number < 1 || number > MAX_PARTS) {
+            throw new IllegalArgumentException("Part number must be between 1 and " + MAX_PARTS);
+        }
+        return Mono.fromCallable(() -> {
+                    checkAcceptsParts(readManifest(id));
+                    return dir(id).resolve(partName(number) + "." + UUID.randomUUID() + ".tmp");
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(tmp -> {
+                    MessageDigest digest = sha256();
+                    AtomicLong size = new AtomicLong();
+                    Flux<DataBuffer> checked = body.handle((buf, sink) -> {
+                        if (size.addAndGet(buf.readableByteCount()) > maxPartBytes) {
+                            DataBufferUtils.release(buf);
+                            sink.error(new IllegalArgumentException("Part exceeds rag.upload.max-part-size (" + maxPartBytes + " bytes)"));
+                            return;
+                        }
+                        try (DataBuffer.ByteBufferIterator it = buf.readableByteBuffers()) {
+                            while (it.hasNext()) digest.update(it.next());
+                        }
+                        sink.next(buf);
+                    });
+                    return DataBufferUtils.write(checked, tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)
+                            .then(Mono.fromCallable(() -> commitPart(id, number, tmp, size.get(), HexFormat.of().formatHex(digest.digest()), expectedSha256))
+                                    .subscribeOn(Schedulers.boundedElastic()))
+                            .doOnError(e -> deleteQuietly(tmp));
+                });
+    }
+
+    /**
+     * Składa części 1..n w jeden plik (albo bierze złożony wcześniej) i uruchamia ingest. Katalog uploadu
+     * znika dopiero po udanym ingeście; po błędzie lub anulowaniu complete można wywołać ponownie.
+     */
+    public Flux<ProgressEvent> complete(String id, IngestProgress.OnDisconnect onDisconnect) {
+        return Mono.fromCallable(() -> assemble(id))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(m -> ingest.ingestZipAsStream(new FileSystemResource(dir(id).resolve(ASSEMBLED)),
+                        m.filename(), m.collection(), m.maxLen(), m.overlap(), onDisconnect, done -> finished(id, done)));
+    }
+
+    public void abort(String id) {
+        readManifest(id);
+        if (ingesting.contains(id)) throw new UploadStateException("Upload " + id + " is being ingested");
+        deleteUpload(id);
+    }
+
+    private void finished(String id, boolean done) {
+        try {
+            if (done) {
+                deleteUpload(id);
+            } else {
+                synchronized (lock(id)) {
+                    writeManifest(readManifest(id).withState(true, false)); // upload.bin zostaje do ponowienia
+                }
+                log.info("Ingest of upload {} did not finish, complete can be retried", id);
+            }
+        } catch (UploadNotFoundException e) {
+            log.debug("Upload {} already removed", id);
+        } finally {
+            ingesting.remove(id);
+        }
+    }
+
+    /**
+     * Porzucone uploady (bez zmian przez rag.upload.expire-after) są usuwane - także złożone, których ingest
+     * się nie udał i nikt go nie ponowił. Uploadu, który ta instancja właśnie indeksuje, nie ruszamy -
+     * ingest wielkiego archiwum trwa dłużej niż expire-after, a katalog i tak usuwa udany koniec ingestu.
+     */
+    @Scheduled(fixedDelayString = "${rag.upload.cleanup-interval-ms:3600000}")
+    public void purgeExpired() {
+        long cutoff = System.currentTimeMillis() - expireAfter.toMillis();
+        try (Stream<Path> dirs = Files.list(baseDir)) {
+            dirs.filter(Files::isDirectory).forEach(d -> {
+                try {
+                    if (ingesting.contains(d.getFileName().toString())) return;
+                    if (Files.getLastModifiedTime(d).toMillis() < cutoff) {
+                        log.info("Removing expired upload {}", d.getFileName());
+                        deleteUpload(d.getFileName().toString());
+                    }
+                } catch (IOException e) {
+                    log.warn("Cannot inspect upload dir {}: {}", d, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Cannot list upload dir {}: {}", baseDir, e.getMessage());
+        }
+    }
+
+    private UploadPart commitPart(String id, int number, Path tmp, long size, String sha256, String expectedSha256) throws IOException {
+        if (expectedSha256 != null && !expectedSha256.isBlank() && !expectedSha256.trim().equalsIgnoreCase(sha256)) {
+            throw new IllegalArgumentException("Checksum mismatch for part " + number + ": expected " + expectedSha256 + ", got " + sha256);
+        }
+        UploadPart part = new UploadPart(number, size, sha256);
+        synchronized (lock(id)) {
+            Manifest m = readManifest(id);
+            checkAcceptsParts(m);
+            Files.move(tmp, dir(id).resolve(partName(number)), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writeManifest(m.withPart(part));
+        }
+        return part;
+    }
+
+    private void checkAcceptsParts(Manifest m) {
+        if (m.assembled() || m.completed()) {
+            throw new UploadStateException("Upload " + m.id() + " is already assembled; retry complete or abort it");
+        }
+    }
+
+    /**
+     * Złożony upload.bin z poprzedniego complete (ingest nieudany, anulowany albo przerwany restartem)
+     * jest używany ponownie; {@code completed} bez wpisu w {@link #ingesting} to ingest przerwany restartem.
+     */
+    private Manifest assemble(String id) throws IOException {
+        synchronized (lock(id)) {
+            Manifest m = readManifest(id);
+            if (ingesting.contains(id)) throw new UploadStateException("Upload " + id + " is being ingested");
+            if (!m.assembled() && !m.completed()) m = concatenate(m); // completed zawsze oznacza złożony
+            Manifest started = m.withState(true, true);
+            writeManifest(started);
+            ingesting.add(id);
+            return started;
+        }
+    }
+
+    /** Pod blokadą uploadu: sprawdza części, składa je w upload.bin i dopiero po zapisaniu manifestu usuwa części. */
+    private Manifest concatenate(Manifest m) throws IOException {
+        String id = m.id();
+        if (m.parts().isEmpty()) throw new UploadStateException("Upload " + id + " has no parts");
+        int expected = 1;
+        for (int n : m.parts().keySet()) {
+            if (n != expected) throw new UploadStateException("Upload " + id + " is missing part " + expected);
+            expected++;
+        }
+        long total = m.parts().values().stream().mapToLong(UploadPart::size).sum();
+        if (m.totalSize() != null && m.totalSize() != total) {
+            throw new UploadStateException("Upload " + id + " has " + total + " bytes, expected " + m.totalSize());
+        }
+        Path out = dir(id).resolve(ASSEMBLED);
+        try (FileChannel target = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (UploadPart p : m.parts().values()) {
+                try (FileChannel src = FileChannel.open(dir(id).resolve(partName(p.number())), StandardOpenOption.READ)) {
+                    long pos = 0, len = src.size();
+                    while (pos < len) pos += src.transferTo(pos, len - pos, target);
+                }
+            }
+        }
+        Manifest assembled = m.withState(true, false);
+        writeManifest(assembled);
+        for (UploadPart p : m.parts().values()) Files.deleteIfExists(dir(id).resolve(partName(p.number())));
+        return assembled;
+    }
+
+    private Manifest readManifest(String id) {
+        Path file = dir(id).resolve(MANIFEST);
+        if (!Files.exists(file)) throw new UploadNotFoundException(id);
+        try {
+            return mapper.readValue(file.toFile(), Manifest.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeManifest(Manifest m) {
+        Path dir = dir(m.id());
+        Path tmp = dir.resolve(MANIFEST + ".tmp");
+        try {
+            mapper.writeValue(tmp.toFile(), m);
+            Files.move(tmp, dir.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void deleteUpload(String id) {
+        synchronized (lock(id)) {
+            try (Stream<Path> files = Files.list(dir(id))) {
+                files.forEach(ResumableUploadService::deleteQuietly);
+            } catch (IOException e) {
+                log.debug("Upload {} already removed: {}", id, e.getMessage());
+            }
+            deleteQuietly(dir(id));
+        }
+        locks.remove(id);
+    }
+
+    private Path dir(String id) {
+        try {
+            return baseDir.resolve(UUID.fromString(id).toString());
+        } catch (IllegalArgumentException e) {
+            throw new UploadNotFoundException(id);
+        }
+    }
+
+    private Object lock(String id) {
+        return locks.computeIfAbsent(id, k -> new Object());
+    }
+
+    private static String partName(int number) {
+        return String.format("part-%05d", number);
+    }
+
+    private static void deleteQuietly(Path p) {
+        try {
+            Files.deleteIfExists(p);
+        } catch (IOException e) {
+            log.debug("Cannot delete {}: {}", p, e.getMessage());
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
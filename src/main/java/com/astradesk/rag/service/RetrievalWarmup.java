@@ -0,0 +1,184 @@
+// src/main/java/com/astradesk/rag/service/RetrievalWarmup.java
+package com.astradesk.rag.service;
+
+import com.astradesk.rag.config.BackgroundInitializer;
+import com.astradesk.rag.repo.ChunkJdbcRepository;
+import com.astradesk.rag.util.Deadline;
+import com.astradesk.rag.util.DeadlineExceededException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rozgrzewka ścieżki wyszukiwania po starcie: wypełnia pule Hikari, ładuje indeks ANN
+ * do shared_buffers (pg_prewarm), wykonuje syntetyczne embeddingi, wyszukiwania i serializację,
+ * żeby JIT skompilował gorące ścieżki. Do zakończenia readiness jest OUT_OF_SERVICE
+ * (patrz WarmupHealthIndicator). Całość ogranicza rag.warmup.max-duration jako {@link Deadline}:
+ * pule i pg_prewarm oraz embeddingi idą przez {@link ProviderCalls} (przerwanie po terminie),
+ * wyszukiwania mają setQueryTimeout - po terminie faza TIMED_OUT i pod przyjmuje ruch.
+ */
+@Service
+@Lazy(false)
+public class RetrievalWarmup {
+    private static final Logger log = LoggerFactory.getLogger(RetrievalWarmup.class);
+
+    public enum Phase { PENDING, POOLS, PREWARM, EMBEDDINGS, SEARCH, DONE, TIMED_OUT, FAILED, DISABLED }
+
+    private final Embeddings embeddings;
+    private final ChunkJdbcRepository chunks;
+    private final JdbcTemplate jdbc;
+    private final JdbcTemplate readJdbc;
+    private final ObjectMapper mapper;
+    private final BackgroundInitializer init;
+    private final ProviderCalls calls;
+    private final boolean enabled;
+    private final int connections;
+    private final int embeddingCalls;
+    private final int searchIterations;
+    private final List<String> prewarmRelations;
+    private final Duration maxDuration;
+
+    private volatile Phase phase = Phase.PENDING;
+    private volatile String error;
+    private final AtomicInteger searches = new AtomicInteger();
+
+    public RetrievalWarmup(Embeddings embeddings, ChunkJdbcRepository chunks, JdbcTemplate jdbc,
+                           @Qualifier("readJdbcTemplate") JdbcTemplate readJdbc, ObjectMapper mapper,
+                           BackgroundInitializer init, ProviderCalls calls,
+                           @Value("${rag.warmup.enabled:true}") boolean enabled,
+                           @Value("${rag.warmup.connections:4}") int connections,
+                           @Value("${rag.warmup.embedding-calls:2}") int embeddingCalls,
+                           @Value("${rag.warmup.search-iterations:200}") int searchIterations,
+                           @Value("${rag.warmup.prewarm-relations:idx_chunks_embedding}") List<String> prewarmRelations,
+                           @Value("${rag.warmup.max-duration:60s}") Duration maxDuration) {
+        this.embeddings = embeddings;
+        this.chunks = chunks;
+        this.jdbc = jdbc;
+        this.readJdbc = readJdbc;
+        this.mapper = mapper;
+        this.init = init;
+        this.calls = calls;
+        this.enabled = enabled;
+        this.connections = connections;
+        this.embeddingCalls = embeddingCalls;
+        this.searchIterations = searchIterations;
+        this.prewarmRelations = prewarmRelations;
+        this.maxDuration = maxDuration;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            phase = Phase.DISABLED;
+            return;
+        }
+        init.run("warmup", false, this::run);
+    }
+
+    public Phase phase() { return phase; }
+    public int completedSearches() { return searches.get(); }
+    public int totalSearches() { return searchIterations; }
+    public String error() { return error; }
+
+    void run() {
+        Deadline deadline = Deadline.after(maxDuration);
+        try {
+            phase = Phase.POOLS;
+            calls.call("warmup-pools", () -> {
+                fillPool(jdbc);
+                fillPool(readJdbc);
+                return null;
+            }, deadline);
+
+            phase = Phase.PREWARM;
+            calls.call("warmup-prewarm", () -> {
+                prewarm();
+                return null;
+            }, deadline);
+
+            phase = Phase.EMBEDDINGS;
+            for (int i = 0; i < embeddingCalls; i++) {
+                String text = "AstraDesk warm-up query " + i;
+                calls.call("warmup-embed", () -> embeddings.embed(text), deadline);
+            }
+
+            phase = Phase.SEARCH;
+            SplittableRandom rnd = new SplittableRandom(42);
+            float[] q = new float[embeddings.dim()];
+            while (searches.get() < searchIterations) {
+                deadline.check("warmup-search");
+                for (int d = 0; d < q.length; d++) q[d] = (float) rnd.nextDouble(-1, 1);
+                mapper.writeValueAsBytes(chunks.findSimilar(q, 5, deadline));
+                searches.incrementAndGet();
+            }
+            phase = Phase.DONE;
+        } catch (Exception e) {
+            error = e.getMessage();
+            // setQueryTimeout kończy się błędem SQL, nie DeadlineExceededException
+            if (e instanceof DeadlineExceededException || deadline.isExpired()) {
+                phase = Phase.TIMED_OUT;
+                log.warn("Retrieval warm-up did not finish within {}, continuing without it", maxDuration);
+            } else {
+                phase = Phase.FAILED;
+                log.warn("Retrieval warm-up failed, continuing without it: {}", e.getMessage());
+            }
+        }
+    }
+
+    /** Pobiera naraz N połączeń, żeby Hikari je otworzył, i oddaje je do puli. */
+    private void fillPool(JdbcTemplate template) {
+        var ds = template.getDataSource();
+        if (ds == null) return;
+        List<Connection> held = new ArrayList<>();
+        try {
+            for (int i = 0; i < connections; i++) held.add(ds.getConnection());
+        } catch (SQLException e) {
+            throw new CannotGetJdbcConnectionException("Warm-up could not open pool connections", e);
+        } finally {
+            for (Connection c : held) {
+                try {
+                    c.close();
+                } catch (SQLException ignored) {
+                    // połączenie i tak wraca do puli albo jest przez nią zamykane
+                }
+            }
+        }
+    }
+
+    private void prewarm() {
+        try {
+            Boolean available = jdbc.queryForObject(
+                    "SELECT EXISTS (SELECT 1 FROM pg_available_extensions WHERE name = 'pg_prewarm')", Boolean.class);
+            if (!Boolean.TRUE.equals(available)) {
+                log.info("pg_prewarm not available, skipping index prewarm");
+                return;
+            }
+            jdbc.execute("CREATE EXTENSION IF NOT EXISTS pg_prewarm");
+            for (String rel : prewarmRelations) {
+                // primary oraz ścieżka odczytu (replika, jeśli skonfigurowana)
+                Long pages = jdbc.queryForObject("SELECT pg_prewarm(?::regclass)", Long.class, rel);
+                readJdbc.queryForObject("SELECT pg_prewarm(?::regclass)", Long.class, rel);
+                log.info("pg_prewarm {}: {} pages", rel, pages);
+            }
+        } catch (DataAccessException e) {
+            log.info("pg_prewarm skipped: {}", e.getMostSpecificCause().getMessage());
+        }
+    }
+}
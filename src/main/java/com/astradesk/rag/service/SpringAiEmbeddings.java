@@ -2,6 +2,7 @@
 
 package com.astradesk.rag.service;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
@@ -14,9 +15,9 @@ import org.springframework.stereotype.Component;
 public class SpringAiEmbeddings implements Embeddings {
     private final int dim;
 
-    public SpringAiEmbeddings() {
-        // Embedding dimension is 1536 for text-embedding-3-small
-        this.dim = 1536;
+    public SpringAiEmbeddings(@Value("${rag.embedding-dim:1536}") int dim) {
+        // Spring AI 0.8.1 has no dimensions option: full vectors must go through Embeddings.truncate(v, dim)
+        this.dim = dim;
     }
 
     @Override
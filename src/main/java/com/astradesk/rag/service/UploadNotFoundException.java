@@ -0,0 +1,9 @@
+// src/main/java/com/astradesk/rag/service/UploadNotFoundException.java
+package com.astradesk.rag.service;
+
+/** Nie ma uploadu o tym id (nigdy nie istniał, przerwany albo usunięty po ingeście); mapowany na 404. */
+public class UploadNotFoundException extends RuntimeException {
+    public UploadNotFoundException(String id) {
+        super("Upload not found: " + id);
+    }
+}
@@ -0,0 +1,9 @@
+// src/main/java/com/astradesk/rag/service/UploadStateException.java
+package com.astradesk.rag.service;
+
+/** Operacja niedozwolona w bieżącym stanie uploadu (już złożony, brakujące części...); mapowany na 409. */
+public class UploadStateException extends RuntimeException {
+    public UploadStateException(String message) {
+        super(message);
+    }
+}
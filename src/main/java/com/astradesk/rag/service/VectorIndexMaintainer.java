@@ -0,0 +1,380 @@
+// src/main/java/com/astradesk/rag/service/VectorIndexMaintainer.java
+package com.astradesk.rag.service;
+
+import com.astradesk.rag.config.EmbeddingSchemaInitializer;
+import com.astradesk.rag.repo.ChunkJdbcRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.*;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cykl życia indeksu ANN na chunks.embedding. Indeks ivfflat trenuje centroidy na danych z chwili
+ * budowy, więc gdy tabela urośnie (albo zmieni się metoda/parametry), indeks jest przebudowywany:
+ * CREATE INDEX CONCURRENTLY pod nową nazwą z podniesionym maintenance_work_mem, zamiana nazw
+ * w krótkiej transakcji, DROP INDEX CONCURRENTLY starego. Przebudowa tylko w oknie serwisowym
+ * i pod advisory lockiem (jedna instancja naraz). Po dużych ingestach ANALYZE.
+ * Każda instancja co rag.index.search-param-refresh-ms odczytuje definicję indeksu z katalogu
+ * i ustawia repozytorium ivfflat.probes / hnsw.ef_search dla zapytań.
+ * Stan: tabela vector_index_state i endpoint actuatora "vectorindex".
+ */
+@Service
+@DependsOnDatabaseInitialization
+@Lazy(false)
+public class VectorIndexMaintainer implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(VectorIndexMaintainer.class);
+
+    static final String INDEX = "idx_chunks_embedding";
+    private static final long LOCK_KEY = 0x7261672d69647878L; // "rag-idxx"
+    private static final Pattern LISTS = Pattern.compile("lists\\s*=\\s*'?(\\d+)");
+    private static final Pattern HNSW_M = Pattern.compile("\\bm\\s*=\\s*'?(\\d+)");
+    private static final Pattern HNSW_EF = Pattern.compile("ef_construction\\s*=\\s*'?(\\d+)");
+
+    /** Definicja indeksu: metoda i parametry WITH (...). */
+    public record IndexSpec(String method, int lists, int m, int efConstruction) {
+        String withClause() {
+            return method.equals("hnsw")
+                    ? "m = " + m + ", ef_construction = " + efConstruction
+                    : "lists = " + lists;
+        }
+
+        /** ivfflat.probes (sqrt(lists)) / hnsw.ef_search stosowane w zapytaniach. */
+        int searchParam() {
+            return method.equals("hnsw") ? Math.max(40, efConstruction) : Math.max(1, (int) Math.round(Math.sqrt(lists)));
+        }
+    }
+
+    private final JdbcTemplate jdbc;
+    private final ChunkJdbcRepository chunks;
+    private final boolean enabled;
+    private final String method;
+    private final int hnswM;
+    private final int hnswEfConstruction;
+    private final double driftThreshold;
+    private final long minRows;
+    private final String maintenanceWorkMem;
+    private final LocalTime windowStart;
+    private final LocalTime windowEnd;
+    private final ZoneId zone;
+    private final long analyzeAfterChunks;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "vector-index");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong chunksSinceAnalyze = new AtomicLong();
+    private volatile Instant lastCheck;
+    private volatile String lastDecision = "not checked yet";
+    private volatile String lastError;
+
+    public VectorIndexMaintainer(JdbcTemplate jdbc, ChunkJdbcRepository chunks,
+                                 @Value("${rag.index.enabled:true}") boolean enabled,
+                                 @Value("${rag.index.method:ivfflat}") String method,
+                                 @Value("${rag.index.hnsw.m:16}") int hnswM,
+                                 @Value("${rag.index.hnsw.ef-construction:64}") int hnswEfConstruction,
+                                 @Value("${rag.index.drift-threshold:0.3}") double driftThreshold,
+                                 @Value("${rag.index.min-rows:10000}") long minRows,
+                                 @Value("${rag.index.maintenance-work-mem:1GB}") String maintenanceWorkMem,
+                                 @Value("${rag.index.window:}") String window,
+                                 @Value("${rag.index.zone:UTC}") String zone,
+                                 @Value("${rag.index.analyze-after-chunks:5000}") long analyzeAfterChunks) {
+        this.jdbc = jdbc;
+        this.chunks = chunks;
+        this.enabled = enabled;
+        this.method = method.toLowerCase(Locale.ROOT);
+        if (!this.method.equals("ivfflat") && !this.method.equals("hnsw")) {
+            throw new IllegalArgumentException("rag.index.method must be ivfflat or hnsw, was: " + method);
+        }
+        if (!maintenanceWorkMem.matches("\\d+\\s*(kB|MB|GB)?")) {
+            throw new IllegalArgumentException("Invalid rag.index.maintenance-work-mem: " + maintenanceWorkMem);
+        }
+        this.hnswM = hnswM;
+        this.hnswEfConstruction = hnswEfConstruction;
+        this.driftThreshold = driftThreshold;
+        this.minRows = minRows;
+        this.maintenanceWorkMem = maintenanceWorkMem.replace(" ", "");
+        this.zone = ZoneId.of(zone);
+        if (window.isBlank()) {
+            this.windowStart = null;
+            this.windowEnd = null;
+        } else {
+            String[] parts = window.split("-");
+            if (parts.length != 2) throw new IllegalArgumentException("rag.index.window must look like 01:00-05:00");
+            this.windowStart = LocalTime.parse(parts[0].trim());
+            this.windowEnd = LocalTime.parse(parts[1].trim());
+        }
+        this.analyzeAfterChunks = analyzeAfterChunks;
+    }
+
+    /** Zalecenie pgvector: rows/1000 do 1M wierszy, potem sqrt(rows). */
+    public static int ivfflatLists(long rows) {
+        long lists = rows <= 1_000_000 ? rows / 1000 : (long) Math.sqrt(rows);
+        return (int) Math.max(10, lists);
+    }
+
+    IndexSpec desired(long rows) {
+        return method.equals("hnsw")
+                ? new IndexSpec("hnsw", 0, hnswM, hnswEfConstruction)
+                : new IndexSpec("ivfflat", ivfflatLists(rows), 0, 0);
+    }
+
+    /** Czy indeks trzeba przebudować; null = nie, inaczej powód. */
+    String rebuildReason(IndexSpec current, long rowsAtBuild, IndexSpec desired, long rows) {
+        if (rows < minRows) return null;
+        if (current == null) return "index missing";
+        if (!current.method().equals(desired.method())) return "method " + current.method() + " -> " + desired.method();
+        if (desired.method().equals("hnsw")) {
+            return current.m() != desired.m() || current.efConstruction() != desired.efConstruction() ? "hnsw parameters changed" : null;
+        }
+        double drift = rowsAtBuild <= 0 ? 1.0 : Math.abs(rows - rowsAtBuild) / (double) rowsAtBuild;
+        if (drift >= driftThreshold) return String.format(Locale.ROOT, "row drift %.0f%% since last build", drift * 100);
+        double ratio = desired.lists() / (double) Math.max(1, current.lists());
+        if (ratio >= 2 || ratio <= 0.5) return "lists " + current.lists() + " -> " + desired.lists();
+        return null;
+    }
+
+    boolean inWindow(ZonedDateTime now) {
+        if (windowStart == null) return true;
+        LocalTime t = now.withZoneSameInstant(zone).toLocalTime();
+        return windowStart.isBefore(windowEnd)
+                ? !t.isBefore(windowStart) && t.isBefore(windowEnd)
+                : !t.isBefore(windowStart) || t.isBefore(windowEnd); // okno przez północ
+    }
+
+    @Scheduled(initialDelayString = "${rag.index.initial-delay-ms:300000}", fixedDelayString = "${rag.index.check-interval-ms:900000}")
+    public void check() {
+        if (!enabled) return;
+        lastCheck = Instant.now();
+        if (!inWindow(ZonedDateTime.now())) {
+            lastDecision = "outside maintenance window";
+            return;
+        }
+        launch(false);
+    }
+
+    /**
+     * Parametr wyszukiwania z bieżącej definicji indeksu; działa także przy rag.index.enabled=false
+     * i podchwytuje przebudowy wykonane przez inne instancje.
+     */
+    @Scheduled(fixedDelayString = "${rag.index.search-param-refresh-ms:60000}")
+    public void refreshSearchParam() {
+        try {
+            applySearchParam(currentSpec());
+        } catch (DataAccessException e) {
+            log.warn("Could not read vector index definition: {}", e.getMessage());
+        }
+    }
+
+    private void applySearchParam(IndexSpec spec) {
+        if (spec == null) chunks.clearSearchParam();
+        else chunks.setSearchParam(spec.method(), spec.searchParam());
+    }
+
+    /** Przebudowa na żądanie (endpoint actuatora) - pomija okno serwisowe i próg dryfu; no-op, gdy już trwa. */
+    public Map<String, Object> rebuildNow() {
+        launch(true);
+        return state();
+    }
+
+    /** Budowa indeksu trwa minuty-godziny, więc nie blokuje wątku schedulera. */
+    private boolean launch(boolean force) {
+        if (!running.compareAndSet(false, true)) return false;
+        executor.execute(() -> {
+            try {
+                runMaintenance(force);
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    private void runMaintenance(boolean force) {
+        try {
+            if (migrationInProgress()) {
+                lastDecision = "embedding migration in progress";
+                return;
+            }
+            Integer dim = EmbeddingSchemaInitializer.columnDim(jdbc, "embedding");
+            if (dim == null || dim > EmbeddingSchemaInitializer.MAX_INDEXED_DIM) {
+                lastDecision = "column not indexable";
+                return;
+            }
+            long rows = rowCount();
+            IndexSpec current = currentSpec();
+            IndexSpec desired = desired(rows);
+            String reason = force ? "requested" : rebuildReason(current, rowsAtBuild(), desired, rows);
+            if (reason == null) {
+                lastDecision = "up to date (" + rows + " rows)";
+                return;
+            }
+            rebuild(desired, rows, reason);
+            lastError = null;
+        } catch (DataAccessException e) {
+            lastError = e.getMessage();
+            log.warn("Vector index maintenance failed: {}", e.getMessage());
+        }
+    }
+
+    private void rebuild(IndexSpec spec, long rows, String reason) {
+        String tmp = INDEX + "_new";
+        String old = INDEX + "_old";
+        Boolean done = jdbc.execute((ConnectionCallback<Boolean>) con -> {
+            try (Statement st = con.createStatement()) {
+                if (!tryLock(st)) {
+                    lastDecision = "another instance is maintaining the index";
+                    return false;
+                }
+                try {
+                    log.info("Rebuilding {} as {} ({}) - {}", INDEX, spec.method(), spec.withClause(), reason);
+                    long start = System.nanoTime();
+                    st.execute("SET maintenance_work_mem = '" + maintenanceWorkMem + "'");
+                    // pozostałości po przerwanej przebudowie: INVALID _new albo _old sprzed końcowego DROP
+                    st.execute("DROP INDEX CONCURRENTLY IF EXISTS " + tmp);
+                    st.execute("DROP INDEX CONCURRENTLY IF EXISTS " + old);
+                    st.execute("CREATE INDEX CONCURRENTLY " + tmp + " ON chunks USING " + spec.method()
+                            + " (embedding vector_cosine_ops) WITH (" + spec.withClause() + ")");
+                    boolean autoCommit = con.getAutoCommit();
+                    con.setAutoCommit(false);
+                    try {
+                        st.execute("ALTER INDEX IF EXISTS " + INDEX + " RENAME TO " + old);
+                        st.execute("ALTER INDEX " + tmp + " RENAME TO " + INDEX);
+                        con.commit();
+                    } catch (SQLException e) {
+                        con.rollback();
+                        throw e;
+                    } finally {
+                        con.setAutoCommit(autoCommit);
+                    }
+                    st.execute("DROP INDEX CONCURRENTLY IF EXISTS " + old);
+                    st.execute("ANALYZE chunks");
+                    lastDecision = "rebuilt (" + reason + ") in " + (System.nanoTime() - start) / 1_000_000 + "ms";
+                    log.info("Vector index {}", lastDecision);
+                    return true;
+                } finally {
+                    st.execute("RESET maintenance_work_mem");
+                    st.execute("SELECT pg_advisory_unlock(" + LOCK_KEY + ")");
+                }
+            }
+        });
+        if (Boolean.TRUE.equals(done)) {
+            jdbc.update("INSERT INTO vector_index_state(index_name, method, params, rows_at_build, built_at) VALUES (?,?,?,?, now()) " +
+                            "ON CONFLICT (index_name) DO UPDATE SET method = EXCLUDED.method, params = EXCLUDED.params, " +
+                            "rows_at_build = EXCLUDED.rows_at_build, built_at = EXCLUDED.built_at",
+                    INDEX, spec.method(), spec.withClause(), rows);
+            chunksSinceAnalyze.set(0);
+            applySearchParam(spec);
+        }
+    }
+
+    /** Po dużym ingeście statystyki planera są nieaktualne - ANALYZE w tle. */
+    @EventListener
+    public void onIngestCompleted(IngestCompletedEvent event) {
+        if (!enabled || chunksSinceAnalyze.addAndGet(event.chunks()) < analyzeAfterChunks) return;
+        chunksSinceAnalyze.set(0);
+        executor.execute(() -> {
+            try {
+                jdbc.execute("ANALYZE chunks");
+                log.info("ANALYZE chunks after ingest of {} ({} chunks)", event.collection(), event.chunks());
+            } catch (DataAccessException e) {
+                log.warn("ANALYZE after ingest failed: {}", e.getMessage());
+            }
+        });
+    }
+
+    public Map<String, Object> state() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", enabled);
+        out.put("running", running.get());
+        try {
+            long rows = rowCount();
+            IndexSpec current = currentSpec();
+            IndexSpec desired = desired(rows);
+            out.put("rows", rows);
+            out.put("rowsAtBuild", rowsAtBuild());
+            out.put("current", current);
+            out.put("desired", desired);
+            out.put("recommendedSearchParam", (current != null ? current : desired).searchParam());
+            out.put("appliedSearchSetting", chunks.searchSetting());
+            out.put("rebuildReason", rebuildReason(current, rowsAtBuild(), desired, rows));
+        } catch (DataAccessException e) {
+            out.put("error", e.getMessage());
+        }
+        out.put("window", windowStart == null ? "any" : windowStart + "-" + windowEnd + " " + zone);
+        out.put("lastCheck", lastCheck);
+        out.put("lastDecision", lastDecision);
+        out.put("lastError", lastError);
+        return out;
+    }
+
+    private IndexSpec currentSpec() {
+        List<String> defs = jdbc.queryForList("SELECT indexdef FROM pg_indexes WHERE tablename = 'chunks' AND indexname = ?",
+                String.class, INDEX);
+        return defs.isEmpty() ? null : parse(defs.get(0));
+    }
+
+    static IndexSpec parse(String indexdef) {
+        String d = indexdef.toLowerCase(Locale.ROOT);
+        if (d.contains("using hnsw")) {
+            return new IndexSpec("hnsw", 0, intOr(HNSW_M.matcher(d), 16), intOr(HNSW_EF.matcher(d), 64));
+        }
+        return new IndexSpec("ivfflat", intOr(LISTS.matcher(d), 100), 0, 0);
+    }
+
+    private static int intOr(Matcher m, int dflt) {
+        return m.find() ? Integer.parseInt(m.group(1)) : dflt;
+    }
+
+    private long rowCount() {
+        Long estimate = jdbc.queryForObject("SELECT reltuples::bigint FROM pg_class WHERE oid = 'chunks'::regclass", Long.class);
+        if (estimate != null && estimate >= 0) return estimate;
+        Long exact = jdbc.queryForObject("SELECT count(*) FROM chunks", Long.class); // tabela jeszcze bez ANALYZE
+        return exact != null ? exact : 0;
+    }
+
+    private long rowsAtBuild() {
+        List<Long> rows = jdbc.queryForList("SELECT rows_at_build FROM vector_index_state WHERE index_name = ?", Long.class, INDEX);
+        return rows.isEmpty() ? 0 : rows.get(0);
+    }
+
+    private boolean migrationInProgress() {
+        Boolean busy = jdbc.queryForObject("SELECT EXISTS (SELECT 1 FROM embedding_migration)", Boolean.class);
+        return Boolean.TRUE.equals(busy);
+    }
+
+    private static boolean tryLock(Statement st) throws SQLException {
+        try (ResultSet rs = st.executeQuery("SELECT pg_try_advisory_lock(" + LOCK_KEY + ")")) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
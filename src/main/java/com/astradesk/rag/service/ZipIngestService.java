@@ -1,7 +1,8 @@
 // src/main/java/com/astradesk/rag/service/ZipIngestService.java
 package com.astradesk.rag.service;
 
-import com.astradesk.rag.config.S3StorageService;
+import com.astradesk.rag.config.BackgroundInitializer;
+import com.astradesk.rag.config.S3AsyncStorageService;
 import com.astradesk.rag.model.ProgressEvent;
 import com.astradesk.rag.repo.ChunkJdbcRepository;
 import com.astradesk.rag.repo.DocumentJdbcRepository;
@@ -14,35 +15,97 @@ import org.apache.pdfbox.Loader;
 import org.jsoup.Jsoup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 @Service
+@Lazy(false)
 public class ZipIngestService {
     private static final Logger log = LoggerFactory.getLogger(ZipIngestService.class);
+    private static final Set<String> SUPPORTED = Set.of("pdf", "md", "markdown", "html", "htm", "txt");
     
     private final DocumentJdbcRepository docs;
     private final ChunkJdbcRepository chunks;
-    private final Embeddings embeddings;
-    private final S3StorageService s3;
+    private final EmbeddingMigrationService migration;
+    private final S3AsyncStorageService s3;
+    private final int progressBuffer;
+    private final Duration progressCoalesce;
+    private final Duration progressEmitTimeout;
+    private final IngestProgress.OnDisconnect defaultOnDisconnect;
+    private final ApplicationEventPublisher events;
+    private final ClusterIngestService cluster;
+    private final boolean clusterMode;
+    private final ChunkDeduplicator dedup;
+    private final IngestScheduler scheduler;
 
-    private final LanguageDetector detector = LanguageDetectorBuilder.fromAllLanguages().build();
+    /** Detektor wszystkich języków jest ciężki - budujemy go w tle, pierwszy ingest najwyżej poczeka. */
+    private final CompletableFuture<LanguageDetector> detector;
 
-    public ZipIngestService(DocumentJdbcRepository docs, ChunkJdbcRepository chunks, Embeddings embeddings, S3StorageService s3) {
-        this.docs = docs; this.chunks = chunks; this.embeddings = embeddings; this.s3 = s3;
+    public ZipIngestService(DocumentJdbcRepository docs, ChunkJdbcRepository chunks, EmbeddingMigrationService migration, S3AsyncStorageService s3,
+                            BackgroundInitializer init, ApplicationEventPublisher events, ClusterIngestService cluster,
+                            ChunkDeduplicator dedup, IngestScheduler scheduler,
+                            @Value("${rag.ingest.mode:local}") String mode,
+                            @Value("${rag.ingest.progress.buffer:256}") int progressBuffer,
+                            @Value("${rag.ingest.progress.coalesce:500ms}") Duration progressCoalesce,
+                            @Value("${rag.ingest.progress.emit-timeout:30s}") Duration progressEmitTimeout,
+                            @Value("${rag.ingest.on-disconnect:cancel}") String onDisconnect) {
+        this.docs = docs; this.chunks = chunks; this.migration = migration; this.s3 = s3;
+        this.progressBuffer = progressBuffer;
+        this.progressCoalesce = progressCoalesce;
+        this.progressEmitTimeout = progressEmitTimeout;
+        this.defaultOnDisconnect = IngestProgress.OnDisconnect.parse(onDisconnect);
+        this.events = events;
+        this.cluster = cluster;
+        this.dedup = dedup;
+        this.scheduler = scheduler;
+        if (!mode.equals("local") && !mode.equals("cluster")) {
+            throw new IllegalArgumentException("rag.ingest.mode must be local or cluster, was: " + mode);
+        }
+        this.clusterMode = mode.equals("cluster");
+        // krytyczne: readiness czeka na detektor, żeby pierwszy ingest nie budował go na ścieżce żądania
+        this.detector = init.submit("language-detector", true, () -> LanguageDetectorBuilder.fromAllLanguages().build());
     }
 
     public Flux<ProgressEvent> ingestZipAsStream(MultipartFile zip, String collection, int maxLen, int overlap) {
-        Sinks.Many<ProgressEvent> sink = Sinks.many().unicast().onBackpressureBuffer();
-        new Thread(() -> {
+        return ingestZipAsStream(zip, collection, maxLen, overlap, defaultOnDisconnect);
+    }
+
+    public Flux<ProgressEvent> ingestZipAsStream(MultipartFile zip, String collection, int maxLen, int overlap,
+                                                 IngestProgress.OnDisconnect onDisconnect) {
+        return ingestZipAsStream(zip, zip.getOriginalFilename(), collection, maxLen, overlap, onDisconnect, done -> {});
+    }
+
+    /**
+     * Ingest archiwum z dowolnego źródła (multipart, złożony plik uploadu wznawialnego).
+     * Źródło jest czytane dwa razy (liczenie wpisów, przetwarzanie); {@code onFinished} woła wątek roboczy
+     * na samym końcu, także po anulowaniu i błędzie. Argument: true, gdy źródło nie jest już potrzebne
+     * (ingest zakończony DONE; w trybie cluster - archiwum w S3), false po błędzie i anulowaniu,
+     * np. żeby plik uploadu został do ponowienia.
+     * W trybie cluster archiwum trafia do kolejki ingest_work_items (patrz {@link ClusterIngestService}).
+     */
+    public Flux<ProgressEvent> ingestZipAsStream(InputStreamSource zip, String filename, String collection, int maxLen, int overlap,
+                                                 IngestProgress.OnDisconnect onDisconnect, Consumer<Boolean> onFinished) {
+        if (clusterMode) return cluster.submit(zip, filename, collection, maxLen, overlap, onDisconnect, onFinished);
+        IngestProgress progress = new IngestProgress(progressBuffer, progressCoalesce, progressEmitTimeout, onDisconnect);
+        AtomicLong inserted = new AtomicLong();
+        Thread worker = new Thread(() -> {
+            boolean done = false;
             int total = 0;
             try (InputStream is = zip.getInputStream(); ZipInputStream zis = new ZipInputStream(is)) {
                 ZipEntry e;
@@ -56,57 +119,147 @@ public class ZipIngestService {
                 ZipEntry entry; int processed = 0;
                 while ((entry = zis.getNextEntry()) != null) {
                     if (entry.isDirectory()) continue;
+                    checkCancelled(progress);
                     String name = entry.getName();
-                    sink.tryEmitNext(new ProgressEvent("RECEIVED", name, null, processed, null, "processing"));
+                    progress.progress(new ProgressEvent("RECEIVED", name, null, processed, null, "processing"));
                     ByteArrayOutputStream baos = new ByteArrayOutputStream();
                     zis.transferTo(baos);
                     byte[] data = baos.toByteArray();
 
                     String ext = extOf(name);
-                    if (!List.of("pdf","md","markdown","html","htm","txt").contains(ext)) {
-                        sink.tryEmitNext(new ProgressEvent("SKIPPED", name, null, ++processed, null, "unsupported extension"));
+                    if (!isSupported(name)) {
+                        progress.emit(new ProgressEvent("SKIPPED", name, null, ++processed, null, "unsupported extension"));
                         continue;
                     }
 
-                    // Сохраняем оригинал в S3
-                    String key = collection + "/raw/" + name;
-                    s3.put(key, new ByteArrayInputStream(data), data.length, contentTypeFor(ext));
-
-                    String language = null; long docId = docs.insertDoc(name, language);
-                    if (ext.equals("pdf")) {
-                        try (PDDocument document = Loader.loadPDF(data)) {
-                            int pages = document.getNumberOfPages();
-                            PDFTextStripper stripper = new PDFTextStripper();
-                            for (int p=1; p<=pages; p++) {
-                                stripper.setStartPage(p); stripper.setEndPage(p);
-                                String pageText = stripper.getText(document);
-                                if (language == null || language.isBlank()) language = detect(pageText);
-                                for (var part : Chunker.split(pageText, maxLen, overlap)) {
-                                    float[] v = embeddings.embed(part);
-                                    chunks.insertChunk(docId, p, p, p, key, part, v);
-                                }
-                                sink.tryEmitNext(new ProgressEvent("INDEXED", name, p, p, pages, "ok"));
+                    // Сохраняем оригинал в S3 асинхронно; ждём только при фиксации документа
+                    String key = rawKey(collection, name);
+                    CompletableFuture<String> upload = s3.putIfChanged(key, data, contentTypeFor(ext));
+
+                    // miejsce przydziela IngestScheduler - duże archiwa nie zagłodzą innych kolekcji
+                    long docId;
+                    try (IngestScheduler.Permit permit = scheduler.acquire(collection, data.length, () -> checkCancelled(progress))) {
+                        docId = docs.insertIngestingDoc(name, collection);
+                        try {
+                            inserted.addAndGet(indexDocument(docId, collection, name, data, key, maxLen, overlap,
+                                    () -> checkCancelled(progress),
+                                    (p, pages) -> {
+                                        if (p == null) return;
+                                        ProgressEvent ev = new ProgressEvent("INDEXED", name, p, p, pages, "ok");
+                                        if (p < pages) progress.progress(ev); else progress.emit(ev);
+                                    }));
+                        } catch (Exception e) {
+                            // anulowanie albo błąd providera/bazy: bez połowicznych dokumentów (docs.ingesting na zawsze)
+                            try {
+                                discardDocument(docId);
+                            } catch (RuntimeException cleanup) {
+                                e.addSuppressed(cleanup); // np. baza nadal niedostępna - zostaje pierwotny błąd
                             }
+                            throw e;
                         }
-                    } else {
-                        String text = readTextByExt(ext, data);
-                        language = detect(text);
-                        int idx=0;
-                        for (var part : Chunker.split(text, maxLen, overlap)) {
-                            float[] v = embeddings.embed(part);
-                            chunks.insertChunk(docId, idx++, null, null, key, part, v);
-                        }
-                        sink.tryEmitNext(new ProgressEvent("INDEXED", name, null, ++processed, null, "ok"));
                     }
+                    try {
+                        upload.join();
+                    } catch (RuntimeException e) {
+                        discardDocument(docId); // source_key chunków wskazywałby na brakujący oryginał
+                        throw e;
+                    }
+                    completeDocument(docId);
+                    if (!ext.equals("pdf")) progress.emit(new ProgressEvent("INDEXED", name, null, ++processed, null, "ok"));
                 }
-                sink.tryEmitNext(new ProgressEvent("DONE", zip.getOriginalFilename(), null, null, null, "finished"));
-                sink.tryEmitComplete();
+                if (progress.isDetached()) log.info("Detached ingest of {} finished ({} files)", filename, total);
+                progress.complete(new ProgressEvent("DONE", filename, null, null, null, "finished"));
+                done = true;
+            } catch (CancellationException ex) {
+                log.info("Ingest of {} cancelled: client disconnected", filename);
             } catch (Exception ex) {
-                sink.tryEmitNext(new ProgressEvent("ERROR", zip.getOriginalFilename(), null, null, null, ex.getMessage()));
-                sink.tryEmitComplete();
+                progress.complete(new ProgressEvent("ERROR", filename, null, null, null, ex.getMessage()));
+            } finally {
+                if (inserted.get() > 0) events.publishEvent(new IngestCompletedEvent(collection, inserted.get()));
+                onFinished.accept(done);
             }
-        }).start();
-        return sink.asFlux();
+        }, "zip-ingest");
+        worker.start();
+        return progress.asFlux();
+    }
+
+    private static void checkCancelled(IngestProgress progress) {
+        if (progress.isCancelled()) throw new CancellationException("client disconnected");
+    }
+
+    /** Postęp indeksowania: po każdej stronie PDF; dla plików tekstowych raz, z {@code page == null}. */
+    public interface PageListener {
+        void onPage(Integer page, Integer pages);
+    }
+
+    /**
+     * Dzieli, wektoryzuje i zapisuje jeden dokument (wiersz w docs już istnieje); zwraca liczbę zapisanych chunków
+     * (bez pominiętych prawie-duplikatów, patrz {@link ChunkDeduplicator}).
+     * {@code checkpoint} jest wołany przed każdą stroną i chunkiem - może przerwać pracę wyjątkiem.
+     * Wspólne dla ingestu lokalnego i workerów kolejki klastrowej.
+     */
+    public long indexDocument(long docId, String collection, String name, byte[] data, String key, int maxLen, int overlap,
+                              Runnable checkpoint, PageListener onPage) throws IOException {
+        String ext = extOf(name);
+        String language = null;
+        long count = 0;
+        if (ext.equals("pdf")) {
+            try (PDDocument document = Loader.loadPDF(data)) {
+                int pages = document.getNumberOfPages();
+                PDFTextStripper stripper = new PDFTextStripper();
+                for (int p=1; p<=pages; p++) {
+                    checkpoint.run();
+                    stripper.setStartPage(p); stripper.setEndPage(p);
+                    String pageText = stripper.getText(document);
+                    if (language == null || language.isBlank()) language = detect(pageText);
+                    for (var part : Chunker.split(pageText, maxLen, overlap)) {
+                        if (storeChunk(collection, docId, p, p, p, key, part)) count++;
+                    }
+                    onPage.onPage(p, pages);
+                }
+            }
+        } else {
+            String text = readTextByExt(ext, data);
+            language = detect(text);
+            int idx=0;
+            for (var part : Chunker.split(text, maxLen, overlap)) {
+                checkpoint.run();
+                if (storeChunk(collection, docId, idx++, null, null, key, part)) count++;
+            }
+            onPage.onPage(null, null);
+        }
+        return count;
+    }
+
+    /** Dokument zaindeksowany w całości: od teraz jego chunki mogą być kanoniczne dla deduplikacji. */
+    public void completeDocument(long docId) {
+        docs.markIndexed(docId);
+        dedup.publish(docId);
+    }
+
+    /** Usuwa połowicznie zaindeksowany dokument razem z jego odciskami w indeksie deduplikacji. */
+    public void discardDocument(long docId) {
+        dedup.discard(docId);
+        docs.deleteDoc(docId);
+    }
+
+    /** Wektoryzuje i zapisuje chunk, chyba że jest prawie-duplikatem już zapisanego; true = zapisany. */
+    private boolean storeChunk(String collection, long docId, int idx, Integer pFrom, Integer pTo, String key, String part) {
+        ChunkDeduplicator.Decision d = dedup.check(collection, docId, part);
+        if (d.duplicate() && dedup.recordDuplicate(collection, d, docId, idx, pFrom, pTo, key)) return false;
+        long id = migration.fenced(true, model -> model.embed(part),
+                v -> chunks.insertChunk(docId, idx, pFrom, pTo, key, part, v, d.simhash()));
+        dedup.add(collection, docId, d, id);
+        return true;
+    }
+
+    static boolean isSupported(String name) {
+        return SUPPORTED.contains(extOf(name));
+    }
+
+    /** Klucz oryginału w S3 - zarazem miejsce stagingu dla ingestu klastrowego. */
+    static String rawKey(String collection, String name) {
+        return collection + "/raw/" + name;
     }
 
     private static String readTextByExt(String ext, byte[] data) throws IOException {
@@ -117,12 +270,12 @@ public class ZipIngestService {
         };
     }
 
-    private static String extOf(String name) {
+    static String extOf(String name) {
         int i = name.lastIndexOf('.');
         return i>=0 ? name.substring(i+1).toLowerCase(Locale.ROOT) : "";
     }
 
-    private static String contentTypeFor(String ext) {
+    static String contentTypeFor(String ext) {
         return switch (ext) {
             case "pdf" -> "application/pdf";
             case "md", "markdown" -> "text/markdown";
@@ -134,7 +287,7 @@ public class ZipIngestService {
 
     private String detect(String text) {
         if (text == null || text.isBlank()) return null;
-        Language lang = detector.detectLanguageOf(text);
+        Language lang = detector.join().detectLanguageOf(text);
         return lang != null ? lang.name() : null;
     }
 }
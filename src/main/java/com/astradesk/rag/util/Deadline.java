@@ -0,0 +1,68 @@
+// src/main/java/com/astradesk/rag/util/Deadline.java
+package com.astradesk.rag.util;
+
+import java.time.Duration;
+
+/**
+ * Termin końcowy żądania na zegarze monotonicznym, przekazywany od kontrolera do każdego wywołania w dół
+ * (provider embeddingów i czatu, zapytania SQL). {@link #none()} = bez limitu (ingest, zadania w tle).
+ */
+public final class Deadline {
+    /** Atrybut żądania, pod którym RequestDeadlineFilter zostawia termin dla kontrolerów. */
+    public static final String ATTRIBUTE = "rag.deadline";
+
+    private static final Deadline NONE = new Deadline(0L);
+
+    private final long deadlineNanos; // System.nanoTime()
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public static Deadline after(Duration timeout) {
+        return new Deadline(System.nanoTime() + timeout.toNanos());
+    }
+
+    public static Deadline none() {
+        return NONE;
+    }
+
+    public boolean isBounded() {
+        return this != NONE;
+    }
+
+    public long remainingNanos() {
+        if (!isBounded()) return Long.MAX_VALUE;
+        return Math.max(0L, deadlineNanos - System.nanoTime());
+    }
+
+    public Duration remaining() {
+        return isBounded() ? Duration.ofNanos(remainingNanos()) : Duration.ofNanos(Long.MAX_VALUE);
+    }
+
+    public boolean isExpired() {
+        return isBounded() && deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /** Rzuca {@link DeadlineExceededException}, jeśli termin już minął - przed rozpoczęciem kolejnego etapu. */
+    public void check(String stage) {
+        if (isExpired()) throw new DeadlineExceededException(stage);
+    }
+
+    /**
+     * Limit dla Statement.setQueryTimeout: JDBC liczy w pełnych sekundach, więc zaokrąglamy w górę
+     * (co najmniej 1); 0 = bez limitu.
+     */
+    public int statementTimeoutSeconds(String stage) {
+        if (!isBounded()) return 0;
+        check(stage);
+        long nanos = remainingNanos();
+        long seconds = (nanos + 999_999_999L) / 1_000_000_000L;
+        return (int) Math.max(1L, Math.min(Integer.MAX_VALUE, seconds));
+    }
+
+    @Override
+    public String toString() {
+        return isBounded() ? "Deadline[remaining=" + remaining().toMillis() + "ms]" : "Deadline[none]";
+    }
+}
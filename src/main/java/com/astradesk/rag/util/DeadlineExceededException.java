@@ -0,0 +1,20 @@
+// src/main/java/com/astradesk/rag/util/DeadlineExceededException.java
+package com.astradesk.rag.util;
+
+/** Termin żądania minął na danym etapie (embed, search, chat...); mapowany na 504. */
+public class DeadlineExceededException extends RuntimeException {
+    private final String stage;
+
+    public DeadlineExceededException(String stage) {
+        this(stage, null);
+    }
+
+    public DeadlineExceededException(String stage, Throwable cause) {
+        super("Request deadline exceeded during " + stage, cause);
+        this.stage = stage;
+    }
+
+    public String stage() {
+        return stage;
+    }
+}
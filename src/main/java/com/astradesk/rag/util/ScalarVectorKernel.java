@@ -0,0 +1,52 @@
+// src/main/java/com/astradesk/rag/util/ScalarVectorKernel.java
+package com.astradesk.rag.util;
+
+/** Referencyjne pętle skalarne; fallback, gdy moduł jdk.incubator.vector nie jest dostępny. */
+final class ScalarVectorKernel implements VectorKernel {
+
+    @Override
+    public float dot(float[] a, int aOff, float[] b, int bOff, int len) {
+        float s = 0f;
+        for (int i = 0; i < len; i++) s += a[aOff + i] * b[bOff + i];
+        return s;
+    }
+
+    @Override
+    public void dotAndNorms(float[] a, int aOff, float[] b, int bOff, int len, float[] out) {
+        float d = 0f, na = 0f, nb = 0f;
+        for (int i = 0; i < len; i++) {
+            float x = a[aOff + i], y = b[bOff + i];
+            d += x * y; na += x * x; nb += y * y;
+        }
+        out[0] = d; out[1] = na; out[2] = nb;
+    }
+
+    @Override
+    public float l2Squared(float[] a, int aOff, float[] b, int bOff, int len) {
+        float s = 0f;
+        for (int i = 0; i < len; i++) {
+            float d = a[aOff + i] - b[bOff + i];
+            s += d * d;
+        }
+        return s;
+    }
+
+    @Override
+    public void scale(float[] v, float factor) {
+        for (int i = 0; i < v.length; i++) v[i] *= factor;
+    }
+
+    @Override
+    public int dotInt8(byte[] a, byte[] b, int len) {
+        int s = 0;
+        for (int i = 0; i < len; i++) s += a[i] * b[i];
+        return s;
+    }
+
+    @Override
+    public long hamming(long[] a, long[] b, int len) {
+        long s = 0;
+        for (int i = 0; i < len; i++) s += Long.bitCount(a[i] ^ b[i]);
+        return s;
+    }
+}
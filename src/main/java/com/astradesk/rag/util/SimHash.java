@@ -0,0 +1,84 @@
+// src/main/java/com/astradesk/rag/util/SimHash.java
+package com.astradesk.rag.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 64-bitowy SimHash (Charikar) tekstu: cechy to 3-gramy słów po normalizacji (małe litery,
+ * każdy ciąg cyfr zamieniony na 0 - numery stron w stopkach nie psują dopasowania). Teksty prawie identyczne
+ * mają skróty różniące się na kilku bitach; porównanie przez {@link #distance}.
+ */
+public final class SimHash {
+    public static final int BITS = 64;
+    private static final int SHINGLE = 3;
+
+    private SimHash() {}
+
+    public static long of(String text) {
+        return of(tokens(text));
+    }
+
+    public static long of(List<String> tokens) {
+        int[] weights = new int[BITS];
+        int n = tokens.size() < SHINGLE ? Math.min(1, tokens.size()) : tokens.size() - SHINGLE + 1;
+        for (int i = 0; i < n; i++) {
+            int end = Math.min(tokens.size(), i + SHINGLE);
+            long h = hash(String.join(" ", tokens.subList(i, end)));
+            for (int b = 0; b < BITS; b++) {
+                weights[b] += ((h >>> b) & 1L) != 0 ? 1 : -1;
+            }
+        }
+        long out = 0L;
+        for (int b = 0; b < BITS; b++) {
+            if (weights[b] > 0) out |= 1L << b;
+        }
+        return out;
+    }
+
+    /** Liczba różniących się bitów (odległość Hamminga). */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /** Słowa znormalizowane: litery i cyfry, małe litery, ciąg cyfr jako 0. */
+    public static List<String> tokens(String text) {
+        List<String> out = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean digits = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isDigit(c)) {
+                if (!digits) cur.append('0'); // ciąg cyfr = jedno 0, niezależnie od długości numeru
+                digits = true;
+            } else if (Character.isLetter(c)) {
+                cur.append(c);
+                digits = false;
+            } else {
+                digits = false;
+                if (!cur.isEmpty()) {
+                    out.add(cur.toString().toLowerCase(Locale.ROOT));
+                    cur.setLength(0);
+                }
+            }
+        }
+        if (!cur.isEmpty()) out.add(cur.toString().toLowerCase(Locale.ROOT));
+        return out;
+    }
+
+    /** FNV-1a 64 z końcowym mieszaniem (fmix64), żeby każdy bit zależał od całego wejścia. */
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
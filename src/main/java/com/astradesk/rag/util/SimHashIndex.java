@@ -0,0 +1,85 @@
+// src/main/java/com/astradesk/rag/util/SimHashIndex.java
+package com.astradesk.rag.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Indeks skrótów SimHash do wyszukiwania sąsiadów w odległości Hamminga {@code <= maxDistance}.
+ * 64 bity są dzielone na {@code maxDistance + 1} pasm (LSH); z zasady szufladkowej para w tej odległości
+ * ma co najmniej jedno identyczne pasmo, więc kandydaci z kubełków pasm dają wynik dokładny.
+ * Nie jest thread-safe.
+ */
+public final class SimHashIndex {
+    public record Match(long id, int distance) {}
+
+    private record Entry(long hash, long id) {}
+
+    private final int maxDistance;
+    private final int[] shifts;
+    private final long[] masks;
+    private final List<Map<Long, List<Entry>>> bands;
+    private int size;
+
+    public SimHashIndex(int maxDistance) {
+        if (maxDistance < 0 || maxDistance > 15) {
+            throw new IllegalArgumentException("maxDistance must be in [0, 15]: " + maxDistance);
+        }
+        this.maxDistance = maxDistance;
+        int n = maxDistance + 1;
+        this.shifts = new int[n];
+        this.masks = new long[n];
+        this.bands = new ArrayList<>(n);
+        int shift = 0;
+        for (int b = 0; b < n; b++) {
+            int width = SimHash.BITS / n + (b < SimHash.BITS % n ? 1 : 0);
+            shifts[b] = shift;
+            masks[b] = width == 64 ? -1L : (1L << width) - 1;
+            shift += width;
+            bands.add(new HashMap<>());
+        }
+    }
+
+    public void add(long hash, long id) {
+        Entry e = new Entry(hash, id);
+        for (int b = 0; b < bands.size(); b++) {
+            bands.get(b).computeIfAbsent(band(hash, b), k -> new ArrayList<>(1)).add(e);
+        }
+        size++;
+    }
+
+    /** Najbliższy zapisany skrót (przy remisie najstarszy id) albo null. */
+    public Match nearest(long hash) {
+        Match best = null;
+        for (int b = 0; b < bands.size(); b++) {
+            List<Entry> bucket = bands.get(b).get(band(hash, b));
+            if (bucket == null) continue;
+            for (Entry e : bucket) {
+                int d = SimHash.distance(hash, e.hash());
+                if (d > maxDistance) continue;
+                if (best == null || d < best.distance() || (d == best.distance() && e.id() < best.id())) {
+                    best = new Match(e.id(), d);
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Wszystkie wpisy jako (skrót, id); każdy wpis leży dokładnie w jednym kubełku pierwszego pasma. */
+    public void forEach(BiConsumer<Long, Long> consumer) {
+        for (List<Entry> bucket : bands.get(0).values()) {
+            for (Entry e : bucket) consumer.accept(e.hash(), e.id());
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private long band(long hash, int b) {
+        return (hash >>> shifts[b]) & masks[b];
+    }
+}
@@ -0,0 +1,112 @@
+// src/main/java/com/astradesk/rag/util/SimdVectorKernel.java
+package com.astradesk.rag.util;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Implementacja na JDK Vector API (jdk.incubator.vector) z preferowaną szerokością rejestrów
+ * (AVX2: 8 floatów, AVX-512: 16). Ogony tablic liczone skalarnie.
+ * Ładowana wyłącznie przez {@link VectorMath}, gdy moduł jest obecny w runtime.
+ */
+final class SimdVectorKernel implements VectorKernel {
+    private static final VectorSpecies<Float> F = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> I = IntVector.SPECIES_PREFERRED;
+    /** Ten sam kształt co I, więc 4x więcej linii; B2I rozszerza go w 4 częściach. */
+    private static final VectorSpecies<Byte> B = VectorSpecies.of(byte.class, I.vectorShape());
+    private static final VectorSpecies<Long> L = LongVector.SPECIES_PREFERRED;
+
+    @Override
+    public float dot(float[] a, int aOff, float[] b, int bOff, int len) {
+        FloatVector acc = FloatVector.zero(F);
+        int i = 0;
+        for (int upper = F.loopBound(len); i < upper; i += F.length()) {
+            acc = FloatVector.fromArray(F, a, aOff + i).fma(FloatVector.fromArray(F, b, bOff + i), acc);
+        }
+        float s = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < len; i++) s += a[aOff + i] * b[bOff + i];
+        return s;
+    }
+
+    @Override
+    public void dotAndNorms(float[] a, int aOff, float[] b, int bOff, int len, float[] out) {
+        FloatVector d = FloatVector.zero(F), na = FloatVector.zero(F), nb = FloatVector.zero(F);
+        int i = 0;
+        for (int upper = F.loopBound(len); i < upper; i += F.length()) {
+            FloatVector x = FloatVector.fromArray(F, a, aOff + i);
+            FloatVector y = FloatVector.fromArray(F, b, bOff + i);
+            d = x.fma(y, d);
+            na = x.fma(x, na);
+            nb = y.fma(y, nb);
+        }
+        float sd = d.reduceLanes(VectorOperators.ADD);
+        float sa = na.reduceLanes(VectorOperators.ADD);
+        float sb = nb.reduceLanes(VectorOperators.ADD);
+        for (; i < len; i++) {
+            float x = a[aOff + i], y = b[bOff + i];
+            sd += x * y; sa += x * x; sb += y * y;
+        }
+        out[0] = sd; out[1] = sa; out[2] = sb;
+    }
+
+    @Override
+    public float l2Squared(float[] a, int aOff, float[] b, int bOff, int len) {
+        FloatVector acc = FloatVector.zero(F);
+        int i = 0;
+        for (int upper = F.loopBound(len); i < upper; i += F.length()) {
+            FloatVector diff = FloatVector.fromArray(F, a, aOff + i).sub(FloatVector.fromArray(F, b, bOff + i));
+            acc = diff.fma(diff, acc);
+        }
+        float s = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < len; i++) {
+            float diff = a[aOff + i] - b[bOff + i];
+            s += diff * diff;
+        }
+        return s;
+    }
+
+    @Override
+    public void scale(float[] v, float factor) {
+        int i = 0;
+        for (int upper = F.loopBound(v.length); i < upper; i += F.length()) {
+            FloatVector.fromArray(F, v, i).mul(factor).intoArray(v, i);
+        }
+        for (; i < v.length; i++) v[i] *= factor;
+    }
+
+    @Override
+    public int dotInt8(byte[] a, byte[] b, int len) {
+        IntVector acc = IntVector.zero(I);
+        int i = 0;
+        for (int upper = B.loopBound(len); i < upper; i += B.length()) {
+            ByteVector va = ByteVector.fromArray(B, a, i);
+            ByteVector vb = ByteVector.fromArray(B, b, i);
+            for (int part = 0; part < 4; part++) {
+                IntVector x = (IntVector) va.convertShape(VectorOperators.B2I, I, part);
+                IntVector y = (IntVector) vb.convertShape(VectorOperators.B2I, I, part);
+                acc = acc.add(x.mul(y));
+            }
+        }
+        int s = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < len; i++) s += a[i] * b[i];
+        return s;
+    }
+
+    @Override
+    public long hamming(long[] a, long[] b, int len) {
+        LongVector acc = LongVector.zero(L);
+        int i = 0;
+        for (int upper = L.loopBound(len); i < upper; i += L.length()) {
+            acc = acc.add(LongVector.fromArray(L, a, i)
+                    .lanewise(VectorOperators.XOR, LongVector.fromArray(L, b, i))
+                    .lanewise(VectorOperators.BIT_COUNT));
+        }
+        long s = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < len; i++) s += Long.bitCount(a[i] ^ b[i]);
+        return s;
+    }
+}
@@ -0,0 +1,18 @@
+// src/main/java/com/astradesk/rag/util/VectorKernel.java
+package com.astradesk.rag.util;
+
+/** Prymitywy liczone przez {@link VectorMath}; implementacja SIMD albo skalarna. */
+interface VectorKernel {
+    float dot(float[] a, int aOff, float[] b, int bOff, int len);
+
+    /** Zwraca {dot(a,b), |a|^2, |b|^2} w jednym przebiegu. */
+    void dotAndNorms(float[] a, int aOff, float[] b, int bOff, int len, float[] out);
+
+    float l2Squared(float[] a, int aOff, float[] b, int bOff, int len);
+
+    void scale(float[] v, float factor);
+
+    int dotInt8(byte[] a, byte[] b, int len);
+
+    long hamming(long[] a, long[] b, int len);
+}
@@ -0,0 +1,162 @@
+// src/main/java/com/astradesk/rag/util/VectorMath.java
+package com.astradesk.rag.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.PriorityQueue;
+
+/**
+ * Wspólne prymitywy podobieństwa wektorów (re-ranking, cache, deduplikacja, fake embeddings).
+ * Używa JDK Vector API, gdy JVM wystartowała z {@code --add-modules jdk.incubator.vector};
+ * w przeciwnym razie (albo przy {@code -Drag.simd=false}) pętli skalarnych.
+ */
+public final class VectorMath {
+    private static final Logger log = LoggerFactory.getLogger(VectorMath.class);
+    private static final VectorKernel KERNEL = selectKernel();
+
+    private VectorMath() {}
+
+    public enum Metric {
+        /** Iloczyn skalarny; dla wektorów znormalizowanych równy cosinusowi. */
+        DOT,
+        COSINE,
+        /** Wynik to ujemny kwadrat odległości euklidesowej (większy = bliżej). */
+        L2
+    }
+
+    /** Wynik top-k: indeksy wektorów w bloku i ich wyniki, malejąco. */
+    public record TopK(int[] indices, float[] scores) {}
+
+    public static boolean simdEnabled() {
+        return KERNEL instanceof SimdVectorKernel;
+    }
+
+    public static float dot(float[] a, float[] b) {
+        checkLength(a.length, b.length);
+        return KERNEL.dot(a, 0, b, 0, a.length);
+    }
+
+    public static float cosine(float[] a, float[] b) {
+        checkLength(a.length, b.length);
+        float[] t = new float[3];
+        KERNEL.dotAndNorms(a, 0, b, 0, a.length, t);
+        return cosine(t);
+    }
+
+    public static float l2(float[] a, float[] b) {
+        return (float) Math.sqrt(l2Squared(a, b));
+    }
+
+    public static float l2Squared(float[] a, float[] b) {
+        checkLength(a.length, b.length);
+        return KERNEL.l2Squared(a, 0, b, 0, a.length);
+    }
+
+    /** Normalizuje wektor w miejscu do długości 1 (wektor zerowy zostaje bez zmian). */
+    public static float[] normalize(float[] v) {
+        float norm = (float) Math.sqrt(KERNEL.dot(v, 0, v, 0, v.length));
+        if (norm > 0f) KERNEL.scale(v, 1f / norm);
+        return v;
+    }
+
+    /**
+     * Top-k w ciągłym bloku {@code n = block.length / dim} wektorów ułożonych jeden za drugim.
+     */
+    public static TopK topK(float[] query, float[] block, int dim, int k, Metric metric) {
+        checkLength(query.length, dim);
+        if (block.length % dim != 0) {
+            throw new IllegalArgumentException("Block length " + block.length + " is not a multiple of dim " + dim);
+        }
+        int n = block.length / dim;
+        int size = Math.min(k, n);
+        // min-heap po wyniku: korzeń to najsłabszy z aktualnych k
+        PriorityQueue<long[]> heap = new PriorityQueue<>(Math.max(1, size),
+                (x, y) -> Float.compare(Float.intBitsToFloat((int) x[1]), Float.intBitsToFloat((int) y[1])));
+        float[] t = new float[3];
+        for (int i = 0; i < n && size > 0; i++) {
+            float score = score(query, block, i * dim, dim, metric, t);
+            if (heap.size() < size) {
+                heap.add(new long[]{i, Float.floatToRawIntBits(score)});
+            } else if (score > Float.intBitsToFloat((int) heap.peek()[1])) {
+                long[] slot = heap.poll();
+                slot[0] = i;
+                slot[1] = Float.floatToRawIntBits(score);
+                heap.add(slot);
+            }
+        }
+        int[] idx = new int[heap.size()];
+        float[] scores = new float[heap.size()];
+        for (int j = idx.length - 1; j >= 0; j--) {
+            long[] e = heap.poll();
+            idx[j] = (int) e[0];
+            scores[j] = Float.intBitsToFloat((int) e[1]);
+        }
+        return new TopK(idx, scores);
+    }
+
+    /** Iloczyn skalarny wektorów skwantyzowanych do int8. */
+    public static int dotInt8(byte[] a, byte[] b) {
+        checkLength(a.length, b.length);
+        return KERNEL.dotInt8(a, b, a.length);
+    }
+
+    /** Symetryczna kwantyzacja int8: {@code round(x / maxAbs * 127)}. */
+    public static byte[] quantizeInt8(float[] v) {
+        float max = 0f;
+        for (float x : v) max = Math.max(max, Math.abs(x));
+        byte[] out = new byte[v.length];
+        if (max == 0f) return out;
+        float s = 127f / max;
+        for (int i = 0; i < v.length; i++) out[i] = (byte) Math.round(v[i] * s);
+        return out;
+    }
+
+    /** Odległość Hamminga między wektorami binarnymi upakowanymi w long[]. */
+    public static long hamming(long[] a, long[] b) {
+        checkLength(a.length, b.length);
+        return KERNEL.hamming(a, b, a.length);
+    }
+
+    /** Kwantyzacja binarna: bit i = 1, gdy v[i] > 0. */
+    public static long[] binarize(float[] v) {
+        long[] out = new long[(v.length + 63) >>> 6];
+        for (int i = 0; i < v.length; i++) {
+            if (v[i] > 0f) out[i >>> 6] |= 1L << (i & 63);
+        }
+        return out;
+    }
+
+    private static float score(float[] q, float[] block, int off, int dim, Metric metric, float[] t) {
+        return switch (metric) {
+            case DOT -> KERNEL.dot(q, 0, block, off, dim);
+            case COSINE -> {
+                KERNEL.dotAndNorms(q, 0, block, off, dim, t);
+                yield cosine(t);
+            }
+            case L2 -> -KERNEL.l2Squared(q, 0, block, off, dim);
+        };
+    }
+
+    private static float cosine(float[] dotAndNorms) {
+        float denom = (float) Math.sqrt((double) dotAndNorms[1] * dotAndNorms[2]);
+        return denom == 0f ? 0f : dotAndNorms[0] / denom;
+    }
+
+    private static void checkLength(int a, int b) {
+        if (a != b) throw new IllegalArgumentException("Vector length mismatch: " + a + " != " + b);
+    }
+
+    private static VectorKernel selectKernel() {
+        if (!Boolean.parseBoolean(System.getProperty("rag.simd", "true"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return new ScalarVectorKernel();
+        }
+        try {
+            return new SimdVectorKernel();
+        } catch (LinkageError e) {
+            log.warn("Vector API unavailable, using scalar kernel: {}", e.toString());
+            return new ScalarVectorKernel();
+        }
+    }
+}
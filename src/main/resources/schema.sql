@@ -16,10 +16,87 @@ CREATE TABLE IF NOT EXISTS chunks (
   page_to     INT,
   source_key  TEXT,                -- путь ключа в S3/MinIO
   content     TEXT NOT NULL,
-  embedding   VECTOR(1536) NOT NULL,
+  -- embedding VECTOR(rag.embedding-dim): dodawana przez EmbeddingSchemaInitializer
   created_at  TIMESTAMPTZ NOT NULL DEFAULT now()
 );
 
 CREATE INDEX IF NOT EXISTS idx_chunks_docid ON chunks(doc_id);
-CREATE INDEX IF NOT EXISTS idx_chunks_embedding
-  ON chunks USING ivfflat (embedding vector_cosine_ops) WITH (lists = 100);
\ No newline at end of file
+
+-- Deduplikacja prawie-duplikatów przy ingeście (ChunkDeduplicator)
+ALTER TABLE docs ADD COLUMN IF NOT EXISTS collection TEXT;
+ALTER TABLE chunks ADD COLUMN IF NOT EXISTS simhash BIGINT;   -- 64-bitowy SimHash treści
+ALTER TABLE docs ADD COLUMN IF NOT EXISTS ingesting BOOLEAN NOT NULL DEFAULT false; -- w trakcie ingestu: nie jest kanoniczny
+CREATE INDEX IF NOT EXISTS idx_docs_collection ON docs(collection);
+
+-- Wystąpienia pominiętych prawie-duplikatów (polityka link): gdzie jeszcze występuje treść chunka kanonicznego
+CREATE TABLE IF NOT EXISTS chunk_duplicates (
+  id           BIGSERIAL PRIMARY KEY,
+  doc_id       BIGINT NOT NULL REFERENCES docs(id) ON DELETE CASCADE,
+  chunk_index  INT NOT NULL,
+  page_from    INT,
+  page_to      INT,
+  source_key   TEXT,
+  canonical_id BIGINT NOT NULL REFERENCES chunks(id) ON DELETE CASCADE,
+  distance     INT NOT NULL,     -- odległość Hamminga skrótów
+  created_at   TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+CREATE INDEX IF NOT EXISTS idx_chunk_duplicates_canonical ON chunk_duplicates(canonical_id);
+CREATE INDEX IF NOT EXISTS idx_chunk_duplicates_docid ON chunk_duplicates(doc_id);
+
+-- Stan migracji modelu embeddingów (co najwyżej jeden wiersz, id = 1)
+CREATE TABLE IF NOT EXISTS embedding_migration (
+  id            INT PRIMARY KEY CHECK (id = 1),
+  source_model  TEXT NOT NULL,
+  target_model  TEXT NOT NULL,
+  target_dim    INT NOT NULL,
+  status        TEXT NOT NULL,     -- BACKFILLING | PAUSED | READY | CUTOVER
+  last_chunk_id BIGINT NOT NULL DEFAULT 0,
+  processed     BIGINT NOT NULL DEFAULT 0,
+  started_at    TIMESTAMPTZ NOT NULL DEFAULT now(),
+  updated_at    TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+-- Ostatnia przebudowa indeksu ANN (VectorIndexMaintainer)
+CREATE TABLE IF NOT EXISTS vector_index_state (
+  index_name    TEXT PRIMARY KEY,
+  method        TEXT NOT NULL,     -- ivfflat | hnsw
+  params        TEXT NOT NULL,     -- np. "lists = 1000"
+  rows_at_build BIGINT NOT NULL,
+  built_at      TIMESTAMPTZ NOT NULL
+);
+
+-- Ingest klastrowy (rag.ingest.mode=cluster): kolejka zadań, po jednym na plik archiwum
+CREATE TABLE IF NOT EXISTS ingest_jobs (
+  id          BIGSERIAL PRIMARY KEY,
+  collection  TEXT NOT NULL,
+  filename    TEXT,
+  status      TEXT NOT NULL DEFAULT 'RUNNING',   -- RUNNING | DONE | CANCELLED
+  total_items INT NOT NULL DEFAULT 0,
+  created_at  TIMESTAMPTZ NOT NULL DEFAULT now(),
+  finished_at TIMESTAMPTZ
+);
+
+CREATE TABLE IF NOT EXISTS ingest_work_items (
+  id          BIGSERIAL PRIMARY KEY,
+  job_id      BIGINT NOT NULL REFERENCES ingest_jobs(id) ON DELETE CASCADE,
+  collection  TEXT NOT NULL,
+  file_name   TEXT NOT NULL,
+  s3_key      TEXT NOT NULL,
+  max_len     INT NOT NULL,
+  overlap     INT NOT NULL,
+  status      TEXT NOT NULL DEFAULT 'PENDING',   -- PENDING | RUNNING | DONE | FAILED | CANCELLED
+  attempts    INT NOT NULL DEFAULT 0,
+  lease_owner TEXT,
+  lease_until TIMESTAMPTZ,
+  doc_id      BIGINT,                            -- dokument bieżącej próby (usuwany przy ponowieniu)
+  pages       INT,
+  pages_done  INT NOT NULL DEFAULT 0,
+  chunks      BIGINT,
+  error       TEXT,
+  updated_at  TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+CREATE INDEX IF NOT EXISTS idx_work_items_claimable ON ingest_work_items(id) WHERE status IN ('PENDING', 'RUNNING');
+CREATE INDEX IF NOT EXISTS idx_work_items_job ON ingest_work_items(job_id, updated_at);
+CREATE INDEX IF NOT EXISTS idx_work_items_collection ON ingest_work_items(collection, id) WHERE status IN ('PENDING', 'RUNNING');
@@ -0,0 +1,135 @@
+package com.astradesk.rag.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/** Routing odczytów: tylko błędy połączenia (SQLState 08) wyjmują replikę z rotacji. */
+class ReplicaRoutingDataSourceTest {
+
+    private final HikariDataSource primaryPool = mock(HikariDataSource.class);
+    private final HikariDataSource replicaPool = mock(HikariDataSource.class);
+    private final Connection primaryConn = mock(Connection.class);
+    private final Connection replicaConn = mock(Connection.class);
+    private final Statement lagStatement = mock(Statement.class);
+    private final ResultSet lagResult = mock(ResultSet.class);
+    private ReplicaRoutingDataSource ds;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        ReplicaRoutingDataSource.PoolFactory pools = mock(ReplicaRoutingDataSource.PoolFactory.class);
+        when(pools.create(eq("rag-read-primary"), anyString())).thenReturn(primaryPool);
+        when(pools.create(eq("rag-read-replica-0"), anyString())).thenReturn(replicaPool);
+        when(primaryPool.getConnection()).thenReturn(primaryConn);
+        when(replicaPool.getConnection()).thenReturn(replicaConn);
+        when(replicaConn.createStatement()).thenReturn(lagStatement);
+        when(lagStatement.executeQuery(anyString())).thenReturn(lagResult);
+        when(lagResult.next()).thenReturn(true);
+        when(lagResult.getDouble(1)).thenReturn(0.0);
+
+        // pierwszy pomiar lagu startuje od razu w tle; kolejny dopiero po godzinie, więc testy wołają checkLag() same
+        ds = new ReplicaRoutingDataSource(pools, "jdbc:postgresql://primary/rag", List.of("jdbc:postgresql://replica/rag"),
+                Duration.ofSeconds(5), Duration.ofHours(1));
+        awaitReplicaInRotation();
+    }
+
+    @AfterEach
+    void tearDown() {
+        ds.close();
+    }
+
+    private void awaitReplicaInRotation() throws SQLException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (ds.getConnection() != replicaConn) {
+            assertTrue(System.nanoTime() < deadline, "replica never entered rotation");
+            Thread.onSpinWait();
+        }
+    }
+
+    @Test
+    void connectionFailureRecognisesSqlState08AnywhereInCauseChain() {
+        assertTrue(ReplicaRoutingDataSource.connectionFailure(new SQLException("Connection refused", "08001")));
+        // Hikari przenosi SQLState ostatniego błędu połączenia na swój wyjątek timeoutu
+        assertTrue(ReplicaRoutingDataSource.connectionFailure(new SQLTransientConnectionException(
+                "rag-read-replica-0 - Connection is not available, request timed out after 250ms.", "08001")));
+        // ...albo tylko podpina go jako przyczynę
+        assertTrue(ReplicaRoutingDataSource.connectionFailure(new SQLTransientConnectionException(
+                "rag-read-replica-0 - Connection is not available, request timed out after 250ms.", null,
+                new SQLException("Connection to replica:5432 refused", "08001"))));
+        assertTrue(ReplicaRoutingDataSource.connectionFailure(new SQLException("wrapped",
+                new RuntimeException(new SQLException("I/O error", "08006")))));
+    }
+
+    @Test
+    void plainPoolTimeoutAndQueryErrorsAreNotConnectionFailures() {
+        // wyczerpana pula bez błędu połączenia pod spodem
+        assertFalse(ReplicaRoutingDataSource.connectionFailure(new SQLTransientConnectionException(
+                "rag-read-replica-0 - Connection is not available, request timed out after 250ms.")));
+        assertFalse(ReplicaRoutingDataSource.connectionFailure(new SQLException("canceling statement due to statement timeout", "57014")));
+        assertFalse(ReplicaRoutingDataSource.connectionFailure(new SQLException("no state")));
+    }
+
+    @Test
+    void checkLagKeepsPreviousStateOnNonConnectionErrors() throws SQLException {
+        when(lagStatement.executeQuery(anyString())).thenThrow(new SQLException("permission denied for function", "42501"));
+        ds.checkLag();
+        assertSame(replicaConn, ds.getConnection());
+
+        reset(lagStatement);
+        when(lagStatement.executeQuery(anyString())).thenReturn(lagResult);
+        when(lagResult.getDouble(1)).thenReturn(60.0);
+        ds.checkLag();
+        assertSame(primaryConn, ds.getConnection());
+
+        // replika poza rotacją zostaje poza nią, dopóki pomiar się nie powiedzie
+        when(replicaPool.getConnection()).thenThrow(new SQLTransientConnectionException("pool exhausted"));
+        ds.checkLag();
+        assertSame(primaryConn, ds.getConnection());
+    }
+
+    @Test
+    void checkLagTakesReplicaOutOfRotationOnConnectionFailure() throws SQLException {
+        when(replicaPool.getConnection()).thenThrow(new SQLTransientConnectionException(
+                "rag-read-replica-0 - Connection is not available, request timed out after 250ms.", null,
+                new SQLException("Connection refused", "08001")));
+        ds.checkLag();
+
+        assertSame(primaryConn, ds.getConnection());
+    }
+
+    @Test
+    void poolTimeoutRoutesRequestToPrimaryButKeepsReplicaInRotation() throws SQLException {
+        when(replicaPool.getConnection())
+                .thenThrow(new SQLTransientConnectionException("pool exhausted"))
+                .thenReturn(replicaConn);
+
+        assertSame(primaryConn, ds.getConnection());
+        assertSame(replicaConn, ds.getConnection());
+    }
+
+    @Test
+    void connectionFailureOnCheckoutTakesReplicaOutOfRotation() throws SQLException {
+        clearInvocations(replicaPool);
+        when(replicaPool.getConnection())
+                .thenThrow(new SQLTransientConnectionException("timed out", null, new SQLException("Connection refused", "08001")))
+                .thenReturn(replicaConn);
+
+        assertSame(primaryConn, ds.getConnection());
+        assertSame(primaryConn, ds.getConnection());
+        verify(replicaPool, times(1)).getConnection();
+    }
+}
@@ -0,0 +1,46 @@
+package com.astradesk.rag.controller;
+
+import com.astradesk.rag.service.RetrievalWarmup;
+import com.astradesk.rag.service.RetrievalWarmup.Phase;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+
+import java.util.EnumSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class WarmupHealthIndicatorTest {
+
+    private static Health health(Phase phase, String error) {
+        RetrievalWarmup warmup = mock(RetrievalWarmup.class);
+        when(warmup.phase()).thenReturn(phase);
+        when(warmup.error()).thenReturn(error);
+        when(warmup.completedSearches()).thenReturn(7);
+        when(warmup.totalSearches()).thenReturn(200);
+        return new WarmupHealthIndicator(warmup).health();
+    }
+
+    @Test
+    void finishedFailedOrTimedOutWarmupDoesNotBlockTraffic() {
+        for (Phase phase : EnumSet.of(Phase.DONE, Phase.DISABLED, Phase.TIMED_OUT, Phase.FAILED)) {
+            assertEquals(Status.UP, health(phase, null).getStatus(), phase.name());
+        }
+    }
+
+    @Test
+    void runningWarmupKeepsPodOutOfRotation() {
+        for (Phase phase : EnumSet.of(Phase.PENDING, Phase.POOLS, Phase.PREWARM, Phase.EMBEDDINGS, Phase.SEARCH)) {
+            assertEquals(Status.OUT_OF_SERVICE, health(phase, null).getStatus(), phase.name());
+        }
+    }
+
+    @Test
+    void detailsCarryPhaseProgressAndError() {
+        Health h = health(Phase.TIMED_OUT, "Request deadline exceeded during warmup-embed");
+        assertEquals("TIMED_OUT", h.getDetails().get("phase"));
+        assertEquals("7/200", h.getDetails().get("searches"));
+        assertEquals("Request deadline exceeded during warmup-embed", h.getDetails().get("error"));
+    }
+}
@@ -0,0 +1,128 @@
+package com.astradesk.rag.eval;
+
+import com.astradesk.rag.util.VectorMath;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Wektory bazowe (ciągły blok, znormalizowane) i zapytania spoza bazy dla ewaluacji wyszukiwania.
+ * Źródła: syntetyczna mieszanina gaussowska (klastry jak w prawdziwych embeddingach) albo plik
+ * {@code .fvecs} (format benchmarków ANN) lub tekstowy, po jednym literale pgvector {@code [..]} w linii
+ * (np. {@code COPY (SELECT embedding FROM chunks) TO STDOUT}).
+ */
+record EvalDataset(int dim, float[] base, float[][] queries) {
+
+    int size() {
+        return base.length / dim;
+    }
+
+    float[] vector(int i) {
+        float[] v = new float[dim];
+        System.arraycopy(base, i * dim, v, 0, dim);
+        return v;
+    }
+
+    static EvalDataset generate(int n, int dim, int queries, int clusters, long seed) {
+        Random rnd = new Random(seed);
+        float[][] centers = new float[clusters][];
+        for (int c = 0; c < clusters; c++) centers[c] = VectorMath.normalize(gaussian(rnd, dim, 1f));
+        float spread = 1.2f / (float) Math.sqrt(dim); // szum porównywalny z odległością między klastrami
+        float[] base = new float[n * dim];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(sample(rnd, centers, spread), 0, base, i * dim, dim);
+        }
+        float[][] q = new float[queries][];
+        for (int i = 0; i < queries; i++) q[i] = sample(rnd, centers, spread);
+        return new EvalDataset(dim, base, q);
+    }
+
+    /** Wczytuje wektory z pliku; {@code queries} losowych wektorów jest wyjmowanych z bazy jako zapytania. */
+    static EvalDataset load(Path file, int limit, int queries, long seed) throws IOException {
+        List<float[]> all = file.toString().endsWith(".fvecs") ? readFvecs(file, limit + queries) : readText(file, limit + queries);
+        if (all.size() <= queries) throw new IllegalArgumentException("Not enough vectors in " + file + ": " + all.size());
+        Collections.shuffle(all, new Random(seed));
+        int dim = all.get(0).length;
+        float[][] q = new float[queries][];
+        for (int i = 0; i < queries; i++) q[i] = VectorMath.normalize(all.get(i));
+        int n = all.size() - queries;
+        float[] base = new float[n * dim];
+        for (int i = 0; i < n; i++) {
+            float[] v = all.get(queries + i);
+            if (v.length != dim) throw new IllegalArgumentException("Mixed dimensions in " + file);
+            System.arraycopy(VectorMath.normalize(v), 0, base, i * dim, dim);
+        }
+        return new EvalDataset(dim, base, q);
+    }
+
+    /** Dokładne top-k (indeksy w bazie) dla każdego zapytania: brute force cosinusem, równolegle po zapytaniach. */
+    int[][] groundTruth(int k) {
+        int[][] out = new int[queries.length][];
+        IntStream.range(0, queries.length).parallel()
+                .forEach(i -> out[i] = VectorMath.topK(queries[i], base, dim, k, VectorMath.Metric.COSINE).indices());
+        return out;
+    }
+
+    private static float[] sample(Random rnd, float[][] centers, float spread) {
+        float[] c = centers[rnd.nextInt(centers.length)];
+        float[] v = gaussian(rnd, c.length, spread);
+        for (int d = 0; d < v.length; d++) v[d] += c[d];
+        return VectorMath.normalize(v);
+    }
+
+    private static float[] gaussian(Random rnd, int dim, float sigma) {
+        float[] v = new float[dim];
+        for (int d = 0; d < dim; d++) v[d] = (float) rnd.nextGaussian() * sigma;
+        return v;
+    }
+
+    private static List<float[]> readFvecs(Path file, int limit) throws IOException {
+        List<float[]> out = new ArrayList<>();
+        try (InputStream in = Files.newInputStream(file); DataInputStream data = new DataInputStream(in)) {
+            byte[] header = new byte[4];
+            while (out.size() < limit) {
+                try {
+                    data.readFully(header);
+                } catch (EOFException e) {
+                    break;
+                }
+                int dim = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN).getInt();
+                byte[] body = new byte[dim * 4];
+                data.readFully(body);
+                float[] v = new float[dim];
+                ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(v);
+                out.add(v);
+            }
+        }
+        return out;
+    }
+
+    private static List<float[]> readText(Path file, int limit) throws IOException {
+        List<float[]> out = new ArrayList<>();
+        try (BufferedReader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while (out.size() < limit && (line = r.readLine()) != null) {
+                line = line.strip();
+                if (line.isEmpty()) continue;
+                String[] parts = line.substring(line.indexOf('[') + 1, line.lastIndexOf(']')).split(",");
+                float[] v = new float[parts.length];
+                for (int i = 0; i < parts.length; i++) v[i] = Float.parseFloat(parts[i].strip());
+                out.add(v);
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,62 @@
+package com.astradesk.rag.eval;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/** Wyniki ewaluacji: jeden wiersz na konfigurację (indeks, kwantyzacja, parametr zapytania). */
+final class EvalReport {
+
+    record Result(String index, String quantization, String build, String query,
+                  double recall, double p50Ms, double p99Ms, double buildSeconds) {}
+
+    private final Map<String, Object> setup = new LinkedHashMap<>();
+    private final List<Result> results = new ArrayList<>();
+
+    void setup(String key, Object value) {
+        setup.put(key, value);
+    }
+
+    void add(Result r) {
+        results.add(r);
+    }
+
+    /** Percentyl z czasów w ns, w milisekundach. */
+    static double percentileMs(long[] nanos, double p) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        int i = Math.min(sorted.length - 1, Math.max(0, (int) Math.ceil(p * sorted.length) - 1));
+        return sorted[i] / 1e6;
+    }
+
+    void printTable(PrintStream out) {
+        out.println();
+        out.println("Vector search evaluation " + setup);
+        String fmt = "%-8s %-8s %-26s %-18s %8s %9s %9s %8s%n";
+        out.printf(Locale.ROOT, fmt, "index", "quant", "build", "query", "recall", "p50 ms", "p99 ms", "build s");
+        for (Result r : results) {
+            out.printf(Locale.ROOT, fmt, r.index(), r.quantization(), r.build(), r.query(),
+                    String.format(Locale.ROOT, "%.4f", r.recall()),
+                    String.format(Locale.ROOT, "%.2f", r.p50Ms()),
+                    String.format(Locale.ROOT, "%.2f", r.p99Ms()),
+                    String.format(Locale.ROOT, "%.1f", r.buildSeconds()));
+        }
+        out.println();
+    }
+
+    void writeJson(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)
+                .writeValue(file.toFile(), Map.of("setup", setup, "results", results));
+    }
+}
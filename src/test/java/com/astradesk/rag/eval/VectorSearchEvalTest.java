@@ -0,0 +1,205 @@
+package com.astradesk.rag.eval;
+
+import com.astradesk.rag.repo.ChunkJdbcRepository;
+import com.astradesk.rag.service.VectorIndexMaintainer;
+import com.pgvector.PGvector;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.*;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Offline: recall@k względem dokładnego wyszukiwania i opóźnienia p50/p99 dla indeksów i parametrów pgvector.
+ * Nie jest częścią {@code ./gradlew test}; uruchamianie: {@code ./gradlew evalVectorSearch [-Peval.n=50000 ...]}.
+ * <p>
+ * Ładuje wektory do tabeli chunks (schema.sql) w kontenerze pgvector i mierzy produkcyjne
+ * {@link ChunkJdbcRepository#findSimilar} bez indeksu (seq scan), z ivfflat (sweep probes) i hnsw (sweep ef_search);
+ * kandydaci kwantyzacji (halfvec, binary_quantize + rerank) idą osobnym SQL. Prawda: brute force w JVM.
+ * Właściwości: eval.n, eval.dim, eval.queries, eval.k, eval.clusters, eval.seed, eval.vectors (plik .fvecs
+ * albo literały pgvector), eval.probes, eval.ef-search, eval.rerank, eval.hnsw.m, eval.hnsw.ef-construction, eval.out.
+ */
+@Tag("eval")
+@Testcontainers
+class VectorSearchEvalTest {
+
+    @Container
+    static PostgreSQLContainer<?> pg = new PostgreSQLContainer<>("pgvector/pgvector:pg16")
+            .withDatabaseName("rag").withUsername("rag").withPassword("rag")
+            .withSharedMemorySize(1024L * 1024 * 1024);
+
+    private static final int WARMUP = 20;
+
+    private int k;
+    private EvalDataset data;
+    private int[][] truth;
+
+    @Test
+    void recallVersusLatency() throws Exception {
+        k = Integer.getInteger("eval.k", 10);
+        int queries = Integer.getInteger("eval.queries", 200);
+        long seed = Long.getLong("eval.seed", 42L);
+        String file = System.getProperty("eval.vectors", "");
+        data = file.isBlank()
+                ? EvalDataset.generate(Integer.getInteger("eval.n", 20_000), Integer.getInteger("eval.dim", 384),
+                        queries, Integer.getInteger("eval.clusters", 64), seed)
+                : EvalDataset.load(Path.of(file), Integer.getInteger("eval.n", 100_000), queries, seed);
+        int dim = data.dim();
+        int n = data.size();
+        long t0 = System.nanoTime();
+        truth = data.groundTruth(k);
+        double truthSeconds = (System.nanoTime() - t0) / 1e9;
+
+        int m = Integer.getInteger("eval.hnsw.m", 16);
+        int efConstruction = Integer.getInteger("eval.hnsw.ef-construction", 64);
+        int lists = VectorIndexMaintainer.ivfflatLists(n);
+        String hnswWith = "m = " + m + ", ef_construction = " + efConstruction;
+
+        EvalReport report = new EvalReport();
+        report.setup("source", file.isBlank() ? "synthetic" : file);
+        report.setup("n", n);
+        report.setup("dim", dim);
+        report.setup("queries", queries);
+        report.setup("k", k);
+        report.setup("groundTruthSeconds", Math.round(truthSeconds * 10) / 10.0);
+
+        try (Connection con = DriverManager.getConnection(pg.getJdbcUrl(), pg.getUsername(), pg.getPassword())) {
+            JdbcTemplate jdbc = new JdbcTemplate(new SingleConnectionDataSource(con, true));
+            ScriptUtils.executeSqlScript(con, new ClassPathResource("schema.sql"));
+            jdbc.execute("ALTER TABLE chunks ADD COLUMN IF NOT EXISTS embedding vector(" + dim + ") NOT NULL");
+            jdbc.execute("SET maintenance_work_mem = '512MB'");
+            load(con, jdbc);
+            ChunkJdbcRepository repo = new ChunkJdbcRepository(jdbc, jdbc);
+            Function<float[], List<Long>> findSimilar = q -> repo.findSimilar(q, k).stream().map(c -> c.id).toList();
+
+            EvalReport.Result exact = measure("none", "-", "-", "seqscan", 0, findSimilar);
+            report.add(exact);
+
+            if (dim <= 2000) { // limit indeksów dla typu vector
+                double build = buildIndex(jdbc, "ivfflat (embedding vector_cosine_ops) WITH (lists = " + lists + ")");
+                for (int probes : intList("eval.probes", "1,2,4,8,16,32")) {
+                    if (probes > lists) continue;
+                    jdbc.execute("SET ivfflat.probes = " + probes);
+                    report.add(measure("ivfflat", "-", "lists = " + lists, "probes = " + probes, build, findSimilar));
+                }
+                jdbc.execute("RESET ivfflat.probes");
+                dropIndex(jdbc);
+
+                build = buildIndex(jdbc, "hnsw (embedding vector_cosine_ops) WITH (" + hnswWith + ")");
+                for (int ef : intList("eval.ef-search", "10,20,40,80,160")) {
+                    jdbc.execute("SET hnsw.ef_search = " + ef);
+                    report.add(measure("hnsw", "-", hnswWith, "ef_search = " + ef, build, findSimilar));
+                }
+                dropIndex(jdbc);
+            }
+
+            if (dim <= 4000) { // halfvec: połowa pamięci indeksu
+                String half = "halfvec(" + dim + ")";
+                double build = buildIndex(jdbc, "hnsw ((embedding::" + half + ") halfvec_cosine_ops) WITH (" + hnswWith + ")");
+                String sql = "SELECT id FROM chunks ORDER BY embedding::" + half + " <=> (?::vector)::" + half + " LIMIT ?";
+                for (int ef : intList("eval.ef-search", "10,20,40,80,160")) {
+                    jdbc.execute("SET hnsw.ef_search = " + ef);
+                    report.add(measure("hnsw", "halfvec", hnswWith, "ef_search = " + ef, build,
+                            q -> jdbc.queryForList(sql, Long.class, new PGvector(q), k)));
+                }
+                dropIndex(jdbc);
+            }
+
+            // binary_quantize: 1 bit na wymiar, kandydaci po Hammingu, potem rerank pełnym wektorem
+            String bits = "bit(" + dim + ")";
+            double build = buildIndex(jdbc, "hnsw ((binary_quantize(embedding)::" + bits + ") bit_hamming_ops) WITH (" + hnswWith + ")");
+            String sql = "SELECT id FROM (SELECT id, embedding FROM chunks ORDER BY binary_quantize(embedding)::" + bits +
+                    " <~> binary_quantize(?::vector) LIMIT ?) c ORDER BY c.embedding <=> ?::vector LIMIT ?";
+            for (int rerank : intList("eval.rerank", "1,2,4,8")) {
+                int candidates = k * rerank;
+                int ef = Math.min(1000, Math.max(40, candidates));
+                jdbc.execute("SET hnsw.ef_search = " + ef);
+                report.add(measure("hnsw", "binary", hnswWith, "rerank " + candidates + ", ef_search = " + ef, build,
+                        q -> jdbc.queryForList(sql, Long.class, new PGvector(q), candidates, new PGvector(q), k)));
+            }
+            dropIndex(jdbc);
+
+            report.printTable(System.out);
+            Path out = Path.of(System.getProperty("eval.out", "build/reports/vector-eval/results.json"));
+            report.writeJson(out);
+            System.out.println("JSON report: " + out.toAbsolutePath());
+
+            // seq scan z cosinusem musi się zgadzać z brute force (poza remisami na granicy float/double)
+            assertTrue(exact.recall() >= 0.99, "exact search recall " + exact.recall());
+        }
+    }
+
+    /** COPY paczkami; id = indeks w zbiorze + 1, jeden syntetyczny dokument. */
+    private void load(Connection con, JdbcTemplate jdbc) throws Exception {
+        jdbc.update("INSERT INTO docs(id, title, collection) VALUES (1, 'eval', 'eval')");
+        CopyManager copy = new CopyManager(con.unwrap(BaseConnection.class));
+        CopyIn in = copy.copyIn("COPY chunks(id, doc_id, chunk_index, content, embedding) FROM STDIN");
+        StringBuilder sb = new StringBuilder(1 << 20);
+        for (int i = 0; i < data.size(); i++) {
+            sb.append(i + 1).append("\t1\t").append(i).append("\t\t").append(new PGvector(data.vector(i)).getValue()).append('\n');
+            if (sb.length() > (1 << 20) || i == data.size() - 1) {
+                byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+                in.writeToCopy(bytes, 0, bytes.length);
+                sb.setLength(0);
+            }
+        }
+        in.endCopy();
+        jdbc.execute("VACUUM ANALYZE chunks");
+    }
+
+    private static double buildIndex(JdbcTemplate jdbc, String using) {
+        long t0 = System.nanoTime();
+        jdbc.execute("CREATE INDEX eval_ann ON chunks USING " + using);
+        jdbc.execute("ANALYZE chunks");
+        return (System.nanoTime() - t0) / 1e9;
+    }
+
+    private static void dropIndex(JdbcTemplate jdbc) {
+        jdbc.execute("DROP INDEX IF EXISTS eval_ann");
+        jdbc.execute("RESET hnsw.ef_search");
+    }
+
+    private EvalReport.Result measure(String index, String quantization, String build, String query, double buildSeconds,
+                                      Function<float[], List<Long>> search) {
+        float[][] queries = data.queries();
+        for (int i = 0; i < Math.min(WARMUP, queries.length); i++) search.apply(queries[i]);
+        long[] latencies = new long[queries.length];
+        double recall = 0;
+        for (int i = 0; i < queries.length; i++) {
+            long t0 = System.nanoTime();
+            List<Long> ids = search.apply(queries[i]);
+            latencies[i] = System.nanoTime() - t0;
+            recall += recall(ids, truth[i]);
+        }
+        return new EvalReport.Result(index, quantization, build, query, recall / queries.length,
+                EvalReport.percentileMs(latencies, 0.50), EvalReport.percentileMs(latencies, 0.99), buildSeconds);
+    }
+
+    private double recall(List<Long> ids, int[] expected) {
+        Set<Long> truthIds = new HashSet<>();
+        for (int idx : expected) truthIds.add(idx + 1L);
+        long hits = ids.stream().filter(truthIds::contains).count();
+        return (double) hits / Math.min(k, expected.length);
+    }
+
+    private static List<Integer> intList(String property, String defaults) {
+        return Arrays.stream(System.getProperty(property, defaults).split(","))
+                .map(String::strip).filter(s -> !s.isEmpty()).map(Integer::parseInt).toList();
+    }
+}
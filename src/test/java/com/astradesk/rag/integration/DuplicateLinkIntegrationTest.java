@@ -0,0 +1,123 @@
+package com.astradesk.rag.integration;
+
+import com.astradesk.rag.repo.ChunkJdbcRepository;
+import com.astradesk.rag.repo.DocumentJdbcRepository;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Odnośniki prawie-duplikatów (chunk_duplicates) a usuwanie i ingest dokumentów kanonicznych. */
+@Testcontainers
+class DuplicateLinkIntegrationTest {
+
+    @Container
+    static PostgreSQLContainer<?> pg = new PostgreSQLContainer<>("pgvector/pgvector:pg16")
+            .withDatabaseName("rag").withUsername("rag").withPassword("rag");
+
+    private static final float[] VEC = {1f, 0f, 0f};
+
+    private static JdbcTemplate jdbc;
+    private static DocumentJdbcRepository docs;
+    private static ChunkJdbcRepository chunks;
+
+    @BeforeAll
+    static void schema() throws Exception {
+        jdbc = new JdbcTemplate(new DriverManagerDataSource(pg.getJdbcUrl(), pg.getUsername(), pg.getPassword()));
+        try (Connection con = jdbc.getDataSource().getConnection()) {
+            ScriptUtils.executeSqlScript(con, new ClassPathResource("schema.sql"));
+        }
+        jdbc.execute("ALTER TABLE chunks ADD COLUMN IF NOT EXISTS embedding vector(3) NOT NULL");
+        docs = new DocumentJdbcRepository(jdbc);
+        chunks = new ChunkJdbcRepository(jdbc, jdbc);
+    }
+
+    @BeforeEach
+    void clean() {
+        jdbc.execute("TRUNCATE docs CASCADE");
+    }
+
+    @Test
+    void deletingCanonicalDocumentPromotesOldestLinkedCopy() {
+        long a = docs.insertDoc("a.pdf", null, "manuals");
+        long b = docs.insertDoc("b.pdf", null, "manuals");
+        long c = docs.insertDoc("c.pdf", null, "manuals");
+        long canonical = chunks.insertChunk(a, 3, 2, 2, "manuals/raw/a.pdf", "Shared legal footer", VEC, 42L);
+        long own = chunks.insertChunk(a, 4, 2, 2, "manuals/raw/a.pdf", "Only in a", VEC, 7L);
+        assertTrue(chunks.insertDuplicate(b, 5, 1, 1, "manuals/raw/b.pdf", canonical, 1));
+        assertTrue(chunks.insertDuplicate(c, 0, 9, 9, "manuals/raw/c.pdf", canonical, 2));
+        assertTrue(chunks.insertDuplicate(a, 8, 3, 3, "manuals/raw/a.pdf", canonical, 0)); // wewnątrz dokumentu a
+
+        docs.deleteDoc(a);
+
+        Map<String, Object> promoted = jdbc.queryForMap("SELECT * FROM chunks");
+        assertEquals(b, promoted.get("doc_id"));
+        assertEquals(5, promoted.get("chunk_index"));
+        assertEquals(1, promoted.get("page_from"));
+        assertEquals("manuals/raw/b.pdf", promoted.get("source_key"));
+        assertEquals("Shared legal footer", promoted.get("content"));
+        assertEquals(42L, promoted.get("simhash"));
+        assertFalse(chunks.exists(own));
+
+        List<Map<String, Object>> links = jdbc.queryForList("SELECT doc_id, canonical_id FROM chunk_duplicates");
+        assertEquals(1, links.size());
+        assertEquals(c, links.get(0).get("doc_id"));
+        assertEquals(promoted.get("id"), links.get(0).get("canonical_id"));
+    }
+
+    @Test
+    void deletingDocumentWithoutLinksRemovesEverything() {
+        long a = docs.insertDoc("a.pdf", null, "manuals");
+        long canonical = chunks.insertChunk(a, 0, null, null, "k", "Shared legal footer", VEC, 42L);
+        assertTrue(chunks.insertDuplicate(a, 1, null, null, "k", canonical, 0));
+
+        docs.deleteDoc(a);
+
+        assertEquals(0, jdbc.queryForObject("SELECT count(*) FROM chunks", Integer.class));
+        assertEquals(0, jdbc.queryForObject("SELECT count(*) FROM chunk_duplicates", Integer.class));
+    }
+
+    @Test
+    void documentBeingIngestedIsNotCanonicalForOtherDocuments() {
+        long ingesting = docs.insertIngestingDoc("a.pdf", "manuals");
+        long other = docs.insertDoc("b.pdf", null, "manuals");
+        long canonical = chunks.insertChunk(ingesting, 0, null, null, "k", "Shared legal footer", VEC, 42L);
+
+        assertFalse(chunks.insertDuplicate(other, 0, null, null, "k", canonical, 1));
+        assertTrue(chunks.insertDuplicate(ingesting, 1, null, null, "k", canonical, 0));
+        assertTrue(simhashes("manuals").isEmpty());
+
+        docs.markIndexed(ingesting);
+        assertTrue(chunks.insertDuplicate(other, 0, null, null, "k", canonical, 1));
+        assertEquals(List.of(canonical), simhashes("manuals"));
+    }
+
+    @Test
+    void linkToDeletedCanonicalIsRejected() {
+        long a = docs.insertDoc("a.pdf", null, "manuals");
+        long b = docs.insertDoc("b.pdf", null, "manuals");
+        long canonical = chunks.insertChunk(a, 0, null, null, "k", "Shared legal footer", VEC, 42L);
+        docs.deleteDoc(a);
+
+        assertFalse(chunks.insertDuplicate(b, 0, null, null, "k", canonical, 1));
+    }
+
+    private static List<Long> simhashes(String collection) {
+        List<Long> ids = new ArrayList<>();
+        chunks.forEachSimhash(collection, (id, hash) -> ids.add(id));
+        return ids;
+    }
+}
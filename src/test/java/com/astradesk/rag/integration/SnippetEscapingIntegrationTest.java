@@ -0,0 +1,48 @@
+package com.astradesk.rag.integration;
+
+import com.astradesk.rag.model.ChunkSnippet;
+import com.astradesk.rag.repo.ChunkJdbcRepository;
+import com.astradesk.rag.repo.DocumentJdbcRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Fragment projection=slim z treści zawierającej HTML: escapowany, jedyne znaczniki to <mark>. */
+@Testcontainers
+class SnippetEscapingIntegrationTest {
+
+    @Container
+    static PostgreSQLContainer<?> pg = new PostgreSQLContainer<>("pgvector/pgvector:pg16")
+            .withDatabaseName("rag").withUsername("rag").withPassword("rag");
+
+    @Test
+    void snippetEscapesDocumentMarkup() throws Exception {
+        JdbcTemplate jdbc = new JdbcTemplate(new DriverManagerDataSource(pg.getJdbcUrl(), pg.getUsername(), pg.getPassword()));
+        try (Connection con = jdbc.getDataSource().getConnection()) {
+            ScriptUtils.executeSqlScript(con, new ClassPathResource("schema.sql"));
+        }
+        jdbc.execute("ALTER TABLE chunks ADD COLUMN IF NOT EXISTS embedding vector(3) NOT NULL");
+        ChunkJdbcRepository chunks = new ChunkJdbcRepository(jdbc, jdbc);
+        long doc = new DocumentJdbcRepository(jdbc).insertDoc("a.html", null, "web");
+        chunks.insertChunk(doc, 0, null, null, "k",
+                "Vacation <img src=x onerror=\"alert('x')\"> policy & rules", new float[]{1f, 0f, 0f}, 0L);
+
+        List<ChunkSnippet> hits = chunks.findSimilarSlim(new float[]{1f, 0f, 0f}, "vacation", 1, 30, 2000);
+
+        String snippet = hits.get(0).snippet();
+        assertFalse(snippet.contains("<img"), snippet);
+        assertTrue(snippet.contains("&lt;img src=x onerror=&quot;alert(&#39;x&#39;)&quot;&gt;"), snippet);
+        assertTrue(snippet.contains("&amp; rules"), snippet);
+        assertTrue(snippet.startsWith("<mark>Vacation</mark>"), snippet);
+    }
+}
@@ -0,0 +1,77 @@
+package com.astradesk.rag.repo;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ChunkJdbcRepositoryTest {
+
+    private Connection con;
+    private Statement statement;
+    private ChunkJdbcRepository repo;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        DataSource ds = mock(DataSource.class);
+        con = mock(Connection.class);
+        statement = mock(Statement.class);
+        PreparedStatement ps = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(ds.getConnection()).thenReturn(con);
+        when(con.createStatement()).thenReturn(statement);
+        when(con.prepareStatement(anyString())).thenReturn(ps);
+        when(ps.executeQuery()).thenReturn(rs);
+        JdbcTemplate read = new JdbcTemplate(ds);
+        repo = new ChunkJdbcRepository(mock(JdbcTemplate.class), read);
+    }
+
+    @Test
+    void appliesProbesInsideReadOnlyTransaction() throws Exception {
+        repo.setSearchParam("ivfflat", 20);
+        repo.findSimilar(new float[]{1f, 0f}, 5);
+
+        InOrder order = inOrder(con, statement);
+        order.verify(con).setReadOnly(true);
+        order.verify(statement).execute("SET LOCAL ivfflat.probes = 20");
+        order.verify(con).prepareStatement(contains("ORDER BY embedding <=>"));
+        order.verify(con).commit();
+    }
+
+    @Test
+    void appliesEfSearchToBatchAndSlimSearch() throws Exception {
+        repo.setSearchParam("hnsw", 64);
+        repo.findSimilarBatch(List.of(new float[]{1f, 0f}), 5);
+        repo.findSimilarSlim(new float[]{1f, 0f}, "query", 5, 20, 2000);
+
+        verify(statement, times(2)).execute("SET LOCAL hnsw.ef_search = 64");
+        verify(con, times(2)).commit();
+    }
+
+    @Test
+    void withoutAnnIndexQueriesRunWithoutSetting() throws Exception {
+        repo.setSearchParam("ivfflat", 20);
+        repo.clearSearchParam();
+        repo.findSimilar(new float[]{1f, 0f}, 5);
+
+        verify(con, never()).createStatement();
+        verify(con, never()).commit();
+    }
+
+    @Test
+    void rejectsUnknownMethod() {
+        assertThrows(IllegalArgumentException.class, () -> repo.setSearchParam("diskann", 10));
+        assertThrows(IllegalArgumentException.class, () -> repo.setSearchParam("ivfflat", 0));
+    }
+}
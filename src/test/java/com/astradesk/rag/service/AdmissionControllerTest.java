@@ -0,0 +1,150 @@
+package com.astradesk.rag.service;
+
+import com.astradesk.rag.service.AdmissionController.Permit;
+import com.astradesk.rag.service.AdmissionController.Rejected;
+import com.astradesk.rag.service.AdmissionController.RouteClass;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControllerTest {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+
+    private AdmissionController controller(int searchLimit, int searchQueue, Duration queueTimeout, Duration interval) {
+        return new AdmissionController(meters, searchLimit, 1, 64, Duration.ofMillis(200), searchQueue, Duration.ofSeconds(1),
+                2, 0, Duration.ofSeconds(10), 1, 0, Duration.ofSeconds(30), queueTimeout, Duration.ofMillis(20), interval);
+    }
+
+    private static Permit admit(AdmissionController c, RouteClass cls) {
+        return c.acquire(cls, Duration.ofSeconds(5)).block(Duration.ofSeconds(5));
+    }
+
+    private static CompletableFuture<Permit> pending(AdmissionController c, RouteClass cls, Duration maxWait) {
+        return c.acquire(cls, maxWait).toFuture();
+    }
+
+    private double shed(String cls, String reason) {
+        var counter = meters.find("rag.admission.shed").tag("class", cls).tag("reason", reason).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    @Test
+    void queuedRequestIsAdmittedWhenSlotFrees() throws Exception {
+        AdmissionController c = controller(2, 4, Duration.ofSeconds(5), Duration.ofSeconds(10));
+        Permit a = admit(c, RouteClass.SEARCH);
+        admit(c, RouteClass.SEARCH);
+        CompletableFuture<Permit> queued = pending(c, RouteClass.SEARCH, Duration.ofSeconds(5));
+        assertFalse(queued.isDone());
+
+        a.release(false);
+        assertNotNull(queued.get(2, TimeUnit.SECONDS));
+        assertEquals(2, c.inFlight(RouteClass.SEARCH));
+        assertEquals(3.0, meters.get("rag.admission.accepted").tag("class", "search").counter().count());
+
+        a.release(false); // idempotentne
+        assertEquals(2, c.inFlight(RouteClass.SEARCH));
+    }
+
+    @Test
+    void fullQueueShedsImmediately() {
+        AdmissionController c = controller(1, 1, Duration.ofSeconds(5), Duration.ofSeconds(10));
+        admit(c, RouteClass.SEARCH);
+        CompletableFuture<Permit> queued = pending(c, RouteClass.SEARCH, Duration.ofSeconds(5));
+
+        Rejected r = assertThrows(Rejected.class, () -> c.acquire(RouteClass.SEARCH, Duration.ofSeconds(5)).block());
+        assertEquals("queue-full", r.reason());
+        assertEquals(Duration.ofSeconds(1), r.retryAfter());
+        assertEquals(1.0, shed("search", "queue-full"));
+        assertFalse(queued.isDone());
+    }
+
+    @Test
+    void waiterTimesOutWithinItsBudget() {
+        AdmissionController c = controller(1, 4, Duration.ofSeconds(5), Duration.ofSeconds(10));
+        admit(c, RouteClass.SEARCH);
+
+        long t0 = System.nanoTime();
+        Rejected r = assertThrows(Rejected.class,
+                () -> c.acquire(RouteClass.SEARCH, Duration.ofMillis(50)).block(Duration.ofSeconds(5)));
+        assertEquals("timeout", r.reason());
+        assertTrue(System.nanoTime() - t0 < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(1.0, shed("search", "timeout"));
+        assertEquals(0.0, meters.get("rag.admission.queue").tag("class", "search").gauge().value());
+    }
+
+    @Test
+    void cancelledWaiterDoesNotLeakSlot() throws Exception {
+        AdmissionController c = controller(1, 4, Duration.ofSeconds(5), Duration.ofSeconds(10));
+        Permit a = admit(c, RouteClass.SEARCH);
+        Disposable waiting = c.acquire(RouteClass.SEARCH, Duration.ofSeconds(5)).subscribe();
+        waiting.dispose();
+
+        a.release(false);
+        assertEquals(0, c.inFlight(RouteClass.SEARCH));
+        assertNotNull(admit(c, RouteClass.SEARCH));
+    }
+
+    @Test
+    void standingSearchQueueShedsIngest() throws Exception {
+        AdmissionController c = controller(1, 4, Duration.ofSeconds(5), Duration.ofMillis(10));
+        assertNotNull(admit(c, RouteClass.INGEST)); // bez presji ingest przechodzi
+        admit(c, RouteClass.SEARCH);
+        pending(c, RouteClass.SEARCH, Duration.ofSeconds(5));
+        Thread.sleep(30); // kolejka search nie opróżniła się przez interval
+
+        Rejected r = assertThrows(Rejected.class, () -> c.acquire(RouteClass.INGEST, Duration.ofSeconds(5)).block());
+        assertEquals("priority", r.reason());
+        assertEquals(Duration.ofSeconds(10), r.retryAfter());
+        assertEquals(1.0, shed("ingest", "priority"));
+    }
+
+    @Test
+    void longStreamsDoNotTakeIngestSlots() {
+        AdmissionController c = controller(1, 4, Duration.ofSeconds(5), Duration.ofSeconds(10));
+        Permit stream = admit(c, RouteClass.STREAM); // trwający ingest ZIP
+
+        Rejected r = assertThrows(Rejected.class, () -> c.acquire(RouteClass.STREAM, Duration.ofSeconds(5)).block());
+        assertEquals("queue-full", r.reason());
+        assertEquals(Duration.ofSeconds(30), r.retryAfter());
+        assertNotNull(admit(c, RouteClass.INGEST)); // części i status uploadów nadal przechodzą
+        assertNotNull(admit(c, RouteClass.INGEST));
+
+        stream.release(false);
+        assertNotNull(admit(c, RouteClass.STREAM));
+    }
+
+    @Test
+    void searchLimitBacksOffOnOverloadAndRecovers() throws Exception {
+        AdmissionController c = controller(10, 4, Duration.ofSeconds(5), Duration.ofMillis(1));
+        for (int i = 0; i < 5; i++) {
+            Permit p = admit(c, RouteClass.SEARCH);
+            Thread.sleep(2);
+            p.release(true); // np. 504 z zależności
+        }
+        int reduced = c.limit(RouteClass.SEARCH);
+        assertTrue(reduced < 10, "limit " + reduced);
+
+        // pełne wykorzystanie limitu i szybkie odpowiedzi - limit rośnie addytywnie
+        for (int round = 0; round < 50; round++) {
+            Permit[] held = new Permit[c.limit(RouteClass.SEARCH)];
+            for (int i = 0; i < held.length; i++) held[i] = admit(c, RouteClass.SEARCH);
+            for (Permit p : held) p.release(false);
+        }
+        assertTrue(c.limit(RouteClass.SEARCH) > reduced);
+        assertEquals(c.limit(RouteClass.SEARCH), meters.get("rag.admission.limit").tag("class", "search").gauge().value());
+    }
+
+    @Test
+    void invalidLimitsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new AdmissionController(meters, 2, 4, 64, Duration.ofSeconds(1),
+                8, Duration.ofSeconds(1), 2, 0, Duration.ofSeconds(1), 1, 0, Duration.ofSeconds(1), Duration.ofSeconds(1),
+                Duration.ofMillis(20), Duration.ofMillis(100)));
+    }
+}
@@ -0,0 +1,103 @@
+package com.astradesk.rag.service;
+
+import com.astradesk.rag.repo.ChunkJdbcRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ChunkDeduplicatorTest {
+
+    private static final String FOOTER = "Copyright ACME Corporation. All rights reserved. Page 4 of 52. " +
+            "Distribution outside the company requires written approval from the legal department.";
+
+    @Mock
+    private ChunkJdbcRepository chunks;
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+
+    private ChunkDeduplicator dedup(String policy, String... overrides) {
+        return new ChunkDeduplicator(chunks, meters, policy, List.of(overrides), 3, 8);
+    }
+
+    @Test
+    void repeatedFooterIsLinkedToTheFirstCopy() {
+        ChunkDeduplicator dedup = dedup("link");
+        ChunkDeduplicator.Decision first = dedup.check("manuals", 1L, FOOTER);
+        assertFalse(first.duplicate());
+        assertNotNull(first.simhash());
+        dedup.add("manuals", 1L, first, 100L);
+        dedup.publish(1L);
+
+        ChunkDeduplicator.Decision second = dedup.check("manuals", 7L, FOOTER.replace("Page 4 of 52", "Page 9 of 52"));
+        assertTrue(second.duplicate());
+        assertEquals(100L, second.canonicalId());
+
+        when(chunks.insertDuplicate(7L, 9, 9, 9, "k", 100L, 0)).thenReturn(true);
+        assertTrue(dedup.recordDuplicate("manuals", second, 7L, 9, 9, 9, "k"));
+        assertEquals(1.0, meters.counter("rag.ingest.dedup", "action", "linked").count());
+        verify(chunks).forEachSimhash(eq("manuals"), any());
+    }
+
+    @Test
+    void collectionsAreDedupedSeparatelyAndPoliciesCanBeOverridden() {
+        ChunkDeduplicator dedup = dedup("skip", "legal=off", "wiki = link");
+        assertEquals(ChunkDeduplicator.Policy.SKIP, dedup.policyFor("manuals"));
+        assertEquals(ChunkDeduplicator.Policy.OFF, dedup.policyFor("legal"));
+        assertEquals(ChunkDeduplicator.Policy.LINK, dedup.policyFor("wiki"));
+
+        dedup.add("manuals", 1L, dedup.check("manuals", 1L, FOOTER), 1L);
+        dedup.publish(1L);
+        assertFalse(dedup.check("wiki", 2L, FOOTER).duplicate());
+        ChunkDeduplicator.Decision off = dedup.check("legal", 3L, FOOTER);
+        assertFalse(off.duplicate());
+        assertNull(off.simhash());
+    }
+
+    @Test
+    void shortChunksAreNotFingerprinted() {
+        ChunkDeduplicator dedup = dedup("skip");
+        assertNull(dedup.check("manuals", 1L, "Table of contents").simhash());
+    }
+
+    @Test
+    void deletedCanonicalChunkReloadsTheCollection() {
+        ChunkDeduplicator dedup = dedup("skip");
+        dedup.add("manuals", 1L, dedup.check("manuals", 1L, FOOTER), 100L);
+        dedup.publish(1L);
+        ChunkDeduplicator.Decision dup = dedup.check("manuals", 7L, FOOTER);
+        when(chunks.exists(100L)).thenReturn(false);
+
+        assertFalse(dedup.recordDuplicate("manuals", dup, 7L, 1, 1, 1, "k"));
+        assertFalse(dedup.check("manuals", 7L, FOOTER).duplicate()); // przeładowane z bazy (tu: pustej)
+        verify(chunks, times(2)).forEachSimhash(eq("manuals"), any());
+    }
+
+    @Test
+    void documentStillBeingIngestedIsNotCanonicalForOthers() {
+        ChunkDeduplicator dedup = dedup("link");
+        dedup.add("manuals", 1L, dedup.check("manuals", 1L, FOOTER), 100L);
+
+        assertEquals(100L, dedup.check("manuals", 1L, FOOTER).canonicalId()); // w obrębie dokumentu
+        assertFalse(dedup.check("manuals", 2L, FOOTER).duplicate());
+
+        dedup.discard(1L);
+        assertFalse(dedup.check("manuals", 1L, FOOTER).duplicate());
+        dedup.publish(1L); // po discard nic do opublikowania
+        assertFalse(dedup.check("manuals", 2L, FOOTER).duplicate());
+    }
+
+    @Test
+    void invalidPolicyIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> dedup("drop"));
+        assertThrows(IllegalArgumentException.class, () -> dedup("link", "legal"));
+    }
+}
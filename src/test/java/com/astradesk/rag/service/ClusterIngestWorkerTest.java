@@ -0,0 +1,272 @@
+package com.astradesk.rag.service;
+
+import com.astradesk.rag.config.S3AsyncStorageService;
+import com.astradesk.rag.config.S3StorageService;
+import com.astradesk.rag.repo.DocumentJdbcRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/** Kolejka ingest_work_items na prawdziwym Postgresie: przejmowanie, dzierżawy, ponowienia, anulowanie, sprzątanie. */
+@Testcontainers
+class ClusterIngestWorkerTest {
+
+    @Container
+    static PostgreSQLContainer<?> pg = new PostgreSQLContainer<>("pgvector/pgvector:pg16")
+            .withDatabaseName("rag").withUsername("rag").withPassword("rag");
+
+    private static JdbcTemplate jdbc;
+    private static DocumentJdbcRepository docs;
+
+    private final ZipIngestService ingest = mock(ZipIngestService.class);
+    private final S3StorageService storage = mock(S3StorageService.class);
+    private final List<ClusterIngestWorker> started = new ArrayList<>();
+
+    @BeforeAll
+    static void schema() throws Exception {
+        jdbc = new JdbcTemplate(new DriverManagerDataSource(pg.getJdbcUrl(), pg.getUsername(), pg.getPassword()));
+        try (Connection con = jdbc.getDataSource().getConnection()) {
+            ScriptUtils.executeSqlScript(con, new ClassPathResource("schema.sql"));
+        }
+        jdbc.execute("ALTER TABLE chunks ADD COLUMN IF NOT EXISTS embedding vector(3) NOT NULL");
+        docs = new DocumentJdbcRepository(jdbc);
+    }
+
+    @BeforeEach
+    void clean() {
+        jdbc.execute("TRUNCATE ingest_jobs, docs CASCADE");
+        when(storage.get(anyString())).thenReturn(new byte[]{1});
+        doAnswer(inv -> {
+            docs.deleteDoc(inv.getArgument(0));
+            return null;
+        }).when(ingest).discardDocument(anyLong());
+    }
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        for (ClusterIngestWorker w : started) w.destroy();
+    }
+
+    private ClusterIngestWorker worker(int workers, int maxAttempts) {
+        return worker(workers, maxAttempts, List.of());
+    }
+
+    private ClusterIngestWorker worker(int workers, int maxAttempts, List<String> caps) {
+        IngestScheduler scheduler = new IngestScheduler(new SimpleMeterRegistry(), 4, 1 << 20, 1, 0, List.of(), caps);
+        return new ClusterIngestWorker(ingest, docs, storage, jdbc, mock(ApplicationEventPublisher.class), scheduler,
+                "cluster", workers, Duration.ofSeconds(2), Duration.ofMillis(200), Duration.ofMillis(100), maxAttempts, "node-a");
+    }
+
+    private ClusterIngestWorker start(int maxAttempts) {
+        ClusterIngestWorker w = worker(1, maxAttempts);
+        started.add(w);
+        w.start();
+        return w;
+    }
+
+    private static long job() {
+        return jdbc.queryForObject("INSERT INTO ingest_jobs(collection, filename) VALUES ('manuals', 'a.zip') RETURNING id", Long.class);
+    }
+
+    private static long item(long jobId, String name) {
+        return jdbc.queryForObject("INSERT INTO ingest_work_items(job_id, collection, file_name, s3_key, max_len, overlap) " +
+                "VALUES (?, 'manuals', ?, ?, 1200, 200) RETURNING id", Long.class, jobId, name, "manuals/raw/" + name);
+    }
+
+    private static Map<String, Object> state(long itemId) {
+        return jdbc.queryForMap("SELECT status, attempts, doc_id, error FROM ingest_work_items WHERE id = ?", itemId);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > end) fail("condition not met within 10s");
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    void concurrentClaimsNeverShareAnItem() throws Exception {
+        long job = job();
+        for (int i = 0; i < 40; i++) item(job, "f" + i + ".txt");
+        ClusterIngestWorker w = worker(0, 3);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<Long>>> claims = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                String owner = "node-" + t;
+                claims.add(pool.submit(() -> {
+                    List<Long> mine = new ArrayList<>();
+                    ClusterIngestWorker.WorkItem it;
+                    while ((it = w.claim(owner)) != null) mine.add(it.id());
+                    return mine;
+                }));
+            }
+            List<Long> all = new ArrayList<>();
+            for (Future<List<Long>> f : claims) all.addAll(f.get(30, TimeUnit.SECONDS));
+            assertEquals(40, all.size());
+            assertEquals(40, new HashSet<>(all).size());
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(40, jdbc.queryForObject("SELECT count(*) FROM ingest_work_items WHERE status = 'RUNNING' AND attempts = 1",
+                Integer.class));
+    }
+
+    @Test
+    void concurrentClaimsRespectClusterWideCap() throws Exception {
+        long job = job();
+        for (int i = 0; i < 40; i++) item(job, "f" + i + ".txt");
+        ClusterIngestWorker w = worker(0, 3, List.of("manuals=2"));
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            CyclicBarrier together = new CyclicBarrier(8);
+            List<Future<Integer>> claims = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                String owner = "node-" + t;
+                claims.add(pool.submit(() -> {
+                    together.await();
+                    int mine = 0;
+                    for (int round = 0; round < 5; round++) if (w.claim(owner) != null) mine++;
+                    return mine;
+                }));
+            }
+            int claimed = 0;
+            for (Future<Integer> f : claims) claimed += f.get(30, TimeUnit.SECONDS);
+            assertEquals(2, claimed);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(2, jdbc.queryForObject("SELECT count(*) FROM ingest_work_items WHERE status = 'RUNNING'", Integer.class));
+    }
+
+    @Test
+    void expiredLeaseIsTakenOverAndPartialDocumentRemoved() throws Exception {
+        long job = job();
+        long id = item(job, "a.pdf");
+        long partial = docs.insertIngestingDoc("a.pdf", "manuals");
+        jdbc.update("UPDATE ingest_work_items SET status = 'RUNNING', attempts = 1, lease_owner = 'dead-node', " +
+                "lease_until = now() - interval '1 minute', doc_id = ? WHERE id = ?", partial, id);
+        when(ingest.indexDocument(anyLong(), anyString(), anyString(), any(), anyString(), anyInt(), anyInt(), any(), any()))
+                .thenReturn(3L);
+
+        start(3);
+        await(() -> "DONE".equals(state(id).get("status")));
+
+        Map<String, Object> done = state(id);
+        assertEquals(2, done.get("attempts"));
+        assertEquals(0, jdbc.queryForObject("SELECT count(*) FROM docs WHERE id = ?", Integer.class, partial));
+        long retried = (Long) done.get("doc_id");
+        assertNotEquals(partial, retried);
+        verify(ingest).completeDocument(retried);
+    }
+
+    @Test
+    void itemFailsAfterMaxAttempts() throws Exception {
+        long id = item(job(), "broken.pdf");
+        when(ingest.indexDocument(anyLong(), anyString(), anyString(), any(), anyString(), anyInt(), anyInt(), any(), any()))
+                .thenThrow(new IllegalStateException("corrupt PDF"));
+
+        start(2);
+        await(() -> "FAILED".equals(state(id).get("status")));
+
+        Map<String, Object> failed = state(id);
+        assertEquals(2, failed.get("attempts"));
+        assertEquals("corrupt PDF", failed.get("error"));
+        assertNull(failed.get("doc_id"));
+        assertEquals(0, jdbc.queryForObject("SELECT count(*) FROM docs", Integer.class));
+        verify(ingest, times(2)).discardDocument(anyLong());
+    }
+
+    @Test
+    void exhaustedExpiredLeaseFailsAndRemovesPartialDocument() throws Exception {
+        long id = item(job(), "a.pdf");
+        long partial = docs.insertIngestingDoc("a.pdf", "manuals");
+        jdbc.update("UPDATE ingest_work_items SET status = 'RUNNING', attempts = 3, lease_owner = 'dead-node', " +
+                "lease_until = now() - interval '1 minute', doc_id = ? WHERE id = ?", partial, id);
+
+        start(3);
+        await(() -> "FAILED".equals(state(id).get("status")));
+
+        assertEquals("lease expired", state(id).get("error"));
+        assertEquals(0, jdbc.queryForObject("SELECT count(*) FROM docs", Integer.class));
+    }
+
+    @Test
+    void cancelledJobStopsRunningItemAndRemovesItsDocument() throws Exception {
+        long job = job();
+        long id = item(job, "big.pdf");
+        CountDownLatch indexing = new CountDownLatch(1);
+        CompletableFuture<Throwable> stopped = new CompletableFuture<>();
+        when(ingest.indexDocument(anyLong(), anyString(), anyString(), any(), anyString(), anyInt(), anyInt(), any(), any()))
+                .thenAnswer(inv -> {
+                    Runnable checkpoint = inv.getArgument(7);
+                    indexing.countDown();
+                    try {
+                        for (int i = 0; i < 200; i++) {
+                            checkpoint.run();
+                            Thread.sleep(50);
+                        }
+                    } catch (CancellationException e) {
+                        stopped.complete(e);
+                        throw e;
+                    }
+                    stopped.complete(null);
+                    return 1L;
+                });
+
+        start(3);
+        assertTrue(indexing.await(10, TimeUnit.SECONDS));
+        ClusterIngestService service = new ClusterIngestService(jdbc, mock(S3AsyncStorageService.class), 16,
+                Duration.ofMillis(100), Duration.ofSeconds(1), Duration.ofMillis(100), Duration.ofDays(7));
+        service.cancel(job);
+
+        assertInstanceOf(CancellationException.class, stopped.get(10, TimeUnit.SECONDS));
+        await(() -> jdbc.queryForObject("SELECT count(*) FROM docs", Integer.class) == 0);
+        assertEquals("CANCELLED", state(id).get("status"));
+        assertEquals("CANCELLED", jdbc.queryForObject("SELECT status FROM ingest_jobs WHERE id = ?", String.class, job));
+        verify(ingest, never()).completeDocument(anyLong());
+    }
+
+    @Test
+    void purgeRemovesOnlyOldFinishedJobs() {
+        long old = job();
+        item(old, "a.txt");
+        jdbc.update("UPDATE ingest_jobs SET status = 'DONE', created_at = now() - interval '9 days', " +
+                "finished_at = now() - interval '8 days' WHERE id = ?", old);
+        long recent = job();
+        jdbc.update("UPDATE ingest_jobs SET status = 'DONE', finished_at = now() WHERE id = ?", recent);
+        long orphaned = job(); // zgłaszający węzeł padł, zadania dokończone
+        jdbc.update("UPDATE ingest_work_items SET status = 'DONE' WHERE id = ?", item(orphaned, "b.txt"));
+        jdbc.update("UPDATE ingest_jobs SET created_at = now() - interval '9 days' WHERE id = ?", orphaned);
+        long stillOpen = job();
+        item(stillOpen, "c.txt");
+        jdbc.update("UPDATE ingest_jobs SET created_at = now() - interval '9 days' WHERE id = ?", stillOpen);
+
+        new ClusterIngestService(jdbc, mock(S3AsyncStorageService.class), 16, Duration.ofMillis(100), Duration.ofSeconds(1),
+                Duration.ofMillis(100), Duration.ofDays(7)).purgeFinished();
+
+        assertEquals(List.of(recent, stillOpen), jdbc.queryForList("SELECT id FROM ingest_jobs ORDER BY id", Long.class));
+        assertEquals(1, jdbc.queryForObject("SELECT count(*) FROM ingest_work_items", Integer.class));
+    }
+}
@@ -0,0 +1,62 @@
+package com.astradesk.rag.service;
+
+import com.astradesk.rag.model.ChunkRecord;
+import com.astradesk.rag.util.Chunker;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContextPackerTest {
+
+    private static String text(int words) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) sb.append("word").append(i).append(' ');
+        return sb.toString().strip();
+    }
+
+    @Test
+    void mergesOverlappingChunksOfSameDocument() {
+        String doc = text(400);
+        List<String> parts = Chunker.split(doc, 1200, 200);
+        List<ChunkRecord> hits = new ArrayList<>();
+        for (int i = parts.size() - 1; i >= 0; i--) {
+            hits.add(new ChunkRecord(i + 1, 7L, i, null, null, parts.get(i), 0.5 + i * 0.01));
+        }
+
+        List<String> ctx = new ContextPacker(10_000, 0.9).pack(hits);
+
+        assertEquals(1, ctx.size());
+        assertEquals("(source: doc 7)\n" + doc, ctx.get(0));
+    }
+
+    @Test
+    void dropsNearDuplicatePassagesFromOtherDocuments() {
+        String boilerplate = text(60);
+        List<ChunkRecord> hits = List.of(
+                new ChunkRecord(1, 1L, 0, 1, 1, boilerplate, 0.9),
+                new ChunkRecord(2, 2L, 0, 3, 3, boilerplate, 0.8),
+                new ChunkRecord(3, 3L, 0, 1, 1, "completely different passage about vacation policy", 0.7));
+
+        List<String> ctx = new ContextPacker(10_000, 0.9).pack(hits);
+
+        assertEquals(2, ctx.size());
+        assertTrue(ctx.get(0).startsWith("(source: doc 1, p. 1)"));
+        assertTrue(ctx.get(1).startsWith("(source: doc 3, p. 1)"));
+    }
+
+    @Test
+    void respectsTokenBudget() {
+        List<ChunkRecord> hits = List.of(
+                new ChunkRecord(1, 1L, 0, 1, 1, text(200), 0.9),
+                new ChunkRecord(2, 2L, 0, 1, 1, "other " + text(200), 0.8));
+
+        List<String> ctx = new ContextPacker(400, 0.9).pack(hits);
+
+        int tokens = ctx.stream().mapToInt(ContextPacker::estimateTokens).sum();
+        assertFalse(ctx.isEmpty());
+        assertTrue(tokens <= 400 + ctx.size(), "packed " + tokens + " tokens");
+    }
+}
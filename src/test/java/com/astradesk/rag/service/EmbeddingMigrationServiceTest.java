@@ -0,0 +1,180 @@
+package com.astradesk.rag.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/** Maszyna stanów migracji modelu embeddingów na prawdziwym Postgresie z pgvector. */
+@Testcontainers
+class EmbeddingMigrationServiceTest {
+
+    @Container
+    static PostgreSQLContainer<?> pg = new PostgreSQLContainer<>("pgvector/pgvector:pg16")
+            .withDatabaseName("rag").withUsername("rag").withPassword("rag");
+
+    private static JdbcTemplate jdbc;
+    private static TransactionTemplate tx;
+
+    @BeforeAll
+    static void connect() {
+        jdbc = new JdbcTemplate(new DriverManagerDataSource(pg.getJdbcUrl(), pg.getUsername(), pg.getPassword()));
+        tx = new TransactionTemplate(new DataSourceTransactionManager(jdbc.getDataSource()));
+    }
+
+    @BeforeEach
+    void schema() throws Exception {
+        jdbc.execute("DROP TABLE IF EXISTS chunk_duplicates, chunks, docs, embedding_migration CASCADE");
+        try (Connection con = jdbc.getDataSource().getConnection()) {
+            ScriptUtils.executeSqlScript(con, new ClassPathResource("schema.sql"));
+        }
+        jdbc.execute("ALTER TABLE chunks ADD COLUMN IF NOT EXISTS embedding vector(3) NOT NULL");
+        long doc = jdbc.queryForObject("INSERT INTO docs(title) VALUES ('a.pdf') RETURNING id", Long.class);
+        for (int i = 0; i < 5; i++) chunk(doc, "[1,0,0]");
+    }
+
+    private static void chunk(long doc, String vector) {
+        jdbc.update("INSERT INTO chunks(doc_id, chunk_index, content, embedding) VALUES (?, 0, 'text', ?::vector)", doc, vector);
+    }
+
+    private static long doc() {
+        return jdbc.queryForObject("SELECT min(id) FROM docs", Long.class);
+    }
+
+    private static EmbeddingMigrationService service(String sourceModel, int sourceDim, String targetModel, Duration batchDelay) {
+        return new EmbeddingMigrationService(new FakeEmbeddings(sourceDim), jdbc, jdbc, tx, new ObjectMapper(), "fake",
+                sourceModel, "", targetModel, targetModel.isBlank() ? 0 : 4, 2, batchDelay, 512);
+    }
+
+    private static EmbeddingMigrationService service() {
+        return service("small", 3, "large", Duration.ofMillis(10));
+    }
+
+    private static void awaitStatus(EmbeddingMigrationService s, String status) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while (!s.status().status().equals(status)) {
+            if (System.nanoTime() > end) fail("status " + status + " not reached, was " + s.status().status());
+            Thread.sleep(50);
+        }
+    }
+
+    private static int rowsWithDims(String column, int dims) {
+        return jdbc.queryForObject("SELECT count(*) FROM chunks WHERE vector_dims(" + column + ") = ?", Integer.class, dims);
+    }
+
+    private static int fencedDim(EmbeddingMigrationService node, boolean write) {
+        return node.fenced(write, Embeddings::dim, dim -> dim);
+    }
+
+    private static boolean columnExists(String column) {
+        return Boolean.TRUE.equals(jdbc.queryForObject("SELECT EXISTS (SELECT 1 FROM information_schema.columns " +
+                "WHERE table_name = 'chunks' AND column_name = ?)", Boolean.class, column));
+    }
+
+    @Test
+    void backfillCutoverRollbackAndFinalize() throws Exception {
+        EmbeddingMigrationService m = service();
+        assertEquals("IDLE", m.status().status());
+
+        m.start();
+        awaitStatus(m, "READY");
+        assertEquals(5, rowsWithDims("embedding_next", 4));
+        chunk(doc(), "[0,1,0]"); // ingest po backfillu - dopełni go cutover
+
+        assertEquals("CUTOVER", m.cutover().status());
+        assertEquals(4, m.active().dim());
+        assertEquals("large", m.status().activeModel());
+        assertEquals(6, rowsWithDims("embedding", 4));
+        assertEquals(6, rowsWithDims("embedding_prev", 3));
+        chunk(doc(), "[0,0,1,0]"); // ingest po cutoverze - dopełni go rollback
+
+        assertEquals("READY", m.rollback().status());
+        assertEquals(3, m.active().dim());
+        assertEquals(7, rowsWithDims("embedding", 3));
+        assertEquals(7, rowsWithDims("embedding_next", 4));
+
+        m.cutover();
+        assertThrows(MigrationStateException.class, m::abort);
+        assertThrows(MigrationStateException.class, m::finalizeMigration, "nodes still configured with the source model");
+
+        EmbeddingMigrationService reconfigured = service("large", 4, "", Duration.ofMillis(10));
+        assertEquals("IDLE", reconfigured.finalizeMigration().status());
+        assertFalse(columnExists("embedding_prev"));
+        assertEquals(0, jdbc.queryForObject("SELECT count(*) FROM embedding_migration", Integer.class));
+    }
+
+    @Test
+    void pauseResumeAndAbort() throws Exception {
+        EmbeddingMigrationService m = service("small", 3, "large", Duration.ofSeconds(1));
+        assertEquals("BACKFILLING", m.start().status());
+        assertEquals("PAUSED", m.pause().status());
+        assertThrows(MigrationStateException.class, m::pause);
+        assertThrows(MigrationStateException.class, m::cutover);
+
+        assertEquals("BACKFILLING", m.start().status());
+        assertEquals("IDLE", m.abort().status());
+        assertFalse(columnExists("embedding_next"));
+        assertEquals(0, jdbc.queryForObject("SELECT count(*) FROM embedding_migration", Integer.class));
+    }
+
+    @Test
+    void constructionDoesNotTouchTheDatabase() throws Exception {
+        DataSource down = mock(DataSource.class);
+        when(down.getConnection()).thenThrow(new SQLException("connection refused", "08001"));
+        JdbcTemplate noDb = new JdbcTemplate(down);
+
+        // jak trening AppCDS: odświeżenie kontekstu bez bazy
+        EmbeddingMigrationService m = new EmbeddingMigrationService(new FakeEmbeddings(3), noDb, noDb,
+                new TransactionTemplate(new DataSourceTransactionManager(down)), new ObjectMapper(), "fake",
+                "small", "", "large", 4, 2, Duration.ofMillis(10), 512);
+        assertEquals(3, m.active().dim());
+        verify(down, never()).getConnection();
+    }
+
+    @Test
+    void transitionsOutOfOrderAreRejected() {
+        EmbeddingMigrationService m = service();
+        assertThrows(MigrationStateException.class, m::pause);
+        assertThrows(MigrationStateException.class, m::cutover);
+        assertThrows(MigrationStateException.class, m::rollback);
+        assertThrows(MigrationStateException.class, m::finalizeMigration);
+        assertThrows(MigrationStateException.class, service("small", 3, "", Duration.ofMillis(10))::start,
+                "no target model configured");
+    }
+
+    @Test
+    void nodeThatMissedCutoverRecomputesVectorWithActiveModel() throws Exception {
+        EmbeddingMigrationService a = service();
+        EmbeddingMigrationService b = service();
+        a.start();
+        awaitStatus(a, "READY");
+        b.refreshState();
+        assertEquals(3, fencedDim(b, false));
+
+        a.cutover(); // b odświeży stan dopiero przy następnym refreshState
+        assertEquals(3, b.active().dim());
+        assertEquals(4, fencedDim(b, false));
+        assertEquals(4, b.active().dim());
+
+        a.rollback();
+        assertEquals(3, fencedDim(b, true));
+    }
+}
@@ -0,0 +1,65 @@
+package com.astradesk.rag.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddingResponseDecoderTest {
+
+    private final JsonFactory factory = new JsonFactory();
+
+    @Test
+    void decodesBase64LittleEndianFloats() throws IOException {
+        float[] expected = {0.25f, -1.5f, 3.0e-4f};
+        String json = "{\"object\":\"list\",\"data\":[{\"object\":\"embedding\",\"index\":0,\"embedding\":\""
+                + base64(expected) + "\"}],\"model\":\"text-embedding-3-small\",\"usage\":{\"prompt_tokens\":3}}";
+
+        float[][] out = EmbeddingResponseDecoder.decode(factory, bytes(json), 3, 1);
+
+        assertArrayEquals(expected, out[0]);
+    }
+
+    @Test
+    void decodesJsonArraysAndTrimsToActualLength() throws IOException {
+        String json = "{\"data\":[{\"embedding\":[0.5,-0.25],\"index\":0}]}";
+
+        float[][] out = EmbeddingResponseDecoder.decode(factory, bytes(json), 8, 1);
+
+        assertArrayEquals(new float[]{0.5f, -0.25f}, out[0]);
+    }
+
+    @Test
+    void ordersVectorsByIndexField() throws IOException {
+        String json = "{\"data\":["
+                + "{\"index\":1,\"embedding\":\"" + base64(new float[]{2f}) + "\"},"
+                + "{\"index\":0,\"embedding\":\"" + base64(new float[]{1f}) + "\"}]}";
+
+        float[][] out = EmbeddingResponseDecoder.decode(factory, bytes(json), 1, 2);
+
+        assertEquals(1f, out[0][0]);
+        assertEquals(2f, out[1][0]);
+    }
+
+    @Test
+    void failsOnMissingVector() {
+        String json = "{\"data\":[]}";
+        assertThrows(IOException.class, () -> EmbeddingResponseDecoder.decode(factory, bytes(json), 4, 1));
+    }
+
+    private static String base64(float[] v) {
+        ByteBuffer buf = ByteBuffer.allocate(v.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (float f : v) buf.putFloat(f);
+        return Base64.getEncoder().encodeToString(buf.array());
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
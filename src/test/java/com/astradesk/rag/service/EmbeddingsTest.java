@@ -0,0 +1,27 @@
+package com.astradesk.rag.service;
+
+import com.astradesk.rag.util.VectorMath;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddingsTest {
+
+    @Test
+    void truncateKeepsPrefixAndRenormalizes() {
+        float[] full = VectorMath.normalize(new FakeEmbeddings(1536).embed("matryoshka"));
+
+        float[] reduced = Embeddings.truncate(full, 512);
+
+        assertEquals(512, reduced.length);
+        assertEquals(1f, VectorMath.dot(reduced, reduced), 1e-4);
+        float scale = reduced[0] / full[0];
+        for (int i = 0; i < 512; i++) assertEquals(full[i] * scale, reduced[i], 1e-5);
+    }
+
+    @Test
+    void truncateToSameDimensionIsNoOp() {
+        float[] v = {0.6f, 0.8f};
+        assertSame(v, Embeddings.truncate(v, 2));
+    }
+}
@@ -0,0 +1,64 @@
+package com.astradesk.rag.service;
+
+import com.astradesk.rag.model.ProgressEvent;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestProgressTest {
+
+    private static ProgressEvent page(int p) {
+        return new ProgressEvent("INDEXED", "big.pdf", p, p, 100, "ok");
+    }
+
+    @Test
+    void coalescesPageEventsIntoLatestSnapshot() {
+        IngestProgress progress = new IngestProgress(16, Duration.ofHours(1), Duration.ofSeconds(1),
+                IngestProgress.OnDisconnect.CANCEL);
+
+        for (int p = 1; p < 100; p++) progress.progress(page(p));
+        progress.emit(page(100));
+        progress.complete(new ProgressEvent("DONE", "docs.zip", null, null, null, "finished"));
+
+        List<ProgressEvent> events = progress.asFlux().collectList().block(Duration.ofSeconds(5));
+        assertEquals(List.of(page(1), page(99), page(100)), events.subList(0, 3));
+        assertEquals("DONE", events.get(3).stage());
+    }
+
+    @Test
+    void boundedBufferDropsInsteadOfGrowingWhenConsumerStalls() {
+        IngestProgress progress = new IngestProgress(2, Duration.ZERO, Duration.ofMillis(20),
+                IngestProgress.OnDisconnect.CANCEL);
+
+        for (int p = 1; p <= 5; p++) progress.emit(page(p));
+        progress.complete(new ProgressEvent("DONE", "docs.zip", null, null, null, "finished"));
+
+        List<ProgressEvent> events = progress.asFlux().collectList().block(Duration.ofSeconds(5));
+        assertEquals(List.of(page(1), page(2)), events);
+    }
+
+    @Test
+    void disconnectCancelsOrDetachesByChoice() {
+        IngestProgress cancel = new IngestProgress(4, Duration.ZERO, Duration.ofHours(1), IngestProgress.OnDisconnect.CANCEL);
+        Disposable a = cancel.asFlux().subscribe();
+        a.dispose();
+        assertTrue(cancel.isCancelled());
+
+        IngestProgress detach = new IngestProgress(4, Duration.ZERO, Duration.ofHours(1), IngestProgress.OnDisconnect.DETACH);
+        Disposable b = detach.asFlux().subscribe();
+        b.dispose();
+        assertFalse(detach.isCancelled());
+        assertTrue(detach.isDetached());
+        for (int p = 1; p <= 10; p++) detach.emit(page(p)); // nie blokuje po rozłączeniu
+    }
+
+    @Test
+    void parsesDisconnectMode() {
+        assertEquals(IngestProgress.OnDisconnect.DETACH, IngestProgress.OnDisconnect.parse(" Detach "));
+        assertThrows(IllegalArgumentException.class, () -> IngestProgress.OnDisconnect.parse("ignore"));
+    }
+}
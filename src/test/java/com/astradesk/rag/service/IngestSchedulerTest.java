@@ -0,0 +1,133 @@
+package com.astradesk.rag.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestSchedulerTest {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final ExecutorService pool = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    private IngestScheduler scheduler(int slots, long quantum, List<String> weights, List<String> caps) {
+        return new IngestScheduler(meters, slots, quantum, 1, 0, weights, caps);
+    }
+
+    private Future<?> acquireAndRecord(IngestScheduler s, String collection, long cost, List<String> order) {
+        return pool.submit(() -> {
+            try (IngestScheduler.Permit p = s.acquire(collection, cost, () -> {})) {
+                order.add(collection);
+            }
+            return null;
+        });
+    }
+
+    private static void awaitQueued(IngestScheduler s, String collection, int n) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (s.queued(collection) != n) {
+            if (System.nanoTime() > end) fail("timed out waiting for " + n + " queued in " + collection);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void smallUploadOvertakesBulkBacklog() throws Exception {
+        IngestScheduler s = scheduler(1, 100, List.of(), List.of());
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        IngestScheduler.Permit running = s.acquire("bulk", 1000, () -> {});
+
+        Future<?> bulk = acquireAndRecord(s, "bulk", 1000, order);
+        awaitQueued(s, "bulk", 1);
+        Future<?> small = acquireAndRecord(s, "small", 10, order);
+        awaitQueued(s, "small", 1);
+
+        running.close();
+        small.get(5, TimeUnit.SECONDS);
+        bulk.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("small", "bulk"), order);
+        assertEquals(2L, meters.timer("rag.ingest.queue.wait", "collection", "bulk").count());
+    }
+
+    @Test
+    void weightsShareSlotsProportionally() throws Exception {
+        IngestScheduler s = scheduler(1, 100, List.of("gold=3"), List.of());
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        IngestScheduler.Permit running = s.acquire("warmup", 1, () -> {});
+
+        List<Future<?>> all = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            all.add(acquireAndRecord(s, "gold", 100, order));
+            awaitQueued(s, "gold", i + 1);
+        }
+        for (int i = 0; i < 4; i++) {
+            all.add(acquireAndRecord(s, "basic", 100, order));
+            awaitQueued(s, "basic", i + 1);
+        }
+        running.close();
+        for (Future<?> f : all) f.get(5, TimeUnit.SECONDS);
+
+        // waga 3: trzy dokumenty gold na jeden basic, dopóki gold ma oczekujące
+        assertEquals(List.of("gold", "gold", "gold", "basic"), order.subList(0, 4));
+    }
+
+    @Test
+    void collectionCapLeavesSlotForOthers() throws Exception {
+        IngestScheduler s = scheduler(3, 100, List.of(), List.of());
+        IngestScheduler.Permit b1 = s.acquire("bulk", 10, () -> {});
+        IngestScheduler.Permit b2 = s.acquire("bulk", 10, () -> {});
+        Future<?> b3 = acquireAndRecord(s, "bulk", 10, Collections.synchronizedList(new ArrayList<>()));
+        awaitQueued(s, "bulk", 1); // domyślny limit = slots - 1
+
+        IngestScheduler.Permit other = assertTimeoutPreemptively(Duration.ofSeconds(2),
+                () -> s.acquire("interactive", 10, () -> {}));
+        assertFalse(b3.isDone());
+
+        b1.close();
+        b3.get(5, TimeUnit.SECONDS);
+        b2.close();
+        other.close();
+        other.close(); // idempotentne
+        assertEquals(0.0, meters.get("rag.ingest.slots.in-use").gauge().value());
+    }
+
+    @Test
+    void cancelledWaiterLeavesTheQueue() throws Exception {
+        IngestScheduler s = scheduler(1, 100, List.of(), List.of());
+        IngestScheduler.Permit running = s.acquire("a", 10, () -> {});
+        AtomicBoolean cancel = new AtomicBoolean();
+        Future<?> waiter = pool.submit(() -> s.acquire("b", 10, () -> {
+            if (cancel.get()) throw new CancellationException("client disconnected");
+        }));
+        awaitQueued(s, "b", 1);
+
+        cancel.set(true);
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(CancellationException.class, ex.getCause());
+        assertEquals(0, s.queued("b"));
+
+        running.close();
+        assertTimeoutPreemptively(Duration.ofSeconds(2), () -> s.acquire("a", 10, () -> {}).close());
+    }
+
+    @Test
+    void invalidConfigurationIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> scheduler(1, 100, List.of("a"), List.of()));
+        assertThrows(IllegalArgumentException.class, () -> scheduler(1, 100, List.of("a=x"), List.of()));
+        assertThrows(IllegalArgumentException.class, () -> scheduler(1, 100, List.of("a=0"), List.of()));
+        assertThrows(IllegalArgumentException.class, () -> scheduler(0, 100, List.of(), List.of()));
+    }
+}
@@ -1,14 +1,21 @@
 package com.astradesk.rag.service;
 
 import com.astradesk.rag.model.ChunkRecord;
+import com.astradesk.rag.model.ChunkSnippet;
 import com.astradesk.rag.repo.ChunkJdbcRepository;
+import com.astradesk.rag.util.Deadline;
+import com.astradesk.rag.util.DeadlineExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -20,17 +27,35 @@ class RagServiceTest {
     @Mock
     private Embeddings embeddings;
 
+    @Mock
+    private EmbeddingMigrationService migration;
+
     @Mock
     private ChunkJdbcRepository chunks;
 
     @Mock
     private ChatLLM chat;
 
+    private SimpleMeterRegistry meters;
+    private ProviderCalls calls;
     private RagService ragService;
 
     @BeforeEach
+    @SuppressWarnings("unchecked")
     void setUp() {
-        ragService = new RagService(embeddings, chunks, chat, 5);
+        lenient().when(migration.fenced(anyBoolean(), any(), any())).thenAnswer(inv -> {
+            Function<Embeddings, Object> embed = inv.getArgument(1);
+            Function<Object, Object> use = inv.getArgument(2);
+            return use.apply(embed.apply(embeddings));
+        });
+        meters = new SimpleMeterRegistry();
+        calls = new ProviderCalls(meters, true, 0.95, 20, Duration.ofMillis(50), Duration.ofMillis(10), Duration.ofSeconds(1));
+        ragService = new RagService(migration, chunks, chat, new ContextPacker(3000, 0.9), calls, 5, 32, 30, 4000, 200);
+    }
+
+    @AfterEach
+    void tearDown() {
+        calls.destroy();
     }
 
     @Test
@@ -39,7 +64,7 @@ class RagServiceTest {
         ChunkRecord mockChunk = new ChunkRecord(1L, 1L, 0, 1, 1, "test content", 0.95);
         
         when(embeddings.embed(anyString())).thenReturn(mockEmbedding);
-        when(chunks.findSimilar(any(float[].class), anyInt())).thenReturn(List.of(mockChunk));
+        when(chunks.findSimilar(any(float[].class), anyInt(), any(Deadline.class))).thenReturn(List.of(mockChunk));
 
         List<ChunkRecord> results = ragService.search("test query", 3);
 
@@ -47,7 +72,7 @@ class RagServiceTest {
         assertEquals(1, results.size());
         assertEquals("test content", results.get(0).content);
         verify(embeddings).embed("test query");
-        verify(chunks).findSimilar(mockEmbedding, 3);
+        verify(chunks).findSimilar(eq(mockEmbedding), eq(3), any(Deadline.class));
     }
 
     @Test
@@ -55,11 +80,50 @@ class RagServiceTest {
         float[] mockEmbedding = new float[]{0.1f, 0.2f};
         
         when(embeddings.embed(anyString())).thenReturn(mockEmbedding);
-        when(chunks.findSimilar(any(float[].class), anyInt())).thenReturn(List.of());
+        when(chunks.findSimilar(any(float[].class), anyInt(), any(Deadline.class))).thenReturn(List.of());
 
         ragService.search("query", null);
 
-        verify(chunks).findSimilar(mockEmbedding, 5);
+        verify(chunks).findSimilar(eq(mockEmbedding), eq(5), any(Deadline.class));
+    }
+
+    @Test
+    void searchBatchEmbedsOnceAndQueriesOnce() {
+        float[][] vectors = {{0.1f}, {0.2f}};
+        ChunkRecord chunk = new ChunkRecord(1L, 1L, 0, 1, 1, "c", 0.9);
+
+        when(embeddings.embedAll(anyList())).thenReturn(vectors);
+        when(chunks.findSimilarBatch(anyList(), anyInt(), any(Deadline.class))).thenReturn(List.of(List.of(chunk), List.of()));
+
+        List<List<ChunkRecord>> results = ragService.searchBatch(List.of("a", "b"), null);
+
+        assertEquals(2, results.size());
+        verify(embeddings).embedAll(List.of("a", "b"));
+        verify(chunks).findSimilarBatch(eq(List.of(vectors)), eq(5), any(Deadline.class));
+        verify(embeddings, never()).embed(anyString());
+    }
+
+    @Test
+    void slimSearchPassesQueryTextForSnippets() {
+        float[] mockEmbedding = new float[]{0.1f};
+        when(embeddings.embed(anyString())).thenReturn(mockEmbedding);
+        when(chunks.findSimilarSlim(any(float[].class), anyString(), anyInt(), anyInt(), anyInt(), any(Deadline.class)))
+                .thenReturn(List.of(new ChunkSnippet(1L, 1L, 0, 2, 2, 0.8, "<mark>vacation</mark> policy")));
+
+        List<ChunkSnippet> results = ragService.searchSlim("vacation", 50);
+
+        assertEquals(1, results.size());
+        verify(chunks).findSimilarSlim(eq(mockEmbedding), eq("vacation"), eq(50), eq(30), eq(4000), any(Deadline.class));
+        verify(chunks, never()).findSimilar(any(float[].class), anyInt(), any(Deadline.class));
+    }
+
+    @Test
+    void fetchChunksEnforcesIdLimit() {
+        List<Long> tooMany = java.util.stream.LongStream.rangeClosed(1, 201).boxed().toList();
+
+        assertThrows(IllegalArgumentException.class, () -> ragService.fetchChunks(tooMany));
+        assertThrows(IllegalArgumentException.class, () -> ragService.fetchChunks(List.of()));
+        verifyNoInteractions(chunks);
     }
 
     @Test
@@ -68,12 +132,84 @@ class RagServiceTest {
         ChunkRecord chunk = new ChunkRecord(1L, 1L, 0, 1, 1, "context", 0.9);
         
         when(embeddings.embed(anyString())).thenReturn(mockEmbedding);
-        when(chunks.findSimilar(any(float[].class), anyInt())).thenReturn(List.of(chunk));
+        when(chunks.findSimilar(any(float[].class), anyInt(), any(Deadline.class))).thenReturn(List.of(chunk));
         when(chat.answer(anyString(), anyList())).thenReturn("answer");
 
         String result = ragService.chat("question", 3);
 
         assertEquals("answer", result);
-        verify(chat).answer(eq("question"), eq(List.of("context")));
+        verify(chat).answer(eq("question"), eq(List.of("(source: doc 1, p. 1)\ncontext")));
+    }
+
+    @Test
+    void slowQueryEmbeddingIsHedgedAndFastestAnswerWins() {
+        float[] mockEmbedding = new float[]{0.1f};
+        when(embeddings.embed(anyString()))
+                .thenAnswer(inv -> {
+                    Thread.sleep(5_000); // maruder - zostanie anulowany
+                    return new float[]{9f};
+                })
+                .thenReturn(mockEmbedding);
+        when(chunks.findSimilar(any(float[].class), anyInt(), any(Deadline.class))).thenReturn(List.of());
+
+        ragService.search("query", 3, Deadline.after(Duration.ofSeconds(2)));
+
+        verify(embeddings, times(2)).embed("query");
+        verify(chunks).findSimilar(eq(mockEmbedding), eq(3), any(Deadline.class));
+        assertEquals(1.0, meters.counter("rag.provider.hedge.fired", "op", "embed").count());
+        assertEquals(1.0, meters.counter("rag.provider.hedge.won", "op", "embed").count());
+    }
+
+    @Test
+    void expiredDeadlineFailsFastWithoutCallingDownstream() {
+        Deadline deadline = Deadline.after(Duration.ZERO);
+
+        assertThrows(DeadlineExceededException.class, () -> ragService.search("query", 3, deadline));
+        verifyNoInteractions(embeddings, chunks);
+    }
+
+    @Test
+    void deadlineMissedBeforeSqlIsCounted() {
+        when(embeddings.embed(anyString())).thenReturn(new float[]{0.1f});
+        when(chunks.findSimilar(any(float[].class), anyInt(), any(Deadline.class)))
+                .thenThrow(new DeadlineExceededException("search")); // Deadline.check w prepare
+
+        DeadlineExceededException ex = assertThrows(DeadlineExceededException.class,
+                () -> ragService.search("query", 3, Deadline.after(Duration.ofSeconds(5))));
+        assertEquals("search", ex.stage());
+        assertEquals(1.0, meters.counter("rag.deadline.exceeded", "stage", "search").count());
+    }
+
+    @Test
+    void interruptedCallerGetsDeadlineExceeded() {
+        when(embeddings.embed(anyString())).thenAnswer(inv -> {
+            Thread.sleep(5_000);
+            return new float[]{0.1f};
+        });
+
+        Thread.currentThread().interrupt(); // np. anulowane żądanie
+        try {
+            DeadlineExceededException ex = assertThrows(DeadlineExceededException.class,
+                    () -> ragService.search("query", 3, Deadline.after(Duration.ofSeconds(5))));
+            assertEquals("embed", ex.stage());
+            assertEquals(1.0, meters.counter("rag.deadline.exceeded", "stage", "embed").count());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    void slowChatIsCutOffAtTheDeadline() {
+        when(embeddings.embed(anyString())).thenReturn(new float[]{0.1f});
+        when(chunks.findSimilar(any(float[].class), anyInt(), any(Deadline.class))).thenReturn(List.of());
+        when(chat.answer(anyString(), anyList())).thenAnswer(inv -> {
+            Thread.sleep(5_000);
+            return "late";
+        });
+
+        DeadlineExceededException ex = assertThrows(DeadlineExceededException.class,
+                () -> ragService.chat("question", 3, Deadline.after(Duration.ofMillis(300))));
+        assertEquals("chat", ex.stage());
+        assertEquals(1.0, meters.counter("rag.deadline.exceeded", "stage", "chat").count());
     }
 }
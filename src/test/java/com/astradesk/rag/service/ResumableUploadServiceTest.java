@@ -0,0 +1,179 @@
+package com.astradesk.rag.service;
+
+import com.astradesk.rag.model.CreateUploadRequest;
+import com.astradesk.rag.model.UploadStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ResumableUploadServiceTest {
+
+    @Mock
+    private ZipIngestService ingest;
+
+    @TempDir
+    Path dir;
+
+    private ResumableUploadService uploads;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        uploads = new ResumableUploadService(ingest, new ObjectMapper(), dir.toString(),
+                DataSize.ofKilobytes(64), Duration.ofHours(1), 1200, 200);
+    }
+
+    private static Flux<DataBuffer> body(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        int half = bytes.length / 2;
+        // dwa bufory, żeby sprawdzić liczenie sumy przez granice
+        return Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(Arrays.copyOfRange(bytes, 0, half)),
+                DefaultDataBufferFactory.sharedInstance.wrap(Arrays.copyOfRange(bytes, half, bytes.length)));
+    }
+
+    private static String sha256(String s) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void partsUploadedOutOfOrderAreAssembledAndIngested() throws Exception {
+        UploadStatus st = uploads.create(new CreateUploadRequest("kb.zip", "docs", 12L, null, null));
+        AtomicReference<String> ingested = new AtomicReference<>();
+        when(ingest.ingestZipAsStream(any(InputStreamSource.class), eq("kb.zip"), eq("docs"), eq(1200), eq(200),
+                eq(IngestProgress.OnDisconnect.DETACH), any())).thenAnswer(inv -> {
+            try (InputStream in = inv.<InputStreamSource>getArgument(0).getInputStream()) {
+                ingested.set(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            inv.<Consumer<Boolean>>getArgument(6).accept(true);
+            return Flux.empty();
+        });
+
+        uploads.putPart(st.id(), 2, body("second"), sha256("second")).block();
+        uploads.putPart(st.id(), 1, body("first!"), null).block();
+        assertEquals(12, uploads.status(st.id()).receivedBytes());
+
+        uploads.complete(st.id(), IngestProgress.OnDisconnect.DETACH).blockLast();
+
+        assertEquals("first!second", ingested.get());
+        assertThrows(UploadNotFoundException.class, () -> uploads.status(st.id()));
+    }
+
+    @Test
+    void rejectsPartWithWrongChecksumAndKeepsPreviousState() throws Exception {
+        UploadStatus st = uploads.create(new CreateUploadRequest("kb.zip", null, null, null, null));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> uploads.putPart(st.id(), 1, body("corrupted"), sha256("original")).block());
+
+        assertTrue(uploads.status(st.id()).parts().isEmpty());
+    }
+
+    @Test
+    void completeRequiresContiguousParts() {
+        UploadStatus st = uploads.create(new CreateUploadRequest("kb.zip", null, null, null, null));
+        uploads.putPart(st.id(), 2, body("second"), null).block();
+
+        assertThrows(UploadStateException.class,
+                () -> uploads.complete(st.id(), IngestProgress.OnDisconnect.DETACH).blockLast());
+        verifyNoInteractions(ingest);
+    }
+
+    @Test
+    void purgeKeepsUploadsThatAreBeingIngested() throws Exception {
+        UploadStatus abandoned = uploads.create(new CreateUploadRequest("old.zip", null, null, null, null));
+        UploadStatus inFlight = uploads.create(new CreateUploadRequest("big.zip", null, null, null, null));
+        uploads.putPart(inFlight.id(), 1, body("archive"), null).block();
+        AtomicReference<Consumer<Boolean>> onFinished = new AtomicReference<>();
+        when(ingest.ingestZipAsStream(any(InputStreamSource.class), eq("big.zip"), any(), anyInt(), anyInt(), any(),
+                any())).thenAnswer(inv -> {
+            onFinished.set(inv.getArgument(6));
+            return Flux.empty(); // ingest trwa dalej w tle (detach)
+        });
+        uploads.complete(inFlight.id(), IngestProgress.OnDisconnect.DETACH).blockLast();
+
+        for (String id : new String[]{abandoned.id(), inFlight.id()}) {
+            Files.setLastModifiedTime(dir.resolve(id), FileTime.fromMillis(0));
+        }
+        uploads.purgeExpired();
+
+        assertThrows(UploadNotFoundException.class, () -> uploads.status(abandoned.id()));
+        assertTrue(uploads.status(inFlight.id()).completed());
+
+        onFinished.get().accept(true);
+        assertThrows(UploadNotFoundException.class, () -> uploads.status(inFlight.id()));
+    }
+
+    @Test
+    void failedIngestKeepsAssembledFileForRetry() throws Exception {
+        UploadStatus st = uploads.create(new CreateUploadRequest("kb.zip", null, null, null, null));
+        uploads.putPart(st.id(), 1, body("first!"), null).block();
+        uploads.putPart(st.id(), 2, body("second"), null).block();
+        List<String> ingested = new ArrayList<>();
+        AtomicReference<Consumer<Boolean>> onFinished = new AtomicReference<>();
+        when(ingest.ingestZipAsStream(any(InputStreamSource.class), eq("kb.zip"), any(), anyInt(), anyInt(), any(), any()))
+                .thenAnswer(inv -> {
+                    try (InputStream in = inv.<InputStreamSource>getArgument(0).getInputStream()) {
+                        ingested.add(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                    }
+                    onFinished.set(inv.getArgument(6));
+                    return Flux.empty();
+                });
+
+        uploads.complete(st.id(), IngestProgress.OnDisconnect.DETACH).blockLast();
+        assertThrows(UploadStateException.class, () -> uploads.complete(st.id(), IngestProgress.OnDisconnect.DETACH).blockLast());
+        assertThrows(UploadStateException.class, () -> uploads.abort(st.id()));
+        onFinished.get().accept(false); // np. błąd providera albo anulowanie
+
+        assertFalse(uploads.status(st.id()).completed());
+        assertThrows(UploadStateException.class, () -> uploads.putPart(st.id(), 3, body("late"), null).block());
+        uploads.complete(st.id(), IngestProgress.OnDisconnect.DETACH).blockLast(); // bez ponownego wysyłania części
+        onFinished.get().accept(true);
+
+        assertEquals(List.of("first!second", "first!second"), ingested);
+        assertThrows(UploadNotFoundException.class, () -> uploads.status(st.id()));
+    }
+
+    @Test
+    void ingestInterruptedByRestartCanBeCompletedAgain() throws Exception {
+        UploadStatus st = uploads.create(new CreateUploadRequest("kb.zip", null, null, null, null));
+        uploads.putPart(st.id(), 1, body("archive"), null).block();
+        when(ingest.ingestZipAsStream(any(InputStreamSource.class), eq("kb.zip"), any(), anyInt(), anyInt(), any(), any()))
+                .thenReturn(Flux.empty());
+        uploads.complete(st.id(), IngestProgress.OnDisconnect.DETACH).blockLast(); // węzeł pada w trakcie ingestu
+
+        ResumableUploadService restarted = new ResumableUploadService(ingest, new ObjectMapper(), dir.toString(),
+                DataSize.ofKilobytes(64), Duration.ofHours(1), 1200, 200);
+        assertTrue(restarted.status(st.id()).completed());
+        restarted.complete(st.id(), IngestProgress.OnDisconnect.DETACH).blockLast();
+
+        verify(ingest, times(2)).ingestZipAsStream(any(InputStreamSource.class), eq("kb.zip"), any(), anyInt(), anyInt(),
+                any(), any());
+    }
+}
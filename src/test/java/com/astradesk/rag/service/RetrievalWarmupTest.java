@@ -0,0 +1,103 @@
+package com.astradesk.rag.service;
+
+import com.astradesk.rag.config.BackgroundInitializer;
+import com.astradesk.rag.repo.ChunkJdbcRepository;
+import com.astradesk.rag.util.Deadline;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/** Fazy rozgrzewki: każde wywołanie w dół jest ograniczone przez rag.warmup.max-duration. */
+class RetrievalWarmupTest {
+
+    private final Embeddings embeddings = mock(Embeddings.class);
+    private final ChunkJdbcRepository chunks = mock(ChunkJdbcRepository.class);
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class); // bez DataSource: fillPool pomija, prewarm niedostępny
+    private ProviderCalls calls;
+
+    @BeforeEach
+    void setUp() {
+        calls = new ProviderCalls(new SimpleMeterRegistry(), false, 0.95, 20, Duration.ofMillis(50), Duration.ofMillis(10),
+                Duration.ofSeconds(1));
+        when(embeddings.dim()).thenReturn(3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        calls.destroy();
+    }
+
+    private RetrievalWarmup warmup(Duration maxDuration) {
+        return new RetrievalWarmup(embeddings, chunks, jdbc, jdbc, new ObjectMapper(), mock(BackgroundInitializer.class),
+                calls, true, 4, 2, 3, List.of("idx_chunks_embedding"), maxDuration);
+    }
+
+    @Test
+    void completesAllSearchesWithinBudget() {
+        when(embeddings.embed(anyString())).thenReturn(new float[]{1f, 0f, 0f});
+        when(chunks.findSimilar(any(float[].class), eq(5), any(Deadline.class))).thenReturn(List.of());
+        RetrievalWarmup w = warmup(Duration.ofSeconds(10));
+
+        w.run();
+
+        assertEquals(RetrievalWarmup.Phase.DONE, w.phase());
+        assertEquals(3, w.completedSearches());
+        verify(embeddings, times(2)).embed(anyString());
+    }
+
+    @Test
+    void hungProviderCallEndsAsTimedOut() {
+        when(embeddings.embed(anyString())).thenAnswer(inv -> {
+            Thread.sleep(10_000); // provider bez timeoutu
+            return new float[]{1f, 0f, 0f};
+        });
+        RetrievalWarmup w = warmup(Duration.ofMillis(200));
+
+        long t0 = System.nanoTime();
+        w.run();
+
+        assertEquals(RetrievalWarmup.Phase.TIMED_OUT, w.phase());
+        assertTrue(System.nanoTime() - t0 < TimeUnit.SECONDS.toNanos(3));
+        verifyNoInteractions(chunks);
+    }
+
+    @Test
+    void searchCancelledByQueryTimeoutEndsAsTimedOut() {
+        when(embeddings.embed(anyString())).thenReturn(new float[]{1f, 0f, 0f});
+        when(chunks.findSimilar(any(float[].class), eq(5), any(Deadline.class))).thenAnswer(inv -> {
+            Deadline d = inv.getArgument(2);
+            assertTrue(d.isBounded(), "search must carry the warm-up deadline");
+            Thread.sleep(d.remaining().toMillis() + 20);
+            throw new QueryTimeoutException("canceling statement due to statement timeout");
+        });
+        RetrievalWarmup w = warmup(Duration.ofMillis(300));
+
+        w.run();
+
+        assertEquals(RetrievalWarmup.Phase.TIMED_OUT, w.phase());
+        assertEquals(0, w.completedSearches());
+    }
+
+    @Test
+    void otherErrorsEndAsFailed() {
+        when(embeddings.embed(anyString())).thenThrow(new IllegalStateException("401 from provider"));
+        RetrievalWarmup w = warmup(Duration.ofSeconds(10));
+
+        w.run();
+
+        assertEquals(RetrievalWarmup.Phase.FAILED, w.phase());
+        assertEquals("401 from provider", w.error());
+    }
+}
@@ -0,0 +1,94 @@
+package com.astradesk.rag.service;
+
+import com.astradesk.rag.repo.ChunkJdbcRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class VectorIndexMaintainerTest {
+
+    private static VectorIndexMaintainer maintainer(String method, String window) {
+        return new VectorIndexMaintainer(mock(JdbcTemplate.class), mock(ChunkJdbcRepository.class), true, method, 16, 64, 0.3, 10_000,
+                "1GB", window, "UTC", 5000);
+    }
+
+    @Test
+    void listsFollowPgvectorGuidance() {
+        assertEquals(10, VectorIndexMaintainer.ivfflatLists(0));
+        assertEquals(500, VectorIndexMaintainer.ivfflatLists(500_000));
+        assertEquals(1000, VectorIndexMaintainer.ivfflatLists(1_000_000));
+        assertEquals(2000, VectorIndexMaintainer.ivfflatLists(4_000_000));
+    }
+
+    @Test
+    void parsesIndexDefinitionFromCatalog() {
+        var ivf = VectorIndexMaintainer.parse(
+                "CREATE INDEX idx_chunks_embedding ON public.chunks USING ivfflat (embedding vector_cosine_ops) WITH (lists='100')");
+        assertEquals(new VectorIndexMaintainer.IndexSpec("ivfflat", 100, 0, 0), ivf);
+
+        var hnsw = VectorIndexMaintainer.parse(
+                "CREATE INDEX idx_chunks_embedding ON public.chunks USING hnsw (embedding vector_cosine_ops) WITH (m='24', ef_construction='128')");
+        assertEquals(new VectorIndexMaintainer.IndexSpec("hnsw", 0, 24, 128), hnsw);
+    }
+
+    @Test
+    void rebuildsIvfflatOnGrowthButNotOnSmallChanges() {
+        VectorIndexMaintainer m = maintainer("ivfflat", "");
+        var built = new VectorIndexMaintainer.IndexSpec("ivfflat", 100, 0, 0);
+
+        assertNull(m.rebuildReason(built, 0, m.desired(5_000), 5_000), "below min-rows");
+        assertNotNull(m.rebuildReason(built, 0, m.desired(200_000), 200_000), "never rebuilt since creation");
+        assertNotNull(m.rebuildReason(built, 100_000, m.desired(200_000), 200_000));
+
+        var current = new VectorIndexMaintainer.IndexSpec("ivfflat", 200, 0, 0);
+        assertNull(m.rebuildReason(current, 200_000, m.desired(220_000), 220_000));
+        assertNotNull(m.rebuildReason(null, 0, m.desired(220_000), 220_000));
+    }
+
+    @Test
+    void hnswOnlyRebuildsWhenParametersOrMethodChange() {
+        VectorIndexMaintainer m = maintainer("hnsw", "");
+        var hnsw = new VectorIndexMaintainer.IndexSpec("hnsw", 0, 16, 64);
+
+        assertNull(m.rebuildReason(hnsw, 10_000, m.desired(5_000_000), 5_000_000));
+        assertNotNull(m.rebuildReason(new VectorIndexMaintainer.IndexSpec("ivfflat", 100, 0, 0), 10_000,
+                m.desired(50_000), 50_000));
+    }
+
+    @Test
+    void maintenanceWindowMayWrapMidnight() {
+        VectorIndexMaintainer m = maintainer("ivfflat", "23:00-03:00");
+        assertTrue(m.inWindow(ZonedDateTime.of(2025, 1, 1, 23, 30, 0, 0, ZoneOffset.UTC)));
+        assertTrue(m.inWindow(ZonedDateTime.of(2025, 1, 1, 2, 59, 0, 0, ZoneOffset.UTC)));
+        assertFalse(m.inWindow(ZonedDateTime.of(2025, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC)));
+    }
+
+    @Test
+    void searchParamFollowsCurrentIndexDefinition() {
+        JdbcTemplate jdbc = mock(JdbcTemplate.class);
+        ChunkJdbcRepository chunks = mock(ChunkJdbcRepository.class);
+        VectorIndexMaintainer m = new VectorIndexMaintainer(jdbc, chunks, false, "ivfflat", 16, 64, 0.3, 10_000,
+                "1GB", "", "UTC", 5000);
+
+        when(jdbc.queryForList(anyString(), eq(String.class), any())).thenReturn(List.of(
+                "CREATE INDEX idx_chunks_embedding ON public.chunks USING ivfflat (embedding vector_cosine_ops) WITH (lists='400')"));
+        m.refreshSearchParam();
+        verify(chunks).setSearchParam("ivfflat", 20);
+
+        when(jdbc.queryForList(anyString(), eq(String.class), any())).thenReturn(List.of(
+                "CREATE INDEX idx_chunks_embedding ON public.chunks USING hnsw (embedding vector_cosine_ops) WITH (m='16', ef_construction='100')"));
+        m.refreshSearchParam();
+        verify(chunks).setSearchParam("hnsw", 100);
+
+        when(jdbc.queryForList(anyString(), eq(String.class), any())).thenReturn(List.of());
+        m.refreshSearchParam();
+        verify(chunks).clearSearchParam();
+    }
+}
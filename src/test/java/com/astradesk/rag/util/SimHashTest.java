@@ -0,0 +1,74 @@
+package com.astradesk.rag.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimHashTest {
+
+    private static final String POLICY = "This document is confidential and intended solely for the use of the individual " +
+            "or entity to whom it is addressed. If you have received this document in error please notify the sender " +
+            "immediately and delete it from your system. Any unauthorised copying, disclosure or distribution of the " +
+            "material in this document is strictly forbidden and may be unlawful. The company accepts no liability for " +
+            "any damage caused by any virus transmitted by this document or for errors or omissions in its contents.";
+
+    @Test
+    void pageNumbersAndCaseDoNotChangeTheFingerprint() {
+        long a = SimHash.of("Page 3 of 120 - ACME Corp. Internal Use Only - Revision 2021-04");
+        long b = SimHash.of("page 17 of 98 - ACME corp. internal use only - revision 2023-11");
+        assertEquals(0, SimHash.distance(a, b));
+    }
+
+    @Test
+    void smallEditIsCloserThanUnrelatedText() {
+        long original = SimHash.of(POLICY);
+        long edited = SimHash.of(POLICY.replace("strictly forbidden", "prohibited"));
+        long unrelated = SimHash.of("Vacation requests must be submitted through the HR portal at least two weeks in " +
+                "advance and approved by the line manager before any travel is booked for the period in question.");
+
+        assertTrue(SimHash.distance(original, edited) < SimHash.distance(original, unrelated));
+        assertTrue(SimHash.distance(original, unrelated) > 8);
+    }
+
+    @Test
+    void indexFindsEveryHashWithinDistanceLikeBruteForce() {
+        Random rnd = new Random(7);
+        SimHashIndex index = new SimHashIndex(3);
+        long[] stored = new long[2000];
+        for (int i = 0; i < stored.length; i++) {
+            stored[i] = rnd.nextLong();
+            index.add(stored[i], i);
+        }
+        for (int q = 0; q < 500; q++) {
+            long query = stored[rnd.nextInt(stored.length)];
+            int flips = rnd.nextInt(6);
+            for (int f = 0; f < flips; f++) query ^= 1L << rnd.nextInt(64);
+
+            int bestDistance = Integer.MAX_VALUE;
+            long bestId = -1;
+            for (int i = 0; i < stored.length; i++) {
+                int d = SimHash.distance(query, stored[i]);
+                if (d < bestDistance) { bestDistance = d; bestId = i; }
+            }
+            SimHashIndex.Match m = index.nearest(query);
+            if (bestDistance <= 3) {
+                assertNotNull(m);
+                assertEquals(bestId, m.id());
+                assertEquals(bestDistance, m.distance());
+            } else {
+                assertNull(m);
+            }
+        }
+    }
+
+    @Test
+    void exactIndexWithZeroDistance() {
+        SimHashIndex index = new SimHashIndex(0);
+        index.add(0x1234L, 1);
+        assertEquals(1, index.nearest(0x1234L).id());
+        assertNull(index.nearest(0x1235L));
+        assertThrows(IllegalArgumentException.class, () -> new SimHashIndex(16));
+    }
+}
@@ -0,0 +1,66 @@
+package com.astradesk.rag.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VectorMathTest {
+
+    private final Random rnd = new Random(42);
+    private final VectorKernel scalar = new ScalarVectorKernel();
+
+    private float[] randomVector(int n) {
+        float[] v = new float[n];
+        for (int i = 0; i < n; i++) v[i] = rnd.nextFloat() - 0.5f;
+        return v;
+    }
+
+    @Test
+    void simdKernelMatchesScalarKernel() {
+        VectorKernel simd = new SimdVectorKernel();
+        for (int n : new int[]{1, 7, 16, 33, 1536}) {
+            float[] a = randomVector(n), b = randomVector(n);
+            assertEquals(scalar.dot(a, 0, b, 0, n), simd.dot(a, 0, b, 0, n), 1e-3f);
+            assertEquals(scalar.l2Squared(a, 0, b, 0, n), simd.l2Squared(a, 0, b, 0, n), 1e-3f);
+
+            byte[] qa = VectorMath.quantizeInt8(a), qb = VectorMath.quantizeInt8(b);
+            assertEquals(scalar.dotInt8(qa, qb, n), simd.dotInt8(qa, qb, n));
+
+            long[] la = rnd.longs(n).toArray(), lb = rnd.longs(n).toArray();
+            assertEquals(scalar.hamming(la, lb, n), simd.hamming(la, lb, n));
+        }
+    }
+
+    @Test
+    void normalizeProducesUnitVector() {
+        float[] v = VectorMath.normalize(randomVector(300));
+        assertEquals(1f, VectorMath.dot(v, v), 1e-4f);
+        assertEquals(1f, VectorMath.cosine(v, v), 1e-4f);
+        assertEquals(0f, VectorMath.l2(v, v), 1e-6f);
+    }
+
+    @Test
+    void topKFindsExactMatchFirst() {
+        int dim = 32, n = 500;
+        float[] block = new float[n * dim];
+        for (int i = 0; i < block.length; i++) block[i] = rnd.nextFloat() - 0.5f;
+        float[] query = Arrays.copyOfRange(block, 123 * dim, 124 * dim);
+
+        for (VectorMath.Metric m : VectorMath.Metric.values()) {
+            VectorMath.TopK top = VectorMath.topK(query, block, dim, 5, m);
+            assertEquals(5, top.indices().length);
+            if (m != VectorMath.Metric.DOT) assertEquals(123, top.indices()[0], m.name());
+            for (int i = 1; i < 5; i++) assertTrue(top.scores()[i - 1] >= top.scores()[i]);
+        }
+    }
+
+    @Test
+    void binarizeAndHamming() {
+        long[] a = VectorMath.binarize(new float[]{1f, -1f, 1f, 0f});
+        long[] b = VectorMath.binarize(new float[]{1f, 1f, -1f, 0f});
+        assertEquals(2, VectorMath.hamming(a, b));
+    }
+}